@@ -0,0 +1,268 @@
+package com.crimsonknights.chess;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-interactive analysis for shell and data pipelines, run as {@code ChessCli batch}. Each
+ * non-blank input line is a position: a FEN, {@code startpos}, or either followed by
+ * {@code moves e2e4 e7e5 ...}; a bare list of coordinate moves is played from the start. Each
+ * gets one output line, in input order:
+ *
+ * <pre>
+ * moves=20 status=normal                      status mode
+ * moves=20 status=normal eval=0               eval mode, centipawns for the side to move
+ * moves=20 status=normal bestmove=e2e4 score=35   best mode
+ * error &lt;message&gt;                               unreadable input
+ * </pre>
+ *
+ * <p>The reading thread cuts the input into chunks and submits them to a thread pool, where they
+ * are parsed and analysed; a writer thread takes the finished chunks in submission order and
+ * copies them into a large buffer drained straight to the output channel. At most a fixed number
+ * of chunks are in flight, so memory stays bounded however large the input is.
+ */
+final class BatchAnalysis {
+    enum Mode { STATUS, EVAL, BEST }
+
+    private static final String USAGE = "Usage: ChessCli batch [status|eval|best] [depth] [threads] [file]";
+    private static final int CHUNK_LINES = 256;
+    private static final int OUTPUT_BUFFER = 1 << 20;
+    private static final String[] STATUS_NAMES = {"normal", "check", "checkmate", "stalemate"};
+
+    private final Mode mode;
+    private final int depth;
+    private final int threads;
+    private final ThreadLocal<CrimsonChess> games = ThreadLocal.withInitial(CrimsonChess::new);
+    private final ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[CrimsonChess.MAX_MOVES]);
+
+    BatchAnalysis(Mode mode, int depth, int threads) {
+        this.mode = mode;
+        this.depth = depth;
+        this.threads = threads;
+    }
+
+    /**
+     * Analyses every line of {@code input} and writes the results to {@code output}. Returns the
+     * number of lines analysed.
+     */
+    long run(InputStream input, WritableByteChannel output) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        BlockingQueue<Future<String>> inFlight = new ArrayBlockingQueue<>(4 * threads);
+        Future<String> end = CompletableFuture.completedFuture(null);
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> writeFailure.set(write(inFlight, end, output)), "batch-writer");
+        writer.start();
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16)) {
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            String line;
+            while ((line = reader.readLine()) != null && writeFailure.get() == null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                chunk.add(line);
+                lines++;
+                if (chunk.size() == CHUNK_LINES) {
+                    List<String> batch = chunk;
+                    inFlight.put(pool.submit(() -> analyse(batch)));
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<String> batch = chunk;
+                inFlight.put(pool.submit(() -> analyse(batch)));
+            }
+        } finally {
+            inFlight.put(end);
+            writer.join();
+            pool.shutdownNow();
+        }
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+        return lines;
+    }
+
+    /**
+     * Writes finished chunks in order until {@code end} arrives and returns the first write
+     * failure, or {@code null}. After a failure it keeps taking chunks so the reader never blocks.
+     */
+    private static IOException write(BlockingQueue<Future<String>> inFlight, Future<String> end,
+                                     WritableByteChannel output) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER);
+        IOException failure = null;
+        try {
+            Future<String> next;
+            while ((next = inFlight.take()) != end) {
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    byte[] bytes = next.get().getBytes(StandardCharsets.UTF_8);
+                    int offset = 0;
+                    while (offset < bytes.length) {
+                        if (!buffer.hasRemaining()) {
+                            drain(buffer, output);
+                        }
+                        int length = Math.min(buffer.remaining(), bytes.length - offset);
+                        buffer.put(bytes, offset, length);
+                        offset += length;
+                    }
+                    // Flush whenever the pipeline runs dry, so interactive pipes see results promptly.
+                    if (inFlight.isEmpty()) {
+                        drain(buffer, output);
+                    }
+                } catch (ExecutionException e) {
+                    failure = new IOException("Analysis failed", e.getCause());
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure == null) {
+                drain(buffer, output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+        return failure;
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel output) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private String analyse(List<String> lines) {
+        StringBuilder out = new StringBuilder(lines.size() * 48);
+        CrimsonChess game = games.get();
+        int[] moves = buffers.get();
+        for (String line : lines) {
+            int start = out.length();
+            try {
+                load(game, line.trim());
+                describe(game, moves, out);
+            } catch (IllegalArgumentException e) {
+                out.setLength(start);
+                out.append("error ").append(e.getMessage());
+            } catch (RuntimeException e) {
+                // Any other failure costs this line only, not the rest of the batch.
+                out.setLength(start);
+                out.append("error ").append(e);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Sets up {@code game} from one input line.
+     *
+     * @throws IllegalArgumentException if the position or a move is not valid
+     */
+    static void load(CrimsonChess game, String line) {
+        int split = line.indexOf(" moves ");
+        String position = split < 0 ? line : line.substring(0, split);
+        String moves = split < 0 ? "" : line.substring(split + 7);
+        if (line.startsWith("moves ")) {
+            position = "";
+            moves = line.substring(6);
+        }
+        if (position.equals("startpos") || position.isEmpty()) {
+            game.reset();
+        } else if (position.indexOf('/') >= 0) {
+            game.loadFen(position);
+        } else {
+            game.reset();
+            moves = position;
+        }
+        for (String text : moves.trim().split("\\s+")) {
+            if (text.isEmpty()) {
+                continue;
+            }
+            int move = game.findMove(text);
+            if (move == PackedMove.NONE) {
+                throw new IllegalArgumentException("Illegal move " + text);
+            }
+            game.play(move);
+        }
+    }
+
+    private void describe(CrimsonChess game, int[] moves, StringBuilder out) {
+        int count = game.legalMoves(moves);
+        Piece[][] board = game.rawBoard();
+        PieceColor turn = game.getTurn();
+        int king = MoveGenerator.findKing(board, turn);
+        boolean check = king != Square.NONE && MoveGenerator.isAttacked(board, king & 7, king >>> 3, turn.opposite());
+        int status = count == 0 ? (check ? 2 : 3) : (check ? 1 : 0);
+        out.append("moves=").append(count).append(" status=").append(STATUS_NAMES[status]);
+        if (mode == Mode.EVAL) {
+            out.append(" eval=").append(Search.evaluate(board, turn));
+        } else if (mode == Mode.BEST && count > 0) {
+            SearchResult result = new Search(game).search(new SearchLimits().depth(depth), null);
+            out.append(" bestmove=").append(PackedMove.toCoordinate(result.getBestMove()));
+            if (result.isMate()) {
+                out.append(" mate=").append(result.getMateIn());
+            } else {
+                out.append(" score=").append(result.getScore());
+            }
+        }
+    }
+
+    /**
+     * Entry point for {@code ChessCli batch [status|eval|best] [depth] [threads] [file]}.
+     */
+    static void main(String[] args) throws IOException, InterruptedException {
+        Mode mode;
+        int depth;
+        int threads;
+        InputStream input;
+        try {
+            mode = args.length > 0 ? Mode.valueOf(args[0].toUpperCase(Locale.ROOT)) : Mode.STATUS;
+            depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            if (depth < 0 || threads < 1 || args.length > 4) {
+                throw new IllegalArgumentException();
+            }
+            input = args.length > 3 ? new FileInputStream(args[3]) : System.in;
+        } catch (FileNotFoundException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return;
+        }
+        try (FileOutputStream stdout = new FileOutputStream(FileDescriptor.out)) {
+            long start = System.nanoTime();
+            long lines = new BatchAnalysis(mode, depth, threads).run(input, stdout.getChannel());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf(Locale.ROOT, "%d positions in %.2f s (%.0f per minute)%n",
+                    lines, seconds, lines / seconds * 60);
+        }
+    }
+}
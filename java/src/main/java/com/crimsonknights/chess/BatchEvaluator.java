@@ -0,0 +1,146 @@
+package com.crimsonknights.chess;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Scores many positions at once with the {@link Search} evaluation (material plus piece-square
+ * tables, from the side to move's point of view). Positions are stored as struct-of-arrays: one
+ * byte per square and position, square-major, so the kernel runs 64 passes of a table lookup and
+ * an add over contiguous primitive arrays instead of chasing {@link Piece} references board by
+ * board.
+ *
+ * <pre>
+ * BatchEvaluator [positions] [rounds]
+ * </pre>
+ */
+public final class BatchEvaluator {
+    private static final PieceType[] TYPES = PieceType.values();
+    // Indexed by square, then piece code: 0 for empty, 1 + color * 6 + type for a piece.
+    private static final int[][] TABLE = new int[64][1 + 2 * TYPES.length];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            for (PieceColor color : PieceColor.values()) {
+                for (PieceType type : TYPES) {
+                    TABLE[square][code(Piece.of(type, color))] = Search.pieceScore(type, color, square);
+                }
+            }
+        }
+    }
+
+    private final int capacity;
+    private final byte[] codes;
+    private final int[] signs;
+    private int size;
+
+    public BatchEvaluator(int capacity) {
+        this.capacity = capacity;
+        this.codes = new byte[64 * capacity];
+        this.signs = new int[capacity];
+    }
+
+    /**
+     * Appends the current position of {@code game} and returns its index in the batch.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    public int add(CrimsonChess game) {
+        return add(game.boardView(), game.getTurn());
+    }
+
+    public int add(BoardView board, PieceColor turn) {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full: " + capacity);
+        }
+        int index = size++;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board.pieceAt(square);
+            codes[square * capacity + index] = (byte) (piece == null ? 0 : code(piece));
+        }
+        signs[index] = turn == PieceColor.WHITE ? 1 : -1;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Writes the score of every position into {@code scores}, which must hold {@link #size()}
+     * entries, in the order they were added.
+     */
+    public void evaluate(int[] scores) {
+        int count = size;
+        Arrays.fill(scores, 0, count, 0);
+        for (int square = 0; square < 64; square++) {
+            int[] row = TABLE[square];
+            int base = square * capacity;
+            for (int i = 0; i < count; i++) {
+                scores[i] += row[codes[base + i]];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            scores[i] *= signs[i];
+        }
+    }
+
+    private static int code(Piece piece) {
+        return 1 + piece.getColor().ordinal() * TYPES.length + piece.getType().ordinal();
+    }
+
+    /**
+     * Compares the batch kernel with evaluating the same positions one board at a time.
+     */
+    public static void main(String[] args) {
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        SplittableRandom random = new SplittableRandom(1);
+        BatchEvaluator batch = new BatchEvaluator(positions);
+        Piece[][][] boards = new Piece[positions][][];
+        PieceColor[] turns = new PieceColor[positions];
+        int[] moves = new int[CrimsonChess.MAX_MOVES];
+        CrimsonChess game = new CrimsonChess();
+        for (int i = 0; i < positions; i++) {
+            if (i % 64 == 0) {
+                game.reset();
+            }
+            int count = game.legalMoves(moves);
+            if (count == 0) {
+                game.reset();
+                count = game.legalMoves(moves);
+            }
+            game.play(moves[random.nextInt(count)]);
+            boards[i] = CrimsonChess.deepCloneBoard(game.rawBoard());
+            turns[i] = game.getTurn();
+            batch.add(game);
+        }
+        int[] scalar = new int[positions];
+        int[] batched = new int[positions];
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < positions; i++) {
+                    scalar[i] = Search.evaluate(boards[i], turns[i]);
+                }
+            }
+            long scalarNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                batch.evaluate(batched);
+            }
+            long batchNanos = System.nanoTime() - start;
+            if (!Arrays.equals(scalar, batched)) {
+                throw new IllegalStateException("Batch and scalar scores differ");
+            }
+            double total = (double) positions * rounds;
+            System.out.printf(Locale.ROOT, "scalar %.1f M positions/s, batch %.1f M positions/s, speed-up %.2fx%n",
+                    total * 1e3 / scalarNanos, total * 1e3 / batchNanos, (double) scalarNanos / batchNanos);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.crimsonknights.chess;
+
+/**
+ * Read-only, zero-copy access to a board. Square indices run from 0 (a8) to 63 (h1); see
+ * {@link Square}.
+ */
+@FunctionalInterface
+public interface BoardView {
+    /**
+     * Returns the piece on the square, or {@code null} when it is empty.
+     */
+    Piece pieceAt(int index);
+
+    default Piece pieceAt(int file, int rank) {
+        return pieceAt(rank * 8 + file);
+    }
+}
@@ -1,5 +1,7 @@
 package com.crimsonknights.chess;
 
+import java.util.Map;
+
 /**
  * Tracks castling eligibility for a side.
  */
@@ -31,4 +33,27 @@ public final class CastlingRights {
     public CastlingRights copy() {
         return new CastlingRights(kingSide, queenSide);
     }
+
+    /**
+     * Packs both sides' rights into four bits: white king side, white queen side, black king
+     * side, black queen side, from the lowest bit up.
+     */
+    static int toBits(Map<PieceColor, CastlingRights> castling) {
+        CastlingRights white = castling.get(PieceColor.WHITE);
+        CastlingRights black = castling.get(PieceColor.BLACK);
+        return (white.kingSide ? 1 : 0) | (white.queenSide ? 2 : 0)
+                | (black.kingSide ? 4 : 0) | (black.queenSide ? 8 : 0);
+    }
+
+    /**
+     * Sets the rights in {@code castling} from bits made by {@link #toBits}.
+     */
+    static void fromBits(Map<PieceColor, CastlingRights> castling, int bits) {
+        CastlingRights white = castling.get(PieceColor.WHITE);
+        CastlingRights black = castling.get(PieceColor.BLACK);
+        white.kingSide = (bits & 1) != 0;
+        white.queenSide = (bits & 2) != 0;
+        black.kingSide = (bits & 4) != 0;
+        black.queenSide = (bits & 8) != 0;
+    }
 }
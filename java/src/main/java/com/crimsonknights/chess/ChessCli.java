@@ -3,16 +3,29 @@ package com.crimsonknights.chess;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
- * Simple command line interface for playing chess with the {@link CrimsonChess} engine.
+ * Simple command line interface for playing chess with the {@link CrimsonChess} engine. Started
+ * as {@code ChessCli batch [status|eval|best] [depth] [threads] [file]}, it analyses one position
+ * per input line instead; see {@link BatchAnalysis}. Started as
+ * {@code ChessCli play [white|black] [minutes] [increment seconds] [ponder|noponder]}, it plays a
+ * clocked game against the engine; see {@link EnginePlay}.
  */
 public final class ChessCli {
     private ChessCli() {
     }
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && "batch".equals(args[0])) {
+            BatchAnalysis.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "play".equals(args[0])) {
+            EnginePlay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         CrimsonChess game = new CrimsonChess();
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         System.out.println("Crimson Knights Chess (Java Edition)");
@@ -66,14 +79,14 @@ public final class ChessCli {
         System.out.println("Goodbye.");
     }
 
-    private static void printBoard(CrimsonChess game) {
-        Piece[][] board = game.exportBoard();
+    static void printBoard(CrimsonChess game) {
+        BoardView board = game.boardView();
         System.out.println("  +------------------------+");
         for (int rank = 0; rank < 8; rank++) {
             StringBuilder line = new StringBuilder();
             line.append(8 - rank).append(' ').append('|');
             for (int file = 0; file < 8; file++) {
-                Piece piece = board[rank][file];
+                Piece piece = board.pieceAt(file, rank);
                 if (piece == null) {
                     line.append(" . ");
                 } else {
@@ -0,0 +1,143 @@
+package com.crimsonknights.chess;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link EngineMetrics} that counts every event and keeps a power-of-two histogram of
+ * {@code makeMove} latencies. Counters are striped {@link LongAdder}s, so one instance can be
+ * shared by many games on many threads without them contending.
+ */
+public final class CountingMetrics implements EngineMetrics {
+    private static final int BUCKETS = 40;
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private final LongAccumulator maxMoveNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] latency = new LongAdder[BUCKETS];
+    private final LongAdder generations = new LongAdder();
+    private final LongAdder pseudoLegal = new LongAdder();
+    private final LongAdder legal = new LongAdder();
+    private final LongAdder stateClones = new LongAdder();
+    private final LongAdder gameEndChecks = new LongAdder();
+
+    public CountingMetrics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void moveMade(long nanos) {
+        moves.increment();
+        moveNanos.add(nanos);
+        maxMoveNanos.accumulate(nanos);
+        latency[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)))].increment();
+    }
+
+    @Override
+    public void movesGenerated(int pseudoLegal, int legal) {
+        generations.increment();
+        this.pseudoLegal.add(pseudoLegal);
+        this.legal.add(legal);
+    }
+
+    @Override
+    public void stateCloned() {
+        stateClones.increment();
+    }
+
+    @Override
+    public void gameEndChecked() {
+        gameEndChecks.increment();
+    }
+
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getMeanMoveNanos() {
+        long count = moves.sum();
+        return count == 0 ? 0 : moveNanos.sum() / count;
+    }
+
+    public long getMaxMoveNanos() {
+        return maxMoveNanos.get();
+    }
+
+    /**
+     * Returns an upper bound, within a factor of two, for the given percentile (0-100) of
+     * {@code makeMove} latency, or {@code 0} when no move was made.
+     */
+    public long getMoveNanosPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latency[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min((1L << i) - 1, getMaxMoveNanos());
+            }
+        }
+        return getMaxMoveNanos();
+    }
+
+    public long getGenerations() {
+        return generations.sum();
+    }
+
+    public long getPseudoLegalMoves() {
+        return pseudoLegal.sum();
+    }
+
+    public long getLegalMoves() {
+        return legal.sum();
+    }
+
+    public long getStateClones() {
+        return stateClones.sum();
+    }
+
+    public long getGameEndChecks() {
+        return gameEndChecks.sum();
+    }
+
+    /**
+     * Zeroes every counter. Events recorded while this runs may be partly lost.
+     */
+    public void reset() {
+        moves.reset();
+        moveNanos.reset();
+        maxMoveNanos.reset();
+        for (LongAdder bucket : latency) {
+            bucket.reset();
+        }
+        generations.reset();
+        pseudoLegal.reset();
+        legal.reset();
+        stateClones.reset();
+        gameEndChecks.reset();
+    }
+
+    @Override
+    public String toString() {
+        long pseudo = getPseudoLegalMoves();
+        return String.format(Locale.ROOT,
+                "makeMove %d (mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us), "
+                        + "generations %d (%d pseudo-legal, %d legal, %.1f%% kept), state clones %d, "
+                        + "game-end checks %d",
+                getMoves(), getMeanMoveNanos() / 1000.0, getMoveNanosPercentile(50) / 1000.0,
+                getMoveNanosPercentile(99) / 1000.0, getMaxMoveNanos() / 1000.0, getGenerations(), pseudo,
+                getLegalMoves(), pseudo == 0 ? 0 : getLegalMoves() * 100.0 / pseudo, getStateClones(),
+                getGameEndChecks());
+    }
+}
@@ -1,6 +1,7 @@
 package com.crimsonknights.chess;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashSet;
@@ -15,6 +16,11 @@ import java.util.Set;
  * original web application.
  */
 public class CrimsonChess {
+    /**
+     * Upper bound on the number of legal moves in any position, for sizing move buffers.
+     */
+    public static final int MAX_MOVES = 256;
+
     private static final char[] FILES = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h'};
 
     private Piece[][] board;
@@ -24,11 +30,41 @@ public class CrimsonChess {
     private int halfmoveClock;
     private int fullmoveNumber;
     private final List<MoveRecord> history = new ArrayList<>();
+    private final MoveGenerator generator = new MoveGenerator();
+    private final int[] moveBuffer = new int[MAX_MOVES];
+    private final BoardView boardView = this::pieceAt;
+    private EngineMetrics metrics = EngineMetrics.NONE;
+    private MoveCache moveCache;
+    private volatile Position position;
 
     public CrimsonChess() {
         reset();
     }
 
+    /**
+     * Installs the receiver of this game's measurements; {@code null} restores
+     * {@link EngineMetrics#NONE}. One {@link CountingMetrics} may serve many games.
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics == null ? EngineMetrics.NONE : metrics;
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Looks up and stores this game's legal move lists in {@code cache}, which may be shared with
+     * other games; {@code null} turns caching off.
+     */
+    public void setMoveCache(MoveCache cache) {
+        this.moveCache = cache;
+    }
+
+    public MoveCache getMoveCache() {
+        return moveCache;
+    }
+
     /**
      * Resets the position to the standard chess starting layout.
      */
@@ -42,6 +78,186 @@ public class CrimsonChess {
         halfmoveClock = 0;
         fullmoveNumber = 1;
         history.clear();
+        publish();
+    }
+
+    /**
+     * Replaces the position with the one described by a FEN string and clears the history. The
+     * move counters may be omitted and default to {@code 0 1}.
+     *
+     * @throws IllegalArgumentException if the FEN is malformed, either side lacks exactly one king,
+     *         the side not to move is in check or a castling right has no king and rook at home
+     */
+    public final void loadFen(String fen) {
+        Objects.requireNonNull(fen, "fen");
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length != 4 && fields.length != 6) {
+            throw new IllegalArgumentException("FEN needs 4 or 6 fields: " + fen);
+        }
+        Piece[][] newBoard = parsePlacement(fields[0]);
+        PieceColor newTurn;
+        if ("w".equals(fields[1])) {
+            newTurn = PieceColor.WHITE;
+        } else if ("b".equals(fields[1])) {
+            newTurn = PieceColor.BLACK;
+        } else {
+            throw new IllegalArgumentException("Bad side to move: " + fields[1]);
+        }
+        Map<PieceColor, CastlingRights> newCastling = new EnumMap<>(PieceColor.class);
+        newCastling.put(PieceColor.WHITE, new CastlingRights(false, false));
+        newCastling.put(PieceColor.BLACK, new CastlingRights(false, false));
+        if (!"-".equals(fields[2])) {
+            for (char c : fields[2].toCharArray()) {
+                CastlingRights rights = newCastling.get(Character.isUpperCase(c) ? PieceColor.WHITE : PieceColor.BLACK);
+                if (c == 'K' || c == 'k') {
+                    rights.setKingSide(true);
+                } else if (c == 'Q' || c == 'q') {
+                    rights.setQueenSide(true);
+                } else {
+                    throw new IllegalArgumentException("Bad castling rights: " + fields[2]);
+                }
+            }
+            for (PieceColor color : PieceColor.values()) {
+                CastlingRights rights = newCastling.get(color);
+                int home = color == PieceColor.WHITE ? 7 : 0;
+                boolean king = newBoard[home][4] == Piece.of(PieceType.KING, color);
+                Piece rook = Piece.of(PieceType.ROOK, color);
+                if (rights.canCastleKingSide() && (!king || newBoard[home][7] != rook)
+                        || rights.canCastleQueenSide() && (!king || newBoard[home][0] != rook)) {
+                    throw new IllegalArgumentException("Castling rights without king and rook at home: " + fields[2]);
+                }
+            }
+        }
+        int waiting = MoveGenerator.findKing(newBoard, newTurn.opposite());
+        if (MoveGenerator.isAttacked(newBoard, waiting & 7, waiting >>> 3, newTurn)) {
+            throw new IllegalArgumentException("Side not to move is in check: " + fen);
+        }
+        String newEnPassant = null;
+        if (!"-".equals(fields[3])) {
+            int square = Square.index(fields[3]);
+            int expectedRank = newTurn == PieceColor.WHITE ? 2 : 5;
+            if (square == Square.NONE || Square.rank(square) != expectedRank) {
+                throw new IllegalArgumentException("Bad en passant square: " + fields[3]);
+            }
+            newEnPassant = fields[3];
+        }
+        int newHalfmoveClock = 0;
+        int newFullmoveNumber = 1;
+        if (fields.length == 6) {
+            try {
+                newHalfmoveClock = Integer.parseInt(fields[4]);
+                newFullmoveNumber = Integer.parseInt(fields[5]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad move counters: " + fen, e);
+            }
+            if (newHalfmoveClock < 0 || newFullmoveNumber < 1) {
+                throw new IllegalArgumentException("Bad move counters: " + fen);
+            }
+        }
+        board = newBoard;
+        turn = newTurn;
+        castling = newCastling;
+        enPassant = newEnPassant;
+        halfmoveClock = newHalfmoveClock;
+        fullmoveNumber = newFullmoveNumber;
+        history.clear();
+        publish();
+    }
+
+    /**
+     * Describes the current position in Forsyth-Edwards Notation.
+     */
+    public String toFen() {
+        return fen(boardView, turn, CastlingRights.toBits(castling), enPassant, halfmoveClock, fullmoveNumber);
+    }
+
+    /**
+     * Returns the latest immutable snapshot of this game, published after every move, undo and
+     * load. Any thread may read it while this game keeps being played.
+     */
+    public Position position() {
+        return position;
+    }
+
+    static String fen(BoardView board, PieceColor turn, int castling, String enPassant,
+                      int halfmoveClock, int fullmoveNumber) {
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 0; rank < 8; rank++) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                Piece piece = board.pieceAt(file, rank);
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = piece.getType().getFenChar();
+                fen.append(piece.getColor() == PieceColor.WHITE ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank < 7) {
+                fen.append('/');
+            }
+        }
+        fen.append(turn == PieceColor.WHITE ? " w " : " b ");
+        for (int bit = 0; bit < 4; bit++) {
+            if ((castling & 1 << bit) != 0) {
+                fen.append("KQkq".charAt(bit));
+            }
+        }
+        if (castling == 0) {
+            fen.append('-');
+        }
+        fen.append(' ').append(enPassant == null ? "-" : enPassant);
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    private static Piece[][] parsePlacement(String placement) {
+        String[] rows = placement.split("/", -1);
+        if (rows.length != 8) {
+            throw new IllegalArgumentException("FEN board needs 8 ranks: " + placement);
+        }
+        Piece[][] newBoard = new Piece[8][8];
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (int rank = 0; rank < 8; rank++) {
+            int file = 0;
+            for (char c : rows[rank].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    file += c - '0';
+                } else {
+                    if (file > 7) {
+                        throw new IllegalArgumentException("FEN rank " + (8 - rank) + " is too long: " + placement);
+                    }
+                    PieceColor color = Character.isUpperCase(c) ? PieceColor.WHITE : PieceColor.BLACK;
+                    PieceType type = PieceType.fromFenChar(c);
+                    if (type == PieceType.PAWN && (rank == 0 || rank == 7)) {
+                        throw new IllegalArgumentException("Pawn on the back rank: " + placement);
+                    }
+                    if (type == PieceType.KING) {
+                        if (color == PieceColor.WHITE) {
+                            whiteKings++;
+                        } else {
+                            blackKings++;
+                        }
+                    }
+                    newBoard[rank][file++] = Piece.of(type, color);
+                }
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("FEN rank " + (8 - rank) + " does not cover 8 files: " + placement);
+            }
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("Each side needs exactly one king: " + placement);
+        }
+        return newBoard;
     }
 
     /**
@@ -51,6 +267,14 @@ public class CrimsonChess {
         return deepCloneBoard(board);
     }
 
+    /**
+     * Returns a read-only view of the live board. The view is not a snapshot: it reflects every
+     * later move, and reading it allocates nothing.
+     */
+    public BoardView boardView() {
+        return boardView;
+    }
+
     public Piece getPiece(String square) {
         Coordinate coord = squareToCoords(square);
         if (coord == null) {
@@ -59,29 +283,226 @@ public class CrimsonChess {
         return board[coord.rank][coord.file];
     }
 
+    /**
+     * Returns the piece on the given square index without allocating. Indices run from 0 (a8) to
+     * 63 (h1), matching the row-major layout of {@link #exportBoard()}.
+     */
+    public Piece pieceAt(int index) {
+        return board[index >>> 3][index & 7];
+    }
+
     public PieceColor getTurn() {
         return turn;
     }
 
+    /**
+     * Returns the legal moves of the piece on {@code fromSquare}, or of every piece of the side to
+     * move when {@code fromSquare} is {@code null}.
+     */
     public List<Move> moves(String fromSquare) {
-        GameState state = cloneState();
-        List<Move> pseudoMoves = generatePseudoMoves(state, fromSquare);
-        List<Move> legalMoves = new ArrayList<>();
-        for (Move move : pseudoMoves) {
-            if (isLegalMove(state, move)) {
-                legalMoves.add(move.copy());
+        int from = Square.NONE;
+        if (fromSquare != null) {
+            from = Square.index(fromSquare);
+            if (from == Square.NONE) {
+                return new ArrayList<>();
             }
         }
+        int count = generate(from, moveBuffer);
+        List<Move> legalMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legalMoves.add(toMove(moveBuffer[i]));
+        }
         return legalMoves;
     }
 
+    /**
+     * Returns every legal move in the position, generated in a single pass.
+     */
+    public List<Move> legalMoves() {
+        return moves(null);
+    }
+
+    /**
+     * Writes every legal move into {@code buffer} as a {@link PackedMove} and returns the count.
+     * The buffer must hold at least {@link #MAX_MOVES} entries. Nothing is allocated.
+     */
+    public int legalMoves(int[] buffer) {
+        return generate(Square.NONE, buffer);
+    }
+
+    /**
+     * Returns a bitmask of the squares the piece on {@code fromIndex} can legally move to, with bit
+     * {@code i} standing for square index {@code i} (see {@link Square}).
+     */
+    public long legalDestinations(int fromIndex) {
+        int count = generate(fromIndex, moveBuffer);
+        long mask = 0L;
+        for (int i = 0; i < count; i++) {
+            mask |= 1L << PackedMove.to(moveBuffer[i]);
+        }
+        return mask;
+    }
+
+    /**
+     * Fills {@code masks} (at least 64 entries) with the legal destination bitmask of every square,
+     * so a UI can highlight all movable pieces and their targets without building moves.
+     */
+    public void legalDestinations(long[] masks) {
+        Arrays.fill(masks, 0, 64, 0L);
+        int count = generate(Square.NONE, moveBuffer);
+        for (int i = 0; i < count; i++) {
+            int move = moveBuffer[i];
+            masks[PackedMove.from(move)] |= 1L << PackedMove.to(move);
+        }
+    }
+
+    /**
+     * Returns the squares attacked by the piece on {@code square} as a bitmask in the layout of
+     * {@link #legalDestinations(int)}, or {@code 0} for an empty square. Attacks count defended
+     * pieces and ignore pins, which is what threat maps and evaluation want.
+     */
+    public long attacksFrom(int square) {
+        return MoveGenerator.attacksFrom(board, square);
+    }
+
+    /**
+     * Returns every square attacked by {@code side}, in the same layout as
+     * {@link #attacksFrom(int)}.
+     */
+    public long attacks(PieceColor side) {
+        return MoveGenerator.attackedBy(board, side);
+    }
+
+    /**
+     * Returns the number of legal moves of the piece on {@code square}, counting each promotion
+     * choice. Pieces of the side not to move are counted as if it were their turn, without en
+     * passant.
+     */
+    public int mobility(int square) {
+        Piece piece = pieceAt(square);
+        if (piece == null) {
+            return 0;
+        }
+        return piece.getColor() == turn
+                ? generate(square, moveBuffer)
+                : generator.generate(board, piece.getColor(), castling, null, square, moveBuffer);
+    }
+
+    /**
+     * Returns the number of legal moves of {@code side}, on the same terms as
+     * {@link #mobility(int)}.
+     */
+    public int mobility(PieceColor side) {
+        return side == turn
+                ? generate(Square.NONE, moveBuffer)
+                : generator.generate(board, side, castling, null, Square.NONE, moveBuffer);
+    }
+
+    /**
+     * Fills {@code counts} (at least 64 entries) with the legal move count of every piece of both
+     * sides, on the same terms as {@link #mobility(int)}, from one generation pass per side.
+     */
+    public void mobility(int[] counts) {
+        Arrays.fill(counts, 0, 64, 0);
+        countMoves(mobility(PieceColor.WHITE), counts);
+        countMoves(mobility(PieceColor.BLACK), counts);
+    }
+
+    private void countMoves(int count, int[] counts) {
+        for (int i = 0; i < count; i++) {
+            counts[PackedMove.from(moveBuffer[i])]++;
+        }
+    }
+
+    /**
+     * Finds the legal move written in coordinate notation, e.g. {@code e2e4} or {@code e7e8q}, and
+     * returns it as a {@link PackedMove}, or {@link PackedMove#NONE} when no legal move matches.
+     */
+    public int findMove(String coordinate) {
+        if (coordinate == null || coordinate.length() < 4 || coordinate.length() > 5) {
+            return PackedMove.NONE;
+        }
+        int from = Square.index(coordinate.substring(0, 2));
+        int to = Square.index(coordinate.substring(2, 4));
+        PieceType promotion = null;
+        if (coordinate.length() == 5) {
+            char c = Character.toLowerCase(coordinate.charAt(4));
+            if (c != 'q' && c != 'r' && c != 'b' && c != 'n') {
+                return PackedMove.NONE;
+            }
+            promotion = PieceType.fromFenChar(c);
+        }
+        if (from == Square.NONE || to == Square.NONE) {
+            return PackedMove.NONE;
+        }
+        int count = generate(from, moveBuffer);
+        for (int i = 0; i < count; i++) {
+            int move = moveBuffer[i];
+            if (PackedMove.to(move) == to && PackedMove.promotion(move) == promotion) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    /**
+     * Plays a legal move from {@link #legalMoves(int[])} or {@link #findMove} without building a
+     * {@link MoveRecord}: no notation, no check or game-end detection and no undo information.
+     * The history is cleared, so this suits replaying long move lists such as a UCI
+     * {@code position} command.
+     */
+    public void play(int move) {
+        MoveGenerator.makeMove(board, move, turn);
+        MoveGenerator.updateCastling(castling, move, turn);
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        enPassant = PackedMove.isDoublePush(move) ? Square.name((from + to) >>> 1) : null;
+        if (PackedMove.piece(move) == PieceType.PAWN || PackedMove.isCapture(move)) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
+        if (turn == PieceColor.BLACK) {
+            fullmoveNumber++;
+        }
+        turn = turn.opposite();
+        history.clear();
+        publish();
+    }
+
     public MoveRecord makeMove(String from, String to) {
         return makeMove(from, to, null);
     }
 
+    /**
+     * Plays a legal move, promoting to a queen unless {@code promotionChoice} says otherwise, and
+     * returns its record, or {@code null} when no such move is legal. Calls slower than the
+     * threshold are recorded as {@code com.crimsonknights.chess.SlowMove} Flight Recorder events.
+     */
     public MoveRecord makeMove(String from, String to, Character promotionChoice) {
         Objects.requireNonNull(from, "from");
         Objects.requireNonNull(to, "to");
+        SlowMoveEvent event = new SlowMoveEvent();
+        event.begin();
+        boolean timed = metrics != EngineMetrics.NONE;
+        long start = timed ? System.nanoTime() : 0;
+        MoveRecord record = applyLegalMove(from, to, promotionChoice);
+        if (timed) {
+            metrics.moveMade(System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.from = from;
+            event.to = to;
+            event.legal = record != null;
+            event.historyLength = history.size();
+            event.fen = toFen();
+            event.commit();
+        }
+        return record;
+    }
+
+    private MoveRecord applyLegalMove(String from, String to, Character promotionChoice) {
         List<Move> legalMoves = moves(from);
         Move selected = null;
         for (Move move : legalMoves) {
@@ -106,9 +527,8 @@ public class CrimsonChess {
         GameState snapshot = cloneState();
         MoveApplication applied = applyMove(snapshot, selected, false);
         loadState(applied.state);
-        String notation = describeMove(applied, selected);
         Piece capturedPiece = applied.capturedPiece;
-        MoveRecord record = new MoveRecord(selected, notation, capturedPiece, applied.check,
+        MoveRecord record = new MoveRecord(selected, null, capturedPiece, applied.check,
                 applied.checkmate, applied.stalemate, applied.draw, applied.drawReason,
                 applied.prevState, turn == PieceColor.WHITE ? fullmoveNumber - 1 : fullmoveNumber);
         history.add(record);
@@ -144,320 +564,109 @@ public class CrimsonChess {
                 PieceType.ROOK
         };
         for (int file = 0; file < 8; file++) {
-            newBoard[0][file] = new Piece(pieceOrder[file], PieceColor.BLACK);
-            newBoard[1][file] = new Piece(PieceType.PAWN, PieceColor.BLACK);
-            newBoard[6][file] = new Piece(PieceType.PAWN, PieceColor.WHITE);
-            newBoard[7][file] = new Piece(pieceOrder[file], PieceColor.WHITE);
+            newBoard[0][file] = Piece.of(pieceOrder[file], PieceColor.BLACK);
+            newBoard[1][file] = Piece.of(PieceType.PAWN, PieceColor.BLACK);
+            newBoard[6][file] = Piece.of(PieceType.PAWN, PieceColor.WHITE);
+            newBoard[7][file] = Piece.of(pieceOrder[file], PieceColor.WHITE);
         }
         return newBoard;
     }
 
-    private static Piece[][] deepCloneBoard(Piece[][] source) {
-        Piece[][] clone = new Piece[8][8];
-        for (int rank = 0; rank < 8; rank++) {
-            for (int file = 0; file < 8; file++) {
-                Piece piece = source[rank][file];
-                clone[rank][file] = piece == null ? null : piece.copy();
-            }
-        }
-        return clone;
-    }
-
-    private GameState cloneState() {
-        Piece[][] boardCopy = deepCloneBoard(board);
-        Map<PieceColor, CastlingRights> castlingCopy = new EnumMap<>(PieceColor.class);
-        for (Map.Entry<PieceColor, CastlingRights> entry : castling.entrySet()) {
-            castlingCopy.put(entry.getKey(), entry.getValue().copy());
+    private int generate(int from, int[] buffer) {
+        if (moveCache == null) {
+            int count = generator.generate(board, turn, castling, enPassant, from, buffer);
+            metrics.movesGenerated(generator.pseudoLegalCount(), count);
+            return count;
         }
-        return new GameState(boardCopy, turn, castlingCopy, enPassant, halfmoveClock, fullmoveNumber);
-    }
-
-    private void loadState(GameState state) {
-        board = deepCloneBoard(state.getBoard());
-        castling = new EnumMap<>(PieceColor.class);
-        for (Map.Entry<PieceColor, CastlingRights> entry : state.getCastling().entrySet()) {
-            castling.put(entry.getKey(), entry.getValue().copy());
+        // The cache holds whole-position lists; single-piece queries are filtered from them.
+        long hash = Zobrist.hash(this);
+        int[] cached = moveCache.get(hash);
+        if (cached == null) {
+            int count = generator.generate(board, turn, castling, enPassant, Square.NONE, moveBuffer);
+            metrics.movesGenerated(generator.pseudoLegalCount(), count);
+            moveCache.put(hash, moveBuffer, count);
+            return filter(moveBuffer, count, from, buffer);
         }
-        turn = state.getTurn();
-        enPassant = state.getEnPassant();
-        halfmoveClock = state.getHalfmoveClock();
-        fullmoveNumber = state.getFullmoveNumber();
+        return filter(cached, cached.length, from, buffer);
     }
 
-    private List<Move> generatePseudoMoves(GameState state, String fromSquare) {
-        List<Move> moves = new ArrayList<>();
-        if (fromSquare != null) {
-            Coordinate coord = squareToCoords(fromSquare);
-            if (coord == null) {
-                return moves;
+    private static int filter(int[] moves, int count, int from, int[] buffer) {
+        if (from == Square.NONE) {
+            if (moves != buffer) {
+                System.arraycopy(moves, 0, buffer, 0, count);
             }
-            Piece piece = state.getBoard()[coord.rank][coord.file];
-            if (piece == null || piece.getColor() != state.getTurn()) {
-                return moves;
-            }
-            moves.addAll(generatePieceMoves(state, fromSquare, piece));
-            return moves;
+            return count;
         }
-
-        for (int rank = 0; rank < 8; rank++) {
-            for (int file = 0; file < 8; file++) {
-                Piece piece = state.getBoard()[rank][file];
-                if (piece != null && piece.getColor() == state.getTurn()) {
-                    String square = coordsToSquare(file, rank);
-                    moves.addAll(generatePieceMoves(state, square, piece));
-                }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.from(moves[i]) == from) {
+                buffer[kept++] = moves[i];
             }
         }
-        return moves;
+        return kept;
     }
 
-    private List<Move> generatePieceMoves(GameState state, String square, Piece piece) {
-        switch (piece.getType()) {
-            case PAWN:
-                return generatePawnMoves(state, square);
-            case KNIGHT:
-                return generateKnightMoves(state, square);
-            case BISHOP:
-                return generateSlidingMoves(state, square, List.of(
-                        new Coordinate(1, 1),
-                        new Coordinate(1, -1),
-                        new Coordinate(-1, 1),
-                        new Coordinate(-1, -1)
-                ));
-            case ROOK:
-                return generateSlidingMoves(state, square, List.of(
-                        new Coordinate(1, 0),
-                        new Coordinate(-1, 0),
-                        new Coordinate(0, 1),
-                        new Coordinate(0, -1)
-                ));
-            case QUEEN:
-                return generateSlidingMoves(state, square, List.of(
-                        new Coordinate(1, 0),
-                        new Coordinate(-1, 0),
-                        new Coordinate(0, 1),
-                        new Coordinate(0, -1),
-                        new Coordinate(1, 1),
-                        new Coordinate(1, -1),
-                        new Coordinate(-1, 1),
-                        new Coordinate(-1, -1)
-                ));
-            case KING:
-                return generateKingMoves(state, square);
-            default:
-                return List.of();
+    static Piece[][] deepCloneBoard(Piece[][] source) {
+        // Pieces are shared flyweights, so copying the rows is a full copy of the board.
+        Piece[][] clone = new Piece[8][];
+        for (int rank = 0; rank < 8; rank++) {
+            clone[rank] = source[rank].clone();
         }
+        return clone;
     }
 
-    private List<Move> generatePawnMoves(GameState state, String square) {
-        List<Move> moves = new ArrayList<>();
-        Coordinate coord = squareToCoords(square);
-        Piece piece = state.getBoard()[coord.rank][coord.file];
-        int dir = piece.getColor() == PieceColor.WHITE ? -1 : 1;
-        int startRank = piece.getColor() == PieceColor.WHITE ? 6 : 1;
-        int promotionRank = piece.getColor() == PieceColor.WHITE ? 0 : 7;
-
-        int forwardRank = coord.rank + dir;
-        if (forwardRank >= 0 && forwardRank < 8 && state.getBoard()[forwardRank][coord.file] == null) {
-            moves.addAll(createPawnMove(square, coord.file, forwardRank, piece.getColor(), false,
-                    false, promotionRank, null));
-            int doubleRank = coord.rank + dir * 2;
-            if (coord.rank == startRank && state.getBoard()[doubleRank][coord.file] == null) {
-                MoveFlags flags = new MoveFlags();
-                flags.setDoublePush(true);
-                moves.add(new Move(square, coordsToSquare(coord.file, doubleRank), PieceType.PAWN,
-                        piece.getColor(), null, null, flags, null));
-            }
-        }
-
-        for (int df : new int[]{-1, 1}) {
-            int file = coord.file + df;
-            if (file < 0 || file > 7) {
-                continue;
-            }
-            int rank = coord.rank + dir;
-            if (rank < 0 || rank > 7) {
-                continue;
-            }
-            Piece target = state.getBoard()[rank][file];
-            if (target != null && target.getColor() != piece.getColor()) {
-                moves.addAll(createPawnMove(square, file, rank, piece.getColor(), true,
-                        false, promotionRank, target));
-            } else if (target == null) {
-                String targetSquare = coordsToSquare(file, rank);
-                if (state.getEnPassant() != null && state.getEnPassant().equals(targetSquare)) {
-                    MoveFlags flags = new MoveFlags();
-                    flags.setEnPassant(true);
-                    flags.setCapture(true);
-                    Piece captured = new Piece(PieceType.PAWN, piece.getColor().opposite());
-                    String captureSquare = coordsToSquare(file, rank + (piece.getColor() == PieceColor.WHITE ? 1 : -1));
-                    moves.add(new Move(square, targetSquare, PieceType.PAWN, piece.getColor(), captured,
-                            null, flags, captureSquare));
-                }
-            }
-        }
+    Piece[][] rawBoard() {
+        return board;
+    }
 
-        return moves;
+    Map<PieceColor, CastlingRights> rawCastling() {
+        return castling;
     }
 
-    private List<Move> createPawnMove(String from, int file, int rank, PieceColor color,
-                                      boolean capture, boolean enPassant, int promotionRank,
-                                      Piece capturedPiece) {
-        List<Move> moves = new ArrayList<>();
-        boolean promotion = rank == promotionRank;
-        String to = coordsToSquare(file, rank);
-        MoveFlags baseFlags = new MoveFlags();
-        baseFlags.setCapture(capture);
-        baseFlags.setEnPassant(enPassant);
-        if (!promotion) {
-            moves.add(new Move(from, to, PieceType.PAWN, color, capturedPiece, null, baseFlags, null));
-            return moves;
-        }
-        baseFlags.setPromotion(true);
-        for (PieceType promotionType : List.of(PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT)) {
-            MoveFlags promotionFlags = baseFlags.copy();
-            moves.add(new Move(from, to, PieceType.PAWN, color, capturedPiece, promotionType, promotionFlags, null));
-        }
-        return moves;
+    String rawEnPassant() {
+        return enPassant;
     }
 
-    private List<Move> generateKnightMoves(GameState state, String square) {
-        List<Move> moves = new ArrayList<>();
-        Coordinate coord = squareToCoords(square);
-        Piece piece = state.getBoard()[coord.rank][coord.file];
-        int[][] deltas = {
-                {1, 2}, {2, 1}, {-1, 2}, {-2, 1},
-                {1, -2}, {2, -1}, {-1, -2}, {-2, -1}
-        };
-        for (int[] delta : deltas) {
-            int file = coord.file + delta[0];
-            int rank = coord.rank + delta[1];
-            if (file < 0 || file > 7 || rank < 0 || rank > 7) {
-                continue;
-            }
-            Piece target = state.getBoard()[rank][file];
-            if (target == null || target.getColor() != piece.getColor()) {
-                MoveFlags flags = new MoveFlags();
-                if (target != null) {
-                    flags.setCapture(true);
-                }
-                moves.add(new Move(square, coordsToSquare(file, rank), PieceType.KNIGHT,
-                        piece.getColor(), target, null, flags, null));
-            }
-        }
-        return moves;
+    /**
+     * Returns an independent copy of the current position.
+     */
+    GameState snapshot() {
+        return cloneState();
     }
 
-    private List<Move> generateSlidingMoves(GameState state, String square, List<Coordinate> directions) {
-        List<Move> moves = new ArrayList<>();
-        Coordinate coord = squareToCoords(square);
-        Piece piece = state.getBoard()[coord.rank][coord.file];
-        for (Coordinate direction : directions) {
-            int file = coord.file + direction.file;
-            int rank = coord.rank + direction.rank;
-            while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
-                Piece target = state.getBoard()[rank][file];
-                if (target == null) {
-                    moves.add(new Move(square, coordsToSquare(file, rank), piece.getType(),
-                            piece.getColor(), null, null, new MoveFlags(), null));
-                } else {
-                    if (target.getColor() != piece.getColor()) {
-                        MoveFlags flags = new MoveFlags();
-                        flags.setCapture(true);
-                        moves.add(new Move(square, coordsToSquare(file, rank), piece.getType(),
-                                piece.getColor(), target, null, flags, null));
-                    }
-                    break;
-                }
-                file += direction.file;
-                rank += direction.rank;
-            }
-        }
-        return moves;
+    /**
+     * Replaces the position with a copy of {@code state} and clears the history.
+     */
+    void restore(GameState state) {
+        loadState(state);
+        history.clear();
     }
 
-    private List<Move> generateKingMoves(GameState state, String square) {
-        List<Move> moves = new ArrayList<>();
-        Coordinate coord = squareToCoords(square);
-        Piece piece = state.getBoard()[coord.rank][coord.file];
-        for (int dr = -1; dr <= 1; dr++) {
-            for (int df = -1; df <= 1; df++) {
-                if (dr == 0 && df == 0) {
-                    continue;
-                }
-                int file = coord.file + df;
-                int rank = coord.rank + dr;
-                if (file < 0 || file > 7 || rank < 0 || rank > 7) {
-                    continue;
-                }
-                Piece target = state.getBoard()[rank][file];
-                if (target == null || target.getColor() != piece.getColor()) {
-                    MoveFlags flags = new MoveFlags();
-                    if (target != null) {
-                        flags.setCapture(true);
-                    }
-                    moves.add(new Move(square, coordsToSquare(file, rank), PieceType.KING,
-                            piece.getColor(), target, null, flags, null));
-                }
-            }
+    private GameState cloneState() {
+        metrics.stateCloned();
+        Piece[][] boardCopy = deepCloneBoard(board);
+        Map<PieceColor, CastlingRights> castlingCopy = new EnumMap<>(PieceColor.class);
+        for (Map.Entry<PieceColor, CastlingRights> entry : castling.entrySet()) {
+            castlingCopy.put(entry.getKey(), entry.getValue().copy());
         }
-        moves.addAll(generateCastlingMoves(state, square));
-        return moves;
+        return new GameState(boardCopy, turn, castlingCopy, enPassant, halfmoveClock, fullmoveNumber);
     }
 
-    private List<Move> generateCastlingMoves(GameState state, String square) {
-        List<Move> moves = new ArrayList<>();
-        Coordinate coord = squareToCoords(square);
-        Piece piece = state.getBoard()[coord.rank][coord.file];
-        if (piece == null || piece.getType() != PieceType.KING) {
-            return moves;
-        }
-        CastlingRights rights = state.getCastling().get(piece.getColor());
-        if (rights == null) {
-            return moves;
-        }
-        PieceColor enemy = piece.getColor().opposite();
-        String kingSquare = coordsToSquare(coord.file, coord.rank);
-        if (rights.canCastleKingSide()) {
-            Coordinate rookSquare = new Coordinate(7, coord.rank);
-            if (state.getBoard()[rookSquare.rank][rookSquare.file] != null
-                    && state.getBoard()[rookSquare.rank][rookSquare.file].getType() == PieceType.ROOK
-                    && state.getBoard()[rookSquare.rank][rookSquare.file].getColor() == piece.getColor()
-                    && state.getBoard()[coord.rank][coord.file + 1] == null
-                    && state.getBoard()[coord.rank][coord.file + 2] == null
-                    && !isSquareAttacked(state, kingSquare, enemy)
-                    && !isSquareAttacked(state, coordsToSquare(coord.file + 1, coord.rank), enemy)
-                    && !isSquareAttacked(state, coordsToSquare(coord.file + 2, coord.rank), enemy)) {
-                MoveFlags flags = new MoveFlags();
-                flags.setCastle(MoveFlags.CastlingSide.KING_SIDE);
-                moves.add(new Move(square, coordsToSquare(coord.file + 2, coord.rank), PieceType.KING,
-                        piece.getColor(), null, null, flags, null));
-            }
-        }
-        if (rights.canCastleQueenSide()) {
-            Coordinate rookSquare = new Coordinate(0, coord.rank);
-            if (state.getBoard()[rookSquare.rank][rookSquare.file] != null
-                    && state.getBoard()[rookSquare.rank][rookSquare.file].getType() == PieceType.ROOK
-                    && state.getBoard()[rookSquare.rank][rookSquare.file].getColor() == piece.getColor()
-                    && state.getBoard()[coord.rank][coord.file - 1] == null
-                    && state.getBoard()[coord.rank][coord.file - 2] == null
-                    && state.getBoard()[coord.rank][coord.file - 3] == null
-                    && !isSquareAttacked(state, kingSquare, enemy)
-                    && !isSquareAttacked(state, coordsToSquare(coord.file - 1, coord.rank), enemy)
-                    && !isSquareAttacked(state, coordsToSquare(coord.file - 2, coord.rank), enemy)) {
-                MoveFlags flags = new MoveFlags();
-                flags.setCastle(MoveFlags.CastlingSide.QUEEN_SIDE);
-                moves.add(new Move(square, coordsToSquare(coord.file - 2, coord.rank), PieceType.KING,
-                        piece.getColor(), null, null, flags, null));
-            }
+    private void loadState(GameState state) {
+        board = deepCloneBoard(state.getBoard());
+        castling = new EnumMap<>(PieceColor.class);
+        for (Map.Entry<PieceColor, CastlingRights> entry : state.getCastling().entrySet()) {
+            castling.put(entry.getKey(), entry.getValue().copy());
         }
-        return moves;
+        turn = state.getTurn();
+        enPassant = state.getEnPassant();
+        halfmoveClock = state.getHalfmoveClock();
+        fullmoveNumber = state.getFullmoveNumber();
+        publish();
     }
 
-    private boolean isLegalMove(GameState state, Move move) {
-        GameState snapshot = state.copy();
-        MoveApplication result = applyMove(snapshot, move, true);
-        return !isKingAttacked(result.state, move.getColor());
+    private void publish() {
+        position = Position.of(board, turn, castling, enPassant, halfmoveClock, fullmoveNumber);
     }
 
     private MoveApplication applyMove(GameState state, Move move, boolean simulate) {
@@ -483,7 +692,7 @@ public class CrimsonChess {
 
         Piece pieceToPlace = move.getPromotion() == null
                 ? movingPiece
-                : new Piece(move.getPromotion(), move.getColor());
+                : Piece.of(move.getPromotion(), move.getColor());
         boardRef[to.rank][to.file] = pieceToPlace;
 
         if (move.getFlags().getCastle() != null) {
@@ -564,16 +773,15 @@ public class CrimsonChess {
         boolean draw = false;
         String drawReason = null;
         if (!simulate) {
-            List<Move> replies = new ArrayList<>();
-            replies.addAll(generatePseudoMoves(state, null));
-            replies.removeIf(reply -> !isLegalMove(state, reply));
-            boolean noMoves = replies.isEmpty();
+            metrics.gameEndChecked();
+            boolean noMoves = !generator.hasLegalMove(state.getBoard(), state.getTurn(), state.getCastling(),
+                    state.getEnPassant());
             checkmate = noMoves && check;
             stalemate = noMoves && !check;
             if (stalemate) {
                 draw = true;
                 drawReason = "stalemate";
-            } else if (isInsufficientMaterial(state)) {
+            } else if (isInsufficientMaterial(state.getBoard())) {
                 draw = true;
                 drawReason = "insufficient";
             } else if (state.getHalfmoveClock() >= 100) {
@@ -586,97 +794,25 @@ public class CrimsonChess {
     }
 
     private boolean isKingAttacked(GameState state, PieceColor color) {
-        Coordinate kingSquare = findKing(state, color);
-        if (kingSquare == null) {
-            return false;
-        }
-        return isSquareAttacked(state, coordsToSquare(kingSquare.file, kingSquare.rank), color.opposite());
-    }
-
-    private Coordinate findKing(GameState state, PieceColor color) {
-        for (int rank = 0; rank < 8; rank++) {
-            for (int file = 0; file < 8; file++) {
-                Piece piece = state.getBoard()[rank][file];
-                if (piece != null && piece.getType() == PieceType.KING && piece.getColor() == color) {
-                    return new Coordinate(file, rank);
-                }
-            }
-        }
-        return null;
+        int king = MoveGenerator.findKing(state.getBoard(), color);
+        return king != Square.NONE
+                && MoveGenerator.isAttacked(state.getBoard(), king & 7, king >>> 3, color.opposite());
     }
 
-    private boolean isSquareAttacked(GameState state, String square, PieceColor attackerColor) {
-        Coordinate coord = squareToCoords(square);
-        if (coord == null) {
-            return false;
-        }
-        int file = coord.file;
-        int rank = coord.rank;
-
-        int pawnDir = attackerColor == PieceColor.WHITE ? 1 : -1;
-        int pawnRank = rank + pawnDir;
-        for (int df : new int[]{-1, 1}) {
-            int fileIndex = file + df;
-            if (fileIndex < 0 || fileIndex > 7 || pawnRank < 0 || pawnRank > 7) {
-                continue;
-            }
-            Piece piece = state.getBoard()[pawnRank][fileIndex];
-            if (piece != null && piece.getColor() == attackerColor && piece.getType() == PieceType.PAWN) {
-                return true;
-            }
-        }
-
-        int[][] knightMoves = {
-                {1, 2}, {2, 1}, {-1, 2}, {-2, 1},
-                {1, -2}, {2, -1}, {-1, -2}, {-2, -1}
-        };
-        for (int[] delta : knightMoves) {
-            int fileIndex = file + delta[0];
-            int rankIndex = rank + delta[1];
-            if (fileIndex < 0 || fileIndex > 7 || rankIndex < 0 || rankIndex > 7) {
-                continue;
-            }
-            Piece piece = state.getBoard()[rankIndex][fileIndex];
-            if (piece != null && piece.getColor() == attackerColor && piece.getType() == PieceType.KNIGHT) {
-                return true;
-            }
-        }
-
-        Coordinate[] directions = {
-                new Coordinate(1, 0), new Coordinate(-1, 0), new Coordinate(0, 1), new Coordinate(0, -1),
-                new Coordinate(1, 1), new Coordinate(1, -1), new Coordinate(-1, 1), new Coordinate(-1, -1)
-        };
-        for (Coordinate direction : directions) {
-            int fileIndex = file + direction.file;
-            int rankIndex = rank + direction.rank;
-            while (fileIndex >= 0 && fileIndex < 8 && rankIndex >= 0 && rankIndex < 8) {
-                Piece piece = state.getBoard()[rankIndex][fileIndex];
-                if (piece != null) {
-                    if (piece.getColor() == attackerColor) {
-                        boolean diagonal = Math.abs(direction.file) == Math.abs(direction.rank);
-                        boolean orthogonal = direction.file == 0 || direction.rank == 0;
-                        if ((diagonal && (piece.getType() == PieceType.BISHOP || piece.getType() == PieceType.QUEEN))
-                                || (orthogonal && (piece.getType() == PieceType.ROOK || piece.getType() == PieceType.QUEEN))
-                                || (Math.abs(direction.file) <= 1 && Math.abs(direction.rank) <= 1
-                                && piece.getType() == PieceType.KING)) {
-                            return true;
-                        }
-                    }
-                    break;
-                }
-                fileIndex += direction.file;
-                rankIndex += direction.rank;
-            }
-        }
-        return false;
+    /**
+     * Returns whether neither side has the material left to mate, the rule that makes a move
+     * reaching this position a draw.
+     */
+    public boolean isInsufficientMaterial() {
+        return isInsufficientMaterial(board);
     }
 
-    private boolean isInsufficientMaterial(GameState state) {
+    private boolean isInsufficientMaterial(Piece[][] board) {
         List<Piece> pieces = new ArrayList<>();
         List<String> squares = new ArrayList<>();
         for (int rank = 0; rank < 8; rank++) {
             for (int file = 0; file < 8; file++) {
-                Piece piece = state.getBoard()[rank][file];
+                Piece piece = board[rank][file];
                 if (piece != null) {
                     pieces.add(piece);
                     squares.add(coordsToSquare(file, rank));
@@ -707,6 +843,10 @@ public class CrimsonChess {
     }
 
     public String getPieceSymbol(PieceType type, PieceColor color) {
+        return pieceSymbol(type, color);
+    }
+
+    static String pieceSymbol(PieceType type, PieceColor color) {
         switch (type) {
             case KING:
                 return color == PieceColor.WHITE ? "\u2654" : "\u265A";
@@ -725,32 +865,26 @@ public class CrimsonChess {
         }
     }
 
-    private String describeMove(MoveApplication result, Move move) {
-        if (move.getFlags().getCastle() == MoveFlags.CastlingSide.KING_SIDE) {
-            return "O-O";
-        }
-        if (move.getFlags().getCastle() == MoveFlags.CastlingSide.QUEEN_SIDE) {
-            return "O-O-O";
-        }
-        String pieceSymbol = getPieceSymbol(move.getPiece(), move.getColor());
-        String captureSymbol = move.getFlags().isCapture() ? "×" : "–";
-        String promotionSuffix = "";
-        if (move.getPromotion() != null) {
-            promotionSuffix = " (= " + getPieceSymbol(move.getPromotion(), move.getColor()) + ")";
-        }
-        String notation = pieceSymbol + " " + move.getFrom() + " " + captureSymbol + " " + move.getTo() + promotionSuffix;
-        StringBuilder markers = new StringBuilder();
-        if (result.checkmate) {
-            markers.append('#');
-        } else if (result.check) {
-            markers.append('+');
-        } else if (result.stalemate || result.draw) {
-            markers.append('½');
-        }
-        if (markers.length() > 0) {
-            notation = notation + " " + markers;
-        }
-        return notation;
+    private Move toMove(int packed) {
+        int from = PackedMove.from(packed);
+        int to = PackedMove.to(packed);
+        PieceType promotion = PackedMove.promotion(packed);
+        MoveFlags flags = new MoveFlags();
+        flags.setCapture(PackedMove.isCapture(packed));
+        flags.setEnPassant(PackedMove.isEnPassant(packed));
+        flags.setPromotion(promotion != null);
+        flags.setDoublePush(PackedMove.isDoublePush(packed));
+        flags.setCastle(PackedMove.castle(packed));
+        Piece captured = null;
+        String captureSquare = null;
+        if (flags.isEnPassant()) {
+            captured = Piece.of(PieceType.PAWN, turn.opposite());
+            captureSquare = Square.name((from & ~7) | (to & 7));
+        } else if (flags.isCapture()) {
+            captured = board[to >>> 3][to & 7];
+        }
+        return new Move(Square.name(from), Square.name(to), PackedMove.piece(packed), turn, captured,
+                promotion, flags, captureSquare);
     }
 
     private static Coordinate squareToCoords(String square) {
@@ -0,0 +1,41 @@
+package com.crimsonknights.chess;
+
+/**
+ * Receives measurements from a {@link CrimsonChess} game. Every method has an empty default, and
+ * the game skips the clock reads entirely while {@link #NONE} is installed, so the default costs
+ * a predictable call the JIT removes. Implementations shared between games must be thread-safe;
+ * see {@link CountingMetrics}.
+ */
+public interface EngineMetrics {
+    /**
+     * Discards everything; the default for new games.
+     */
+    EngineMetrics NONE = new EngineMetrics() {
+    };
+
+    /**
+     * A move was played through {@link CrimsonChess#makeMove}, taking {@code nanos} from the
+     * legality lookup to the finished record, game-end detection included.
+     */
+    default void moveMade(long nanos) {
+    }
+
+    /**
+     * A legal move list was generated: {@code pseudoLegal} candidates were tried and
+     * {@code legal} of them kept.
+     */
+    default void movesGenerated(int pseudoLegal, int legal) {
+    }
+
+    /**
+     * A full copy of the position, including a new {@link GameState}, was made.
+     */
+    default void stateCloned() {
+    }
+
+    /**
+     * The checkmate, stalemate and draw rules were evaluated after a move.
+     */
+    default void gameEndChecked() {
+    }
+}
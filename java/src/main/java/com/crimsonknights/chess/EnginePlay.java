@@ -0,0 +1,295 @@
+package com.crimsonknights.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * A clocked game against the engine, run as {@code ChessCli play}. Both sides have a clock with a
+ * base time and an increment; the engine spends its time through a {@link TimeManager}.
+ *
+ * <p>While the human thinks, the engine ponders: it plays the reply its last search expected and
+ * searches the position after it with no time limit. If the human plays that move, the running
+ * search simply carries on as the engine's own, with the time it has already spent counted towards
+ * its budget, so after a long think by the human the engine answers at once. Any other move
+ * stops the ponder search and starts a new one.
+ *
+ * <pre>
+ * ChessCli play [white|black] [minutes] [increment seconds] [ponder|noponder]
+ * </pre>
+ */
+final class EnginePlay {
+    private static final String USAGE = "Usage: ChessCli play [white|black] [minutes] [increment seconds] [ponder|noponder]";
+
+    private final CrimsonChess game = new CrimsonChess();
+    private final PieceColor human;
+    private final long incrementMillis;
+    private final boolean ponder;
+    private final long[] clocks = new long[2];
+
+    private Thinker pondering;
+    private int ponderHits;
+    private int ponderMisses;
+
+    EnginePlay(PieceColor human, long baseMillis, long incrementMillis, boolean ponder) {
+        this.human = human;
+        this.incrementMillis = incrementMillis;
+        this.ponder = ponder;
+        clocks[0] = baseMillis;
+        clocks[1] = baseMillis;
+    }
+
+    void run(BufferedReader reader) throws IOException, InterruptedException {
+        System.out.println("Enter moves in coordinate notation (e2e4). Type 'resign' or 'exit'.");
+        try {
+            while (true) {
+                ChessCli.printBoard(game);
+                printClocks();
+                MoveRecord record;
+                if (game.getTurn() == human) {
+                    // One start per turn: time spent on rejected input is charged too.
+                    long start = System.nanoTime();
+                    int move = PackedMove.NONE;
+                    while (move == PackedMove.NONE) {
+                        System.out.print("your move > ");
+                        String line = reader.readLine();
+                        if (line == null || line.trim().equals("exit") || line.trim().equals("quit")) {
+                            return;
+                        }
+                        line = line.trim().toLowerCase(Locale.ROOT);
+                        if (line.equals("resign")) {
+                            System.out.println("You resign; Crimson wins.");
+                            return;
+                        }
+                        move = game.findMove(line);
+                        if (move == PackedMove.NONE) {
+                            System.out.println("Illegal move, try again.");
+                        }
+                    }
+                    if (!charge(human, start)) {
+                        System.out.println("Your flag fell; Crimson wins on time.");
+                        return;
+                    }
+                    record = play(move);
+                } else {
+                    long start = System.nanoTime();
+                    SearchResult result = think();
+                    if (!charge(human.opposite(), start)) {
+                        System.out.println("Crimson's flag fell; you win on time.");
+                        return;
+                    }
+                    record = play(result.getBestMove());
+                    System.out.printf(Locale.ROOT, "Crimson plays %s (depth %d, %s, %.2f s)%n",
+                            record.getNotation(), result.getDepth(), score(result),
+                            (System.nanoTime() - start) / 1e9);
+                    startPondering(result);
+                }
+                if (record.isCheckmate()) {
+                    ChessCli.printBoard(game);
+                    System.out.println("Checkmate! " + record.getColor().name().toLowerCase(Locale.ROOT) + " wins.");
+                    return;
+                }
+                if (record.isStalemate() || record.isDraw()) {
+                    ChessCli.printBoard(game);
+                    System.out.println("Draw by " + (record.isStalemate() ? "stalemate" : record.getDrawReason()) + ".");
+                    return;
+                }
+            }
+        } finally {
+            stopPondering();
+            System.out.printf(Locale.ROOT, "Ponder hits: %d of %d%n", ponderHits, ponderHits + ponderMisses);
+        }
+    }
+
+    /**
+     * Finds the engine's move: the ponder search if it predicted the human's move, otherwise a
+     * new search, either way under a fresh {@link TimeManager}.
+     */
+    SearchResult think() throws InterruptedException {
+        TimeManager manager = new TimeManager(clocks[human.opposite().ordinal()], incrementMillis,
+                game.position().getFullmoveNumber());
+        Thinker thinker = pondering;
+        pondering = null;
+        if (thinker != null && game.position().equals(thinker.position())) {
+            ponderHits++;
+        } else {
+            if (thinker != null) {
+                ponderMisses++;
+                thinker.stop();
+            }
+            thinker = new Thinker(game);
+        }
+        thinker.manage(manager);
+        return thinker.await(manager.getHardMillis());
+    }
+
+    private void startPondering(SearchResult result) {
+        int[] line = result.getPv();
+        if (!ponder || line.length < 2) {
+            return;
+        }
+        CrimsonChess next = new CrimsonChess();
+        next.restore(game.snapshot());
+        next.play(line[1]);
+        pondering = new Thinker(next);
+    }
+
+    private void stopPondering() {
+        if (pondering != null) {
+            pondering.stop();
+            pondering = null;
+        }
+    }
+
+    private MoveRecord play(int move) {
+        PieceType promotion = PackedMove.promotion(move);
+        return game.makeMove(Square.name(PackedMove.from(move)), Square.name(PackedMove.to(move)),
+                promotion == null ? null : promotion.getFenChar());
+    }
+
+    /**
+     * Takes the time since {@code startNanos} off a clock and adds the increment; returns
+     * {@code false} if the clock ran out.
+     */
+    private boolean charge(PieceColor side, long startNanos) {
+        int index = side.ordinal();
+        clocks[index] -= (System.nanoTime() - startNanos) / 1_000_000;
+        if (clocks[index] < 0) {
+            return false;
+        }
+        clocks[index] += incrementMillis;
+        return true;
+    }
+
+    private void printClocks() {
+        System.out.printf(Locale.ROOT, "White %s  Black %s%n", clock(clocks[PieceColor.WHITE.ordinal()]),
+                clock(clocks[PieceColor.BLACK.ordinal()]));
+    }
+
+    private static String clock(long millis) {
+        long seconds = millis / 1000;
+        return String.format(Locale.ROOT, "%d:%02d.%d", seconds / 60, seconds % 60, millis % 1000 / 100);
+    }
+
+    private static String score(SearchResult result) {
+        return result.isMate() ? "mate " + result.getMateIn() : "score " + result.getScore();
+    }
+
+    /**
+     * One search on its own thread, unbounded until a {@link TimeManager} is handed to it. Every
+     * completed iteration is kept, so a manager given to a ponder search mid-way judges stability
+     * over the whole search.
+     */
+    static final class Thinker implements Consumer<SearchResult> {
+        private final Search search;
+        private final Position position;
+        private final long startNanos = System.nanoTime();
+        private final List<SearchResult> iterations = new ArrayList<>();
+        private final CompletableFuture<SearchResult> result = new CompletableFuture<>();
+        private TimeManager manager;
+
+        Thinker(CrimsonChess game) {
+            search = new Search(game);
+            position = game.position();
+            Thread thread = new Thread(() -> {
+                try {
+                    result.complete(search.search(new SearchLimits(), this));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, "engine-search");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public synchronized void accept(SearchResult iteration) {
+            iterations.add(iteration);
+            if (manager != null && manager.shouldStop(iteration, elapsedMillis())) {
+                search.stop();
+            }
+        }
+
+        /**
+         * Puts the search on the clock, stopping it at once if the iterations it has already
+         * completed are enough.
+         */
+        synchronized void manage(TimeManager timeManager) {
+            manager = timeManager;
+            boolean stop = false;
+            for (SearchResult iteration : iterations) {
+                stop = manager.shouldStop(iteration, elapsedMillis());
+            }
+            if (stop) {
+                search.stop();
+            }
+        }
+
+        /**
+         * Waits for the search to finish, stopping it after {@code hardMillis} from now.
+         */
+        SearchResult await(long hardMillis) throws InterruptedException {
+            try {
+                try {
+                    return result.get(hardMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    search.stop();
+                    return result.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search failed", e.getCause());
+            }
+        }
+
+        /**
+         * Returns the position being searched.
+         */
+        Position position() {
+            return position;
+        }
+
+        void stop() {
+            search.stop();
+        }
+
+        private long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+    }
+
+    /**
+     * Entry point for {@code ChessCli play [white|black] [minutes] [increment seconds] [ponder|noponder]}.
+     */
+    static void main(String[] args) throws IOException, InterruptedException {
+        PieceColor human;
+        double minutes;
+        double increment;
+        try {
+            human = args.length > 0 ? PieceColor.valueOf(args[0].toUpperCase(Locale.ROOT)) : PieceColor.WHITE;
+            minutes = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+            increment = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            return;
+        }
+        if (!(minutes > 0) || !(increment >= 0) || args.length > 3 && !args[3].equals("ponder")
+                && !args[3].equals("noponder")) {
+            System.err.println(USAGE);
+            return;
+        }
+        boolean ponder = args.length <= 3 || args[3].equals("ponder");
+        System.out.printf(Locale.ROOT, "Crimson Knights Chess: you play %s, %s+%s%s%n",
+                human.name().toLowerCase(Locale.ROOT), args.length > 1 ? args[1] : "5", args.length > 2 ? args[2] : "3",
+                ponder ? ", engine pondering" : "");
+        new EnginePlay(human, (long) (minutes * 60_000), (long) (increment * 1000), ponder)
+                .run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}
@@ -0,0 +1,98 @@
+package com.crimsonknights.chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Candidate moves for every position of a game, for the review screen. Each position gets one
+ * multi-line {@link Search#analyse} and the positions are spread over a thread pool, so a whole
+ * game takes about as long as its slowest positions divided by the number of cores.
+ *
+ * <pre>
+ * GameReview [depth] [lines] [threads] move...
+ * </pre>
+ */
+public final class GameReview {
+    private final int threads;
+
+    /**
+     * @param threads positions analysed at the same time
+     */
+    public GameReview(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Analyses the position before every move of {@code timeline} and the final one. Element
+     * {@code ply} of the result holds the best {@code lines} lines of that position, best first;
+     * a finished game's last position has none.
+     */
+    public List<List<SearchResult>> review(GameTimeline timeline, SearchLimits limits, int lines)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<SearchResult>>> positions = new ArrayList<>(timeline.length() + 1);
+            GameTimeline.Cursor cursor = timeline.cursor();
+            for (int ply = 0; ply <= timeline.length(); ply++) {
+                cursor.seek(ply);
+                String fen = cursor.toFen();
+                positions.add(pool.submit(() -> {
+                    CrimsonChess game = new CrimsonChess();
+                    game.loadFen(fen);
+                    return new Search(game).analyse(limits, lines, null);
+                }));
+            }
+            List<List<SearchResult>> results = new ArrayList<>(positions.size());
+            for (Future<List<SearchResult>> position : positions) {
+                try {
+                    results.add(position.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Analysis failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        CrimsonChess game = new CrimsonChess();
+        String startFen = game.toFen();
+        List<String> text = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : List.of();
+        int[] moves = new int[text.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = game.findMove(text.get(i));
+            if (moves[i] == PackedMove.NONE) {
+                System.err.println("Illegal move " + text.get(i));
+                return;
+            }
+            game.play(moves[i]);
+        }
+        long start = System.nanoTime();
+        List<List<SearchResult>> review = new GameReview(threads)
+                .review(new GameTimeline(startFen, moves, 8), new SearchLimits().depth(depth), lines);
+        for (int ply = 0; ply < review.size(); ply++) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format(Locale.ROOT, "%3d %-6s", ply, ply < text.size() ? text.get(ply) : "-"));
+            for (SearchResult result : review.get(ply)) {
+                line.append(String.format(Locale.ROOT, "  %s %s", PackedMove.toCoordinate(result.getBestMove()),
+                        result.isMate() ? "#" + result.getMateIn() : String.valueOf(result.getScore())));
+            }
+            System.out.println(line);
+        }
+        System.out.printf(Locale.ROOT, "%d positions in %.2f s%n", review.size(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -73,13 +73,7 @@ public final class GameState {
     }
 
     public GameState copy() {
-        Piece[][] boardCopy = new Piece[8][8];
-        for (int rank = 0; rank < 8; rank++) {
-            for (int file = 0; file < 8; file++) {
-                Piece piece = board[rank][file];
-                boardCopy[rank][file] = piece == null ? null : piece.copy();
-            }
-        }
+        Piece[][] boardCopy = CrimsonChess.deepCloneBoard(board);
         Map<PieceColor, CastlingRights> castlingCopy = new EnumMap<>(PieceColor.class);
         for (Map.Entry<PieceColor, CastlingRights> entry : castling.entrySet()) {
             castlingCopy.put(entry.getKey(), entry.getValue().copy());
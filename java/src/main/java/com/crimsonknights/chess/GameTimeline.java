@@ -0,0 +1,185 @@
+package com.crimsonknights.chess;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Random-access view of a finished or paused game. Moves are kept as {@link PackedMove}s and the
+ * position is checkpointed every {@code interval} plies in about 50 bytes, so reaching any ply
+ * replays at most {@code interval - 1} moves. A smaller interval means faster seeks and more
+ * memory.
+ *
+ * <p>A timeline is immutable and may be shared between threads; each reader walks it with its
+ * own {@link Cursor}.
+ */
+public final class GameTimeline {
+    private final int[] moves;
+    private final Position[] checkpoints;
+    private final int interval;
+
+    /**
+     * Builds a timeline from the start of {@code game}'s history to its current position. Moves
+     * played with {@link CrimsonChess#play} are not part of the history and are not included.
+     */
+    public static GameTimeline of(CrimsonChess game, int interval) {
+        List<MoveRecord> history = game.getHistory();
+        CrimsonChess replay = new CrimsonChess();
+        replay.restore(history.isEmpty() ? game.snapshot() : history.get(0).getPreviousState());
+        String startFen = replay.toFen();
+        int[] moves = new int[history.size()];
+        for (int i = 0; i < moves.length; i++) {
+            MoveRecord record = history.get(i);
+            String coordinate = record.getFrom() + record.getTo();
+            if (record.getPromotion() != null) {
+                coordinate += record.getPromotion().getFenChar();
+            }
+            moves[i] = replay.findMove(coordinate);
+            replay.play(moves[i]);
+        }
+        return new GameTimeline(startFen, moves, interval);
+    }
+
+    /**
+     * Builds a timeline of {@code moves} played from {@code startFen}.
+     *
+     * @throws IllegalArgumentException if the FEN is invalid, a move is illegal or the interval is
+     *     not positive
+     */
+    public GameTimeline(String startFen, int[] moves, int interval) {
+        Objects.requireNonNull(startFen, "startFen");
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        this.moves = moves.clone();
+        this.interval = interval;
+        this.checkpoints = new Position[moves.length / interval + 1];
+        CrimsonChess replay = new CrimsonChess();
+        replay.loadFen(startFen);
+        int[] legal = new int[CrimsonChess.MAX_MOVES];
+        for (int ply = 0; ply <= moves.length; ply++) {
+            if (ply % interval == 0) {
+                checkpoints[ply / interval] = replay.position();
+            }
+            if (ply == moves.length) {
+                break;
+            }
+            if (!contains(legal, replay.legalMoves(legal), moves[ply])) {
+                throw new IllegalArgumentException("Illegal move at ply " + ply + ": "
+                        + PackedMove.toCoordinate(moves[ply]));
+            }
+            replay.play(moves[ply]);
+        }
+    }
+
+    /**
+     * Returns the number of plies; valid plies for seeking run from {@code 0} to this value.
+     */
+    public int length() {
+        return moves.length;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the move played from ply {@code ply} to {@code ply + 1}.
+     */
+    public int moveAt(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * Returns a new cursor at ply 0.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A position on the timeline. Stepping forward plays one move; stepping back or seeking
+     * restores the nearest checkpoint at or before the target and replays from there. Cursors are
+     * not thread-safe.
+     */
+    public final class Cursor {
+        private final CrimsonChess game = new CrimsonChess();
+        private int ply;
+
+        private Cursor() {
+            game.restore(checkpoints[0].toState());
+        }
+
+        public int getPly() {
+            return ply;
+        }
+
+        /**
+         * Moves to {@code target}, between {@code 0} and {@link #length()} inclusive.
+         */
+        public void seek(int target) {
+            if (target < 0 || target > moves.length) {
+                throw new IndexOutOfBoundsException("Ply " + target + " outside 0.." + moves.length);
+            }
+            if (target < ply || target - ply >= interval) {
+                int checkpoint = target / interval;
+                game.restore(checkpoints[checkpoint].toState());
+                ply = checkpoint * interval;
+            }
+            while (ply < target) {
+                game.play(moves[ply++]);
+            }
+        }
+
+        public boolean hasNext() {
+            return ply < moves.length;
+        }
+
+        public boolean hasPrevious() {
+            return ply > 0;
+        }
+
+        /**
+         * Plays the next move and returns it.
+         */
+        public int next() {
+            if (!hasNext()) {
+                throw new IndexOutOfBoundsException("At the last ply: " + ply);
+            }
+            int move = moves[ply];
+            seek(ply + 1);
+            return move;
+        }
+
+        /**
+         * Steps back one ply and returns the move that was taken back.
+         */
+        public int previous() {
+            if (!hasPrevious()) {
+                throw new IndexOutOfBoundsException("At the first ply");
+            }
+            seek(ply - 1);
+            return moves[ply];
+        }
+
+        public BoardView board() {
+            return game.boardView();
+        }
+
+        public PieceColor getTurn() {
+            return game.getTurn();
+        }
+
+        public String toFen() {
+            return game.toFen();
+        }
+    }
+
+    private static boolean contains(int[] list, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (list[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
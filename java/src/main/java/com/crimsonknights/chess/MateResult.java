@@ -0,0 +1,56 @@
+package com.crimsonknights.chess;
+
+/**
+ * Verdict of a {@link MateSolver}: either a forced mate with its principal line, or no mate
+ * within the move limit. Moves are {@link PackedMove}s.
+ */
+public final class MateResult {
+    private final int moves;
+    private final int[] line;
+    private final boolean complete;
+    private final long nodes;
+    private final long millis;
+
+    MateResult(int moves, int[] line, boolean complete, long nodes, long millis) {
+        this.moves = moves;
+        this.line = line;
+        this.complete = complete;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    public boolean isMate() {
+        return moves > 0;
+    }
+
+    /**
+     * Returns N for a mate in N moves of the side to move, or {@code 0} when none was found.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns the attacker's moves and the longest defence, ending in checkmate; empty when there
+     * is no mate.
+     */
+    public int[] getLine() {
+        return line.clone();
+    }
+
+    /**
+     * Returns {@code false} when the node limit stopped the search before it could rule out a
+     * mate within the move limit.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
@@ -0,0 +1,350 @@
+package com.crimsonknights.chess;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Forced-mate solver using depth-first proof-number search (df-pn). The side to move is the
+ * attacker and may only play checking moves; the defender, always in check, plays every legal
+ * evasion. Mates in 1, 2, ... N are tried in turn, so the first proof is the shortest mate.
+ *
+ * <p>Proof and disproof numbers are kept in a fixed-size table keyed by Zobrist hash and the
+ * plies left, two entries per bucket: one kept for the entry that took the most work, one always
+ * replaced. Keying by plies left keeps the search free of cycles. Proven entries also record the
+ * distance to mate, from which the principal line is read back. A solver is not thread-safe.
+ *
+ * <pre>
+ * MateSolver moves [hash MiB] fen
+ * </pre>
+ */
+public final class MateSolver {
+    private static final int INFINITY = 1 << 28;
+    private static final int MAX_MOVES_TO_MATE = 32;
+    private static final long PLIES_KEY = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final int[] distances;
+    private final int[] work;
+    private final int mask;
+
+    private final MoveGenerator generator = new MoveGenerator();
+    private Piece[][] board;
+    private final Map<PieceColor, CastlingRights> castling = new EnumMap<>(PieceColor.class);
+    private PieceColor turn;
+    private int epSquare;
+    private long hash;
+    private int[][] moves;
+    private long[][] childKeys;
+    private int[] savedCastling;
+    private int[] savedEp;
+    private long[] savedHash;
+    private long nodes;
+    private long nodeLimit;
+    // Filled by probe().
+    private int probedPhi;
+    private int probedDelta;
+    private int probedDistance;
+
+    /**
+     * @param hashMegabytes size of the proof-number table
+     */
+    public MateSolver(int hashMegabytes) {
+        int entries = Integer.highestOneBit(Math.max(2, (int) Math.min(1 << 30, hashMegabytes * (1L << 20) / 28)));
+        keys = new long[entries];
+        phis = new int[entries];
+        deltas = new int[entries];
+        distances = new int[entries];
+        work = new int[entries];
+        mask = entries - 2;
+        castling.put(PieceColor.WHITE, new CastlingRights(false, false));
+        castling.put(PieceColor.BLACK, new CastlingRights(false, false));
+    }
+
+    /**
+     * Looks for a mate in at most {@code maxMoves} moves for the side to move of {@code game}.
+     * {@code nodeLimit} bounds the work; {@code 0} means unbounded.
+     */
+    public MateResult solve(CrimsonChess game, int maxMoves, long nodeLimit) {
+        if (maxMoves < 1 || maxMoves > MAX_MOVES_TO_MATE) {
+            throw new IllegalArgumentException("Moves must be between 1 and " + MAX_MOVES_TO_MATE + ": " + maxMoves);
+        }
+        long start = System.nanoTime();
+        GameState state = game.snapshot();
+        board = state.getBoard();
+        CastlingRights.fromBits(castling, CastlingRights.toBits(state.getCastling()));
+        turn = state.getTurn();
+        epSquare = Square.index(state.getEnPassant());
+        hash = Zobrist.hash(board, turn, CastlingRights.toBits(castling), epSquare);
+        int maxPlies = 2 * maxMoves;
+        moves = new int[maxPlies][CrimsonChess.MAX_MOVES];
+        childKeys = new long[maxPlies][CrimsonChess.MAX_MOVES];
+        savedCastling = new int[maxPlies];
+        savedEp = new int[maxPlies];
+        savedHash = new long[maxPlies];
+        nodes = 0;
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        boolean complete = true;
+        for (int n = 1; n <= maxMoves; n++) {
+            int plies = 2 * n - 1;
+            search(0, plies, INFINITY, INFINITY);
+            probe(key(hash, plies));
+            if (probedPhi == 0) {
+                int[] line = principalLine(plies);
+                return new MateResult(n, line, true, nodes, elapsedMillis(start));
+            }
+            if (probedDelta != 0) {
+                complete = false;
+                break;
+            }
+        }
+        return new MateResult(0, new int[0], complete, nodes, elapsedMillis(start));
+    }
+
+    /**
+     * Drops every table entry, for example between unrelated puzzles.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(work, 0);
+    }
+
+    /**
+     * Expands the node at {@code ply} until its numbers reach the thresholds. Numbers are from the
+     * point of view of the side to move: {@code phi} is its proof number and {@code delta} its
+     * disproof number, so a proven attacker node has {@code phi == 0} and a mated defender node
+     * {@code delta == 0}.
+     */
+    private void search(int ply, int plies, int thresholdPhi, int thresholdDelta) {
+        long nodeKey = key(hash, plies);
+        long startNodes = nodes++;
+        boolean attacker = (ply & 1) == 0;
+        int count = expand(ply, plies, attacker);
+        if (count == 0) {
+            // No checks, or no evasions: the defender is mated only if it is in check.
+            boolean mated = !attacker && inCheck();
+            store(nodeKey, mated ? INFINITY : attacker ? INFINITY : 0,
+                    mated ? 0 : attacker ? 0 : INFINITY, 0, 1);
+            return;
+        }
+        if (!attacker && plies == 0) {
+            store(nodeKey, 0, INFINITY, 0, 1);
+            return;
+        }
+        int[] list = moves[ply];
+        long[] children = childKeys[ply];
+        while (true) {
+            int phi = INFINITY;
+            int delta = 0;
+            int best = -1;
+            int bestPhi = 0;
+            int secondDelta = INFINITY;
+            int distance = attacker ? INFINITY : 0;
+            for (int i = 0; i < count; i++) {
+                probe(children[i]);
+                int childPhi = probedPhi;
+                int childDelta = probedDelta;
+                delta = Math.min(INFINITY, delta + childPhi);
+                if (childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    best = i;
+                    bestPhi = childPhi;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+                if (childDelta == 0) {
+                    distance = attacker ? Math.min(distance, probedDistance + 1) : distance;
+                } else if (childPhi == 0) {
+                    distance = !attacker ? Math.max(distance, probedDistance + 1) : distance;
+                }
+            }
+            if (phi >= thresholdPhi || delta >= thresholdDelta || nodes >= nodeLimit) {
+                boolean proven = attacker ? phi == 0 : delta == 0;
+                store(nodeKey, phi, delta, proven ? distance : 0, (int) Math.min(Integer.MAX_VALUE, nodes - startNodes));
+                return;
+            }
+            int childThresholdPhi = Math.min(INFINITY, thresholdDelta - delta + bestPhi);
+            int childThresholdDelta = Math.min(thresholdPhi, secondDelta + 1);
+            int move = list[best];
+            make(move, ply);
+            search(ply + 1, plies - 1, childThresholdPhi, childThresholdDelta);
+            unmake(move, ply);
+        }
+    }
+
+    /**
+     * Generates the node's moves, keeping only checks for the attacker, and records each child's
+     * table key. Returns the move count.
+     */
+    private int expand(int ply, int plies, boolean attacker) {
+        if (attacker && plies <= 0) {
+            return 0;
+        }
+        int[] list = moves[ply];
+        String ep = epSquare == Square.NONE ? null : Square.name(epSquare);
+        int count = generator.generate(board, turn, castling, ep, Square.NONE, list);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            make(move, ply);
+            boolean keep = !attacker || inCheck();
+            long childKey = key(hash, plies - 1);
+            unmake(move, ply);
+            if (keep) {
+                list[kept] = move;
+                childKeys[ply][kept] = childKey;
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Follows proven entries from the root: the quickest mate for the attacker and the longest
+     * resistance for the defender. Entries lost to replacement are searched again.
+     */
+    private int[] principalLine(int plies) {
+        int[] line = new int[plies];
+        int length = 0;
+        for (int ply = 0; ply < plies; ply++) {
+            boolean attacker = (ply & 1) == 0;
+            int count = expand(ply, plies - ply, attacker);
+            int chosen = PackedMove.NONE;
+            int chosenDistance = attacker ? Integer.MAX_VALUE : -1;
+            for (int i = 0; i < count; i++) {
+                int move = moves[ply][i];
+                probe(childKeys[ply][i]);
+                if (!provenForAttacker(attacker)) {
+                    make(move, ply);
+                    search(ply + 1, plies - ply - 1, INFINITY, INFINITY);
+                    unmake(move, ply);
+                    probe(childKeys[ply][i]);
+                    if (!provenForAttacker(attacker)) {
+                        continue;
+                    }
+                }
+                if (attacker ? probedDistance < chosenDistance : probedDistance > chosenDistance) {
+                    chosen = move;
+                    chosenDistance = probedDistance;
+                }
+            }
+            if (chosen == PackedMove.NONE) {
+                break;
+            }
+            make(chosen, ply);
+            line[length++] = chosen;
+        }
+        for (int ply = length - 1; ply >= 0; ply--) {
+            unmake(line[ply], ply);
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    private boolean provenForAttacker(boolean parentIsAttacker) {
+        return parentIsAttacker ? probedDelta == 0 : probedPhi == 0;
+    }
+
+    private static long key(long hash, int plies) {
+        return hash + plies * PLIES_KEY;
+    }
+
+    private void probe(long key) {
+        int bucket = (int) key & mask;
+        for (int slot = bucket; slot < bucket + 2; slot++) {
+            if (keys[slot] == key && work[slot] != 0) {
+                probedPhi = phis[slot];
+                probedDelta = deltas[slot];
+                probedDistance = distances[slot];
+                return;
+            }
+        }
+        probedPhi = 1;
+        probedDelta = 1;
+        probedDistance = 0;
+    }
+
+    private void store(long key, int phi, int delta, int distance, int effort) {
+        int bucket = (int) key & mask;
+        int slot;
+        if (keys[bucket] == key || work[bucket] <= effort) {
+            slot = bucket;
+        } else {
+            slot = bucket + 1;
+        }
+        if (slot == bucket && keys[bucket] != key && work[bucket] != 0) {
+            // Demote the previous deep entry to the always-replace slot.
+            keys[bucket + 1] = keys[bucket];
+            phis[bucket + 1] = phis[bucket];
+            deltas[bucket + 1] = deltas[bucket];
+            distances[bucket + 1] = distances[bucket];
+            work[bucket + 1] = work[bucket];
+        } else if (slot == bucket + 1 && keys[bucket] == key) {
+            slot = bucket;
+        }
+        keys[slot] = key;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        distances[slot] = distance;
+        work[slot] = Math.max(1, effort);
+    }
+
+    private void make(int move, int ply) {
+        savedCastling[ply] = CastlingRights.toBits(castling);
+        savedEp[ply] = epSquare;
+        savedHash[ply] = hash;
+        MoveGenerator.makeMove(board, move, turn);
+        MoveGenerator.updateCastling(castling, move, turn);
+        int ep = PackedMove.isDoublePush(move)
+                ? (PackedMove.from(move) + PackedMove.to(move)) >>> 1
+                : Square.NONE;
+        hash = Zobrist.afterMove(hash, move, turn, savedCastling[ply], CastlingRights.toBits(castling), epSquare, ep);
+        epSquare = ep;
+        turn = turn.opposite();
+    }
+
+    private void unmake(int move, int ply) {
+        turn = turn.opposite();
+        MoveGenerator.unmakeMove(board, move, turn);
+        CastlingRights.fromBits(castling, savedCastling[ply]);
+        epSquare = savedEp[ply];
+        hash = savedHash[ply];
+    }
+
+    private boolean inCheck() {
+        int king = MoveGenerator.findKing(board, turn);
+        return king != Square.NONE && MoveGenerator.isAttacked(board, king & 7, king >>> 3, turn.opposite());
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: MateSolver moves [hash MiB] fen");
+            return;
+        }
+        int maxMoves = Integer.parseInt(args[0]);
+        int hash = 64;
+        int fenStart = 1;
+        if (args[1].matches("\\d+")) {
+            hash = Integer.parseInt(args[1]);
+            fenStart = 2;
+        }
+        CrimsonChess game = new CrimsonChess();
+        game.loadFen(String.join(" ", List.of(args).subList(fenStart, args.length)));
+        MateResult result = new MateSolver(hash).solve(game, maxMoves, 0);
+        StringBuilder line = new StringBuilder();
+        for (int move : result.getLine()) {
+            line.append(' ').append(PackedMove.toCoordinate(move));
+        }
+        System.out.printf(Locale.ROOT, "%s in %d ms, %d nodes:%s%n",
+                result.isMate() ? "mate in " + result.getMoves() : "no mate within " + maxMoves,
+                result.getMillis(), result.getNodes(), line);
+    }
+}
@@ -60,7 +60,7 @@ public class Move {
     }
 
     public Move copy() {
-        return new Move(from, to, piece, color, captured == null ? null : captured.copy(), promotion,
-                flags == null ? null : flags.copy(), captureSquare);
+        return new Move(from, to, piece, color, captured, promotion, flags == null ? null : flags.copy(),
+                captureSquare);
     }
 }
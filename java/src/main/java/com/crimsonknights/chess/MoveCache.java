@@ -0,0 +1,133 @@
+package com.crimsonknights.chess;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of legal move lists, keyed by {@link Zobrist} hash and stored
+ * as {@link PackedMove} arrays. Install one with {@link CrimsonChess#setMoveCache} to let repeated
+ * move queries on the same position skip generation. One cache may be shared by any number of
+ * games on any number of threads.
+ *
+ * <p>Entries are spread over independently locked segments, each evicting its own least recently
+ * used position, so the bound is on the total entry count and eviction is LRU per segment.
+ * Positions are told apart by their 64-bit hash alone.
+ */
+public final class MoveCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity maximum number of positions kept
+     */
+    public MoveCache(int capacity) {
+        if (capacity < SEGMENTS) {
+            throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS + ": " + capacity);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+
+    /**
+     * Returns the cached moves of the position, or {@code null} after counting a miss. The array
+     * is shared and must not be modified.
+     */
+    int[] get(long hash) {
+        Segment segment = segment(hash);
+        int[] moves;
+        synchronized (segment) {
+            moves = segment.get(hash);
+        }
+        if (moves == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return moves;
+    }
+
+    /**
+     * Stores the legal moves of a position; {@code moves} is copied.
+     */
+    void put(long hash, int[] moves, int count) {
+        int[] copy = new int[count];
+        System.arraycopy(moves, 0, copy, 0, count);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            segment.put(hash, copy);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns the number of positions currently cached.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Drops every entry and zeroes the counters.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d positions, %d hits, %d misses (%.1f%% hit rate)",
+                size(), getHits(), getMisses(), getHitRate() * 100);
+    }
+
+    private Segment segment(long hash) {
+        // The low bits pick the bucket inside a segment's map, so use high bits here.
+        return segments[(int) (hash >>> 60)];
+    }
+
+    private static final class Segment extends LinkedHashMap<Long, int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
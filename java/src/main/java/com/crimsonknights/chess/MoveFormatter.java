@@ -0,0 +1,312 @@
+package com.crimsonknights.chess;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Writes moves in Standard Algebraic Notation ({@code Nbd7}, {@code exd6}, {@code e8=Q+}) or
+ * Long Algebraic Notation ({@code Nb8-d7}, {@code e5xd6}) straight into a caller-supplied
+ * {@link Appendable}, so exporting many moves creates no intermediate strings.
+ *
+ * <p>Moves come either from a game's history as {@link MoveRecord}s or as {@link PackedMove}s
+ * that are legal in a game's current position; {@link #parseSan} reads SAN back. Instances reuse
+ * a move buffer and must not be shared between threads.
+ */
+public final class MoveFormatter {
+    private final MoveGenerator generator = new MoveGenerator();
+    private final int[] moves = new int[CrimsonChess.MAX_MOVES];
+
+    /**
+     * Appends the SAN of a recorded move, disambiguated against the position it was played in.
+     */
+    public void appendSan(Appendable out, MoveRecord record) throws IOException {
+        GameState before = record.getPreviousState();
+        int count = before == null ? 0 : generator.generate(before.getBoard(), before.getTurn(),
+                before.getCastling(), before.getEnPassant(), Square.NONE, moves);
+        int move = find(record, count);
+        if (move == PackedMove.NONE) {
+            move = PackedMove.of(Square.index(record.getFrom()), Square.index(record.getTo()), record.getPiece(),
+                    record.getCaptured(), record.getPromotion(), flags(record));
+        }
+        appendSanBody(out, move, count);
+        appendSuffix(out, record.isCheck(), record.isCheckmate());
+    }
+
+    /**
+     * Appends the SAN of {@code move}, which must be legal in the current position of {@code game}.
+     */
+    public void appendSan(Appendable out, CrimsonChess game, int move) throws IOException {
+        int count = generator.generate(game.rawBoard(), game.getTurn(), game.rawCastling(), game.rawEnPassant(),
+                Square.NONE, moves);
+        appendSanBody(out, move, count);
+        appendSuffix(out, game, move);
+    }
+
+    /**
+     * Appends the LAN of a recorded move.
+     */
+    public void appendLan(Appendable out, MoveRecord record) throws IOException {
+        int move = PackedMove.of(Square.index(record.getFrom()), Square.index(record.getTo()), record.getPiece(),
+                record.getCaptured(), record.getPromotion(), flags(record));
+        appendLanBody(out, move);
+        appendSuffix(out, record.isCheck(), record.isCheckmate());
+    }
+
+    /**
+     * Appends the LAN of {@code move}, which must be legal in the current position of {@code game}.
+     */
+    public void appendLan(Appendable out, CrimsonChess game, int move) throws IOException {
+        appendLanBody(out, move);
+        appendSuffix(out, game, move);
+    }
+
+    /**
+     * Convenience for a single recorded move.
+     */
+    public String toSan(MoveRecord record) {
+        StringBuilder san = new StringBuilder(8);
+        try {
+            appendSan(san, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return san.toString();
+    }
+
+    /**
+     * Returns the legal move of {@code game} written in SAN, or {@link PackedMove#NONE} when the
+     * text names no legal move or more than one. Check marks and annotations such as {@code !?}
+     * are ignored, and {@code 0-0}, {@code exd6 e.p.} and {@code e8Q} are accepted too.
+     */
+    public int parseSan(CrimsonChess game, String san) {
+        int end = san.endsWith("e.p.") ? san.length() - 4 : san.length();
+        while (end > 0 && "+#!? ".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String body = san.substring(0, end);
+        MoveFlags.CastlingSide castle = null;
+        if ("O-O".equals(body) || "0-0".equals(body)) {
+            castle = MoveFlags.CastlingSide.KING_SIDE;
+        } else if ("O-O-O".equals(body) || "0-0-0".equals(body)) {
+            castle = MoveFlags.CastlingSide.QUEEN_SIDE;
+        }
+        PieceType piece = PieceType.PAWN;
+        PieceType promotion = null;
+        int to = Square.NONE;
+        int fromFile = -1;
+        int fromRank = -1;
+        if (castle == null) {
+            if (end >= 2 && "QRBN".indexOf(body.charAt(end - 1)) >= 0) {
+                promotion = PieceType.fromFenChar(body.charAt(end - 1));
+                end -= body.charAt(end - 2) == '=' ? 2 : 1;
+            }
+            if (end < 2) {
+                return PackedMove.NONE;
+            }
+            to = Square.index(body.substring(end - 2, end));
+            int start = 0;
+            if ("KQRBN".indexOf(body.charAt(0)) >= 0) {
+                piece = PieceType.fromFenChar(Character.toLowerCase(body.charAt(0)));
+                start = 1;
+            }
+            for (int i = start; i < end - 2; i++) {
+                char c = body.charAt(i);
+                if (c >= 'a' && c <= 'h') {
+                    fromFile = c - 'a';
+                } else if (c >= '1' && c <= '8') {
+                    fromRank = '8' - c;
+                } else if (c != 'x' && c != '-' && c != ':') {
+                    return PackedMove.NONE;
+                }
+            }
+            if (to == Square.NONE) {
+                return PackedMove.NONE;
+            }
+        }
+        int count = generator.generate(game.rawBoard(), game.getTurn(), game.rawCastling(), game.rawEnPassant(),
+                Square.NONE, moves);
+        int found = PackedMove.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            boolean matches = castle != null
+                    ? PackedMove.castle(move) == castle
+                    : PackedMove.to(move) == to && PackedMove.piece(move) == piece
+                    && PackedMove.promotion(move) == promotion
+                    && (fromFile < 0 || Square.file(PackedMove.from(move)) == fromFile)
+                    && (fromRank < 0 || Square.rank(PackedMove.from(move)) == fromRank);
+            if (matches) {
+                if (found != PackedMove.NONE) {
+                    return PackedMove.NONE;
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    private int find(MoveRecord record, int count) {
+        int from = Square.index(record.getFrom());
+        int to = Square.index(record.getTo());
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (PackedMove.from(move) == from && PackedMove.to(move) == to
+                    && PackedMove.promotion(move) == record.getPromotion()) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    private static int flags(Move move) {
+        MoveFlags flags = move.getFlags();
+        int bits = 0;
+        if (flags.isEnPassant()) {
+            bits |= PackedMove.EN_PASSANT;
+        }
+        if (flags.getCastle() == MoveFlags.CastlingSide.KING_SIDE) {
+            bits |= PackedMove.CASTLE_KING_SIDE;
+        } else if (flags.getCastle() == MoveFlags.CastlingSide.QUEEN_SIDE) {
+            bits |= PackedMove.CASTLE_QUEEN_SIDE;
+        }
+        return bits;
+    }
+
+    /**
+     * Writes everything but the check suffix. The first {@code count} entries of {@link #moves}
+     * are the legal moves of the position, used to disambiguate.
+     */
+    private void appendSanBody(Appendable out, int move, int count) throws IOException {
+        if (appendCastle(out, move)) {
+            return;
+        }
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        PieceType piece = PackedMove.piece(move);
+        if (piece == PieceType.PAWN) {
+            if (PackedMove.isCapture(move)) {
+                out.append((char) ('a' + Square.file(from)));
+            }
+        } else {
+            out.append(Character.toUpperCase(piece.getFenChar()));
+            boolean ambiguous = false;
+            boolean sameFile = false;
+            boolean sameRank = false;
+            for (int i = 0; i < count; i++) {
+                int other = moves[i];
+                int otherFrom = PackedMove.from(other);
+                if (otherFrom != from && PackedMove.to(other) == to && PackedMove.piece(other) == piece) {
+                    ambiguous = true;
+                    sameFile |= Square.file(otherFrom) == Square.file(from);
+                    sameRank |= Square.rank(otherFrom) == Square.rank(from);
+                }
+            }
+            if (ambiguous) {
+                if (!sameFile) {
+                    out.append((char) ('a' + Square.file(from)));
+                } else if (!sameRank) {
+                    out.append((char) ('8' - Square.rank(from)));
+                } else {
+                    out.append(Square.name(from));
+                }
+            }
+        }
+        if (PackedMove.isCapture(move)) {
+            out.append('x');
+        }
+        out.append(Square.name(to));
+        appendPromotion(out, move);
+    }
+
+    private static void appendLanBody(Appendable out, int move) throws IOException {
+        if (appendCastle(out, move)) {
+            return;
+        }
+        PieceType piece = PackedMove.piece(move);
+        if (piece != PieceType.PAWN) {
+            out.append(Character.toUpperCase(piece.getFenChar()));
+        }
+        out.append(Square.name(PackedMove.from(move)));
+        out.append(PackedMove.isCapture(move) ? 'x' : '-');
+        out.append(Square.name(PackedMove.to(move)));
+        appendPromotion(out, move);
+    }
+
+    private static boolean appendCastle(Appendable out, int move) throws IOException {
+        MoveFlags.CastlingSide castle = PackedMove.castle(move);
+        if (castle == null) {
+            return false;
+        }
+        out.append(castle == MoveFlags.CastlingSide.KING_SIDE ? "O-O" : "O-O-O");
+        return true;
+    }
+
+    private static void appendPromotion(Appendable out, int move) throws IOException {
+        PieceType promotion = PackedMove.promotion(move);
+        if (promotion != null) {
+            out.append('=').append(Character.toUpperCase(promotion.getFenChar()));
+        }
+    }
+
+    private static void appendSuffix(Appendable out, boolean check, boolean checkmate) throws IOException {
+        if (checkmate) {
+            out.append('#');
+        } else if (check) {
+            out.append('+');
+        }
+    }
+
+    /**
+     * Works out the check suffix by playing the move on the game's board and taking it back.
+     */
+    private void appendSuffix(Appendable out, CrimsonChess game, int move) throws IOException {
+        Piece[][] board = game.rawBoard();
+        PieceColor mover = game.getTurn();
+        PieceColor defender = mover.opposite();
+        Map<PieceColor, CastlingRights> castling = game.rawCastling();
+        boolean check;
+        boolean checkmate = false;
+        MoveGenerator.makeMove(board, move, mover);
+        try {
+            int king = MoveGenerator.findKing(board, defender);
+            check = king != Square.NONE && MoveGenerator.isAttacked(board, king & 7, king >>> 3, mover);
+            if (check) {
+                // Castling never escapes check, so the stale rights cannot change the answer.
+                String enPassant = PackedMove.isDoublePush(move)
+                        ? Square.name((PackedMove.from(move) + PackedMove.to(move)) >>> 1)
+                        : null;
+                checkmate = !generator.hasLegalMove(board, defender, castling, enPassant);
+            }
+        } finally {
+            MoveGenerator.unmakeMove(board, move, mover);
+        }
+        appendSuffix(out, check, checkmate);
+    }
+
+    /**
+     * Builds the display notation used by {@link MoveRecord#getNotation()}, e.g.
+     * {@code ♙ e7 × d8 (= ♕) +}.
+     */
+    static String describe(MoveRecord move) {
+        MoveFlags.CastlingSide castle = move.getFlags().getCastle();
+        if (castle != null) {
+            return castle == MoveFlags.CastlingSide.KING_SIDE ? "O-O" : "O-O-O";
+        }
+        StringBuilder notation = new StringBuilder(24);
+        notation.append(CrimsonChess.pieceSymbol(move.getPiece(), move.getColor()))
+                .append(' ').append(move.getFrom())
+                .append(move.getFlags().isCapture() ? " × " : " – ")
+                .append(move.getTo());
+        if (move.getPromotion() != null) {
+            notation.append(" (= ").append(CrimsonChess.pieceSymbol(move.getPromotion(), move.getColor())).append(')');
+        }
+        if (move.isCheckmate()) {
+            notation.append(" #");
+        } else if (move.isCheck()) {
+            notation.append(" +");
+        } else if (move.isStalemate() || move.isDraw()) {
+            notation.append(" ½");
+        }
+        return notation.toString();
+    }
+}
@@ -0,0 +1,455 @@
+package com.crimsonknights.chess;
+
+import java.util.Map;
+
+/**
+ * Generates legal moves straight into packed {@code int}s. Legality is checked by making each
+ * candidate on the board in place and taking it back, so no game state is cloned and no objects
+ * are allocated. Instances keep per-call scratch fields and must not be shared between threads.
+ */
+final class MoveGenerator {
+    private static final int[][] KNIGHT_DELTAS = {
+            {1, 2}, {2, 1}, {-1, 2}, {-2, 1},
+            {1, -2}, {2, -1}, {-1, -2}, {-2, -1}
+    };
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] QUEEN_DIRECTIONS = {
+            {1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+    private static final PieceType[] PROMOTIONS = {
+            PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT
+    };
+    private static final long[] KNIGHT_ATTACKS = stepMasks(KNIGHT_DELTAS);
+    private static final long[] KING_ATTACKS = stepMasks(QUEEN_DIRECTIONS);
+
+    private Piece[][] board;
+    private PieceColor turn;
+    private int kingSquare;
+    private int[] out;
+    private int count;
+    private int tried;
+
+    /**
+     * Writes the legal moves of the side to move into {@code out} and returns how many there are.
+     * When {@code onlyFrom} is a square index, only moves of that piece are generated. A
+     * {@code null} buffer stops at the first legal move, which makes this a cheap mobility test.
+     */
+    int generate(Piece[][] board, PieceColor turn, Map<PieceColor, CastlingRights> castling,
+                 String enPassant, int onlyFrom, int[] out) {
+        this.board = board;
+        this.turn = turn;
+        this.out = out;
+        this.count = 0;
+        this.tried = 0;
+        this.kingSquare = findKing(board, turn);
+        int epSquare = Square.index(enPassant);
+        try {
+            int first = onlyFrom < 0 ? 0 : onlyFrom;
+            int last = onlyFrom < 0 ? 63 : onlyFrom;
+            for (int square = first; square <= last; square++) {
+                Piece piece = board[square >>> 3][square & 7];
+                if (piece == null || piece.getColor() != turn) {
+                    continue;
+                }
+                switch (piece.getType()) {
+                    case PAWN:
+                        pawnMoves(square, epSquare);
+                        break;
+                    case KNIGHT:
+                        stepMoves(square, PieceType.KNIGHT, KNIGHT_DELTAS, false);
+                        break;
+                    case BISHOP:
+                        stepMoves(square, PieceType.BISHOP, BISHOP_DIRECTIONS, true);
+                        break;
+                    case ROOK:
+                        stepMoves(square, PieceType.ROOK, ROOK_DIRECTIONS, true);
+                        break;
+                    case QUEEN:
+                        stepMoves(square, PieceType.QUEEN, QUEEN_DIRECTIONS, true);
+                        break;
+                    case KING:
+                        stepMoves(square, PieceType.KING, QUEEN_DIRECTIONS, false);
+                        castlingMoves(square, castling.get(turn));
+                        break;
+                    default:
+                        break;
+                }
+                if (out == null && count > 0) {
+                    break;
+                }
+            }
+            return count;
+        } finally {
+            this.board = null;
+            this.out = null;
+        }
+    }
+
+    /**
+     * Returns how many pseudo-legal candidates the last {@link #generate} call tried, legal or not.
+     */
+    int pseudoLegalCount() {
+        return tried;
+    }
+
+    boolean hasLegalMove(Piece[][] board, PieceColor turn, Map<PieceColor, CastlingRights> castling,
+                         String enPassant) {
+        return generate(board, turn, castling, enPassant, -1, null) > 0;
+    }
+
+    private void pawnMoves(int square, int epSquare) {
+        int file = square & 7;
+        int rank = square >>> 3;
+        int dir = turn == PieceColor.WHITE ? -1 : 1;
+        int startRank = turn == PieceColor.WHITE ? 6 : 1;
+        int promotionRank = turn == PieceColor.WHITE ? 0 : 7;
+        int forwardRank = rank + dir;
+        if (forwardRank < 0 || forwardRank > 7) {
+            return;
+        }
+        if (board[forwardRank][file] == null) {
+            pawnTarget(square, forwardRank * 8 + file, null, forwardRank == promotionRank);
+            int doubleRank = rank + dir * 2;
+            if (rank == startRank && board[doubleRank][file] == null) {
+                tryMove(square, doubleRank * 8 + file, PieceType.PAWN, null, null, PackedMove.DOUBLE_PUSH);
+            }
+        }
+        for (int df = -1; df <= 1; df += 2) {
+            int targetFile = file + df;
+            if (targetFile < 0 || targetFile > 7) {
+                continue;
+            }
+            int target = forwardRank * 8 + targetFile;
+            Piece victim = board[forwardRank][targetFile];
+            if (victim != null && victim.getColor() != turn) {
+                pawnTarget(square, target, victim, forwardRank == promotionRank);
+            } else if (victim == null && target == epSquare) {
+                Piece passed = board[rank][targetFile];
+                if (passed != null && passed.getType() == PieceType.PAWN && passed.getColor() != turn) {
+                    tryMove(square, target, PieceType.PAWN, passed, null, PackedMove.EN_PASSANT);
+                }
+            }
+        }
+    }
+
+    private void pawnTarget(int from, int to, Piece victim, boolean promotion) {
+        if (!promotion) {
+            tryMove(from, to, PieceType.PAWN, victim, null, 0);
+            return;
+        }
+        for (PieceType type : PROMOTIONS) {
+            tryMove(from, to, PieceType.PAWN, victim, type, 0);
+        }
+    }
+
+    private void stepMoves(int square, PieceType type, int[][] directions, boolean slide) {
+        for (int[] direction : directions) {
+            int file = (square & 7) + direction[0];
+            int rank = (square >>> 3) + direction[1];
+            while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                Piece target = board[rank][file];
+                if (target == null || target.getColor() != turn) {
+                    tryMove(square, rank * 8 + file, type, target, null, 0);
+                }
+                if (target != null || !slide) {
+                    break;
+                }
+                file += direction[0];
+                rank += direction[1];
+            }
+        }
+    }
+
+    private void castlingMoves(int square, CastlingRights rights) {
+        int homeRank = turn == PieceColor.WHITE ? 7 : 0;
+        if (rights == null || square != homeRank * 8 + 4) {
+            return;
+        }
+        Piece[] row = board[homeRank];
+        PieceColor enemy = turn.opposite();
+        if (rights.canCastleKingSide() && isRook(row[7]) && row[5] == null && row[6] == null
+                && !isAttacked(board, 4, homeRank, enemy)
+                && !isAttacked(board, 5, homeRank, enemy)
+                && !isAttacked(board, 6, homeRank, enemy)) {
+            tryMove(square, square + 2, PieceType.KING, null, null, PackedMove.CASTLE_KING_SIDE);
+        }
+        if (rights.canCastleQueenSide() && isRook(row[0]) && row[1] == null && row[2] == null && row[3] == null
+                && !isAttacked(board, 4, homeRank, enemy)
+                && !isAttacked(board, 3, homeRank, enemy)
+                && !isAttacked(board, 2, homeRank, enemy)) {
+            tryMove(square, square - 2, PieceType.KING, null, null, PackedMove.CASTLE_QUEEN_SIDE);
+        }
+    }
+
+    private boolean isRook(Piece piece) {
+        return piece != null && piece.getType() == PieceType.ROOK && piece.getColor() == turn;
+    }
+
+    /**
+     * Plays the move on the board, records it if the mover's king is safe, then takes it back.
+     */
+    private void tryMove(int from, int to, PieceType type, Piece victim, PieceType promotion, int flags) {
+        if (out == null && count > 0) {
+            return;
+        }
+        tried++;
+        int fromRank = from >>> 3;
+        int fromFile = from & 7;
+        int toRank = to >>> 3;
+        int toFile = to & 7;
+        boolean enPassant = (flags & PackedMove.EN_PASSANT) != 0;
+        Piece moving = board[fromRank][fromFile];
+        Piece replaced = board[toRank][toFile];
+        board[toRank][toFile] = moving;
+        board[fromRank][fromFile] = null;
+        if (enPassant) {
+            board[fromRank][toFile] = null;
+        }
+        int king = type == PieceType.KING ? to : kingSquare;
+        boolean legal = king < 0 || !isAttacked(board, king & 7, king >>> 3, turn.opposite());
+        board[fromRank][fromFile] = moving;
+        board[toRank][toFile] = replaced;
+        if (enPassant) {
+            board[fromRank][toFile] = victim;
+        }
+        if (!legal) {
+            return;
+        }
+        if (out != null) {
+            out[count] = PackedMove.of(from, to, type, victim, promotion, flags);
+        }
+        count++;
+    }
+
+    /**
+     * Plays a packed move on the board, including the rook hop of a castle, the pawn removed by en
+     * passant and the promoted piece. Rights and counters are left to the caller.
+     */
+    static void makeMove(Piece[][] board, int move, PieceColor color) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece moving = board[from >>> 3][from & 7];
+        PieceType promotion = PackedMove.promotion(move);
+        board[from >>> 3][from & 7] = null;
+        board[to >>> 3][to & 7] = promotion == null ? moving : Piece.of(promotion, color);
+        if ((move & PackedMove.EN_PASSANT) != 0) {
+            board[from >>> 3][to & 7] = null;
+        } else if ((move & PackedMove.CASTLE_KING_SIDE) != 0) {
+            Piece[] row = board[from >>> 3];
+            row[5] = row[7];
+            row[7] = null;
+        } else if ((move & PackedMove.CASTLE_QUEEN_SIDE) != 0) {
+            Piece[] row = board[from >>> 3];
+            row[3] = row[0];
+            row[0] = null;
+        }
+    }
+
+    /**
+     * Takes back a move played with {@link #makeMove}; the packed move carries everything needed.
+     */
+    static void unmakeMove(Piece[][] board, int move, PieceColor color) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        board[from >>> 3][from & 7] = Piece.of(PackedMove.piece(move), color);
+        PieceType captured = PackedMove.captured(move);
+        Piece victim = captured == null ? null : Piece.of(captured, color.opposite());
+        if ((move & PackedMove.EN_PASSANT) != 0) {
+            board[to >>> 3][to & 7] = null;
+            board[from >>> 3][to & 7] = victim;
+        } else {
+            board[to >>> 3][to & 7] = victim;
+            if ((move & PackedMove.CASTLE_KING_SIDE) != 0) {
+                Piece[] row = board[from >>> 3];
+                row[7] = row[5];
+                row[5] = null;
+            } else if ((move & PackedMove.CASTLE_QUEEN_SIDE) != 0) {
+                Piece[] row = board[from >>> 3];
+                row[0] = row[3];
+                row[3] = null;
+            }
+        }
+    }
+
+    /**
+     * Clears the castling rights lost by a move: all of the mover's when the king moves, and one
+     * side's when a rook leaves or is captured on its corner.
+     */
+    static void updateCastling(Map<PieceColor, CastlingRights> castling, int move, PieceColor color) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        CastlingRights own = castling.get(color);
+        PieceType piece = PackedMove.piece(move);
+        int homeCorner = color == PieceColor.WHITE ? 56 : 0;
+        if (piece == PieceType.KING) {
+            own.setKingSide(false);
+            own.setQueenSide(false);
+        } else if (piece == PieceType.ROOK) {
+            if (from == homeCorner) {
+                own.setQueenSide(false);
+            } else if (from == homeCorner + 7) {
+                own.setKingSide(false);
+            }
+        }
+        if (PackedMove.captured(move) == PieceType.ROOK) {
+            int enemyCorner = homeCorner ^ 56;
+            CastlingRights enemy = castling.get(color.opposite());
+            if (to == enemyCorner) {
+                enemy.setQueenSide(false);
+            } else if (to == enemyCorner + 7) {
+                enemy.setKingSide(false);
+            }
+        }
+    }
+
+    static int findKing(Piece[][] board, PieceColor color) {
+        for (int rank = 0; rank < 8; rank++) {
+            for (int file = 0; file < 8; file++) {
+                Piece piece = board[rank][file];
+                if (piece != null && piece.getType() == PieceType.KING && piece.getColor() == color) {
+                    return rank * 8 + file;
+                }
+            }
+        }
+        return Square.NONE;
+    }
+
+    /**
+     * Returns whether any piece of {@code attackerColor} attacks the given square.
+     */
+    static boolean isAttacked(Piece[][] board, int file, int rank, PieceColor attackerColor) {
+        int pawnRank = rank + (attackerColor == PieceColor.WHITE ? 1 : -1);
+        if (pawnRank >= 0 && pawnRank < 8) {
+            for (int df = -1; df <= 1; df += 2) {
+                int fileIndex = file + df;
+                if (fileIndex >= 0 && fileIndex < 8
+                        && is(board[pawnRank][fileIndex], PieceType.PAWN, attackerColor)) {
+                    return true;
+                }
+            }
+        }
+        for (int[] delta : KNIGHT_DELTAS) {
+            int fileIndex = file + delta[0];
+            int rankIndex = rank + delta[1];
+            if (fileIndex >= 0 && fileIndex < 8 && rankIndex >= 0 && rankIndex < 8
+                    && is(board[rankIndex][fileIndex], PieceType.KNIGHT, attackerColor)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < QUEEN_DIRECTIONS.length; i++) {
+            int[] direction = QUEEN_DIRECTIONS[i];
+            boolean orthogonal = i < 4;
+            int fileIndex = file + direction[0];
+            int rankIndex = rank + direction[1];
+            boolean adjacent = true;
+            while (fileIndex >= 0 && fileIndex < 8 && rankIndex >= 0 && rankIndex < 8) {
+                Piece piece = board[rankIndex][fileIndex];
+                if (piece != null) {
+                    if (piece.getColor() == attackerColor) {
+                        PieceType type = piece.getType();
+                        if (type == PieceType.QUEEN
+                                || (orthogonal ? type == PieceType.ROOK : type == PieceType.BISHOP)
+                                || (adjacent && type == PieceType.KING)) {
+                            return true;
+                        }
+                    }
+                    break;
+                }
+                adjacent = false;
+                fileIndex += direction[0];
+                rankIndex += direction[1];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the squares attacked by the piece on {@code square} as a bitmask, or {@code 0} for
+     * an empty square. Sliders stop at the first occupied square, which is included; pawns
+     * attack diagonally only. Whether the piece is pinned is not considered.
+     */
+    static long attacksFrom(Piece[][] board, int square) {
+        Piece piece = board[square >>> 3][square & 7];
+        if (piece == null) {
+            return 0L;
+        }
+        int file = square & 7;
+        int rank = square >>> 3;
+        switch (piece.getType()) {
+            case PAWN: {
+                int targetRank = rank + (piece.getColor() == PieceColor.WHITE ? -1 : 1);
+                if (targetRank < 0 || targetRank > 7) {
+                    return 0L;
+                }
+                long mask = 0L;
+                if (file > 0) {
+                    mask |= 1L << (targetRank * 8 + file - 1);
+                }
+                if (file < 7) {
+                    mask |= 1L << (targetRank * 8 + file + 1);
+                }
+                return mask;
+            }
+            case KNIGHT:
+                return KNIGHT_ATTACKS[square];
+            case KING:
+                return KING_ATTACKS[square];
+            case BISHOP:
+                return rays(board, file, rank, BISHOP_DIRECTIONS);
+            case ROOK:
+                return rays(board, file, rank, ROOK_DIRECTIONS);
+            default:
+                return rays(board, file, rank, QUEEN_DIRECTIONS);
+        }
+    }
+
+    /**
+     * Returns every square attacked by at least one piece of {@code color}, as a bitmask.
+     */
+    static long attackedBy(Piece[][] board, PieceColor color) {
+        long mask = 0L;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board[square >>> 3][square & 7];
+            if (piece != null && piece.getColor() == color) {
+                mask |= attacksFrom(board, square);
+            }
+        }
+        return mask;
+    }
+
+    private static long rays(Piece[][] board, int file, int rank, int[][] directions) {
+        long mask = 0L;
+        for (int[] direction : directions) {
+            int fileIndex = file + direction[0];
+            int rankIndex = rank + direction[1];
+            while (fileIndex >= 0 && fileIndex < 8 && rankIndex >= 0 && rankIndex < 8) {
+                mask |= 1L << (rankIndex * 8 + fileIndex);
+                if (board[rankIndex][fileIndex] != null) {
+                    break;
+                }
+                fileIndex += direction[0];
+                rankIndex += direction[1];
+            }
+        }
+        return mask;
+    }
+
+    private static long[] stepMasks(int[][] deltas) {
+        long[] masks = new long[64];
+        for (int square = 0; square < 64; square++) {
+            for (int[] delta : deltas) {
+                int fileIndex = (square & 7) + delta[0];
+                int rankIndex = (square >>> 3) + delta[1];
+                if (fileIndex >= 0 && fileIndex < 8 && rankIndex >= 0 && rankIndex < 8) {
+                    masks[square] |= 1L << (rankIndex * 8 + fileIndex);
+                }
+            }
+        }
+        return masks;
+    }
+
+    private static boolean is(Piece piece, PieceType type, PieceColor color) {
+        return piece != null && piece.getType() == type && piece.getColor() == color;
+    }
+}
@@ -4,7 +4,7 @@ package com.crimsonknights.chess;
  * Extends a move with annotations recorded in the move history.
  */
 public final class MoveRecord extends Move {
-    private final String notation;
+    private String notation;
     private final Piece capturedPiece;
     private final boolean check;
     private final boolean checkmate;
@@ -14,6 +14,10 @@ public final class MoveRecord extends Move {
     private final GameState previousState;
     private final int fullmoveNumber;
 
+    /**
+     * Creates a record; pass a {@code null} notation to have {@link #getNotation()} build it on
+     * first use.
+     */
     public MoveRecord(Move base, String notation, Piece capturedPiece, boolean check,
                       boolean checkmate, boolean stalemate, boolean draw, String drawReason,
                       GameState previousState, int fullmoveNumber) {
@@ -30,7 +34,15 @@ public final class MoveRecord extends Move {
         this.fullmoveNumber = fullmoveNumber;
     }
 
+    /**
+     * Returns the display notation, e.g. {@code ♘ g1 – f3}. It is built on the first call and
+     * cached, so replays and bots that never read it do not pay for it. For SAN or LAN use
+     * {@link MoveFormatter}.
+     */
     public String getNotation() {
+        if (notation == null) {
+            notation = MoveFormatter.describe(this);
+        }
         return notation;
     }
 
@@ -0,0 +1,90 @@
+package com.crimsonknights.chess;
+
+/**
+ * Helpers for moves packed into a single {@code int}, as produced by
+ * {@link CrimsonChess#legalMoves(int[])}.
+ *
+ * <p>Bits 0-5 hold the origin square, 6-11 the target square, 12-14 the promotion piece, 15-17
+ * the moving piece and 18-20 the captured piece (piece types by ordinal, {@code 0} meaning none for
+ * promotions and captures). Bits 21-24 flag en passant, double pawn pushes and castling.
+ */
+public final class PackedMove {
+    public static final int NONE = 0;
+
+    static final int EN_PASSANT = 1 << 21;
+    static final int DOUBLE_PUSH = 1 << 22;
+    static final int CASTLE_KING_SIDE = 1 << 23;
+    static final int CASTLE_QUEEN_SIDE = 1 << 24;
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private PackedMove() {
+    }
+
+    static int of(int from, int to, PieceType piece, Piece captured, PieceType promotion, int flags) {
+        return from | to << 6 | (promotion == null ? 0 : promotion.ordinal() << 12)
+                | piece.ordinal() << 15 | (captured == null ? 0 : captured.getType().ordinal() << 18) | flags;
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static PieceType piece(int move) {
+        return TYPES[(move >>> 15) & 7];
+    }
+
+    /**
+     * Returns the promotion piece, or {@code null} when the move does not promote.
+     */
+    public static PieceType promotion(int move) {
+        int ordinal = (move >>> 12) & 7;
+        return ordinal == 0 ? null : TYPES[ordinal];
+    }
+
+    /**
+     * Returns the type of the captured piece, or {@code null} for quiet moves.
+     */
+    public static PieceType captured(int move) {
+        int ordinal = (move >>> 18) & 7;
+        return ordinal == 0 ? null : TYPES[ordinal];
+    }
+
+    public static boolean isCapture(int move) {
+        return ((move >>> 18) & 7) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    /**
+     * Returns the castling side, or {@code null} when the move is not a castle.
+     */
+    public static MoveFlags.CastlingSide castle(int move) {
+        if ((move & CASTLE_KING_SIDE) != 0) {
+            return MoveFlags.CastlingSide.KING_SIDE;
+        }
+        if ((move & CASTLE_QUEEN_SIDE) != 0) {
+            return MoveFlags.CastlingSide.QUEEN_SIDE;
+        }
+        return null;
+    }
+
+    /**
+     * Formats the move in coordinate notation, e.g. {@code e7e8q}.
+     */
+    public static String toCoordinate(int move) {
+        String text = Square.name(from(move)) + Square.name(to(move));
+        PieceType promotion = promotion(move);
+        return promotion == null ? text : text + promotion.getFenChar();
+    }
+}
@@ -0,0 +1,333 @@
+package com.crimsonknights.chess;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel perft: counts the leaf nodes of the legal move tree to a fixed depth, the standard
+ * check of a move generator. The top of the tree is split into fork-join tasks, each working on
+ * its own board copy; subtrees of {@link #SEQUENTIAL_DEPTH} plies or less are walked in place on
+ * the worker thread. Subtree counts are shared between threads through a lock-free table keyed
+ * by Zobrist hash and depth, which is kept between runs of the same instance.
+ *
+ * <pre>
+ * Perft depth [threads] [hash MiB] [fen]
+ * </pre>
+ */
+public final class Perft {
+    static final int SEQUENTIAL_DEPTH = 4;
+    private static final int MAX_DEPTH = 32;
+
+    private final ForkJoinPool pool;
+    private final CountTable table;
+    private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::newWorker);
+
+    /**
+     * @param parallelism worker threads
+     * @param hashMegabytes size of the shared subtree table; {@code 0} disables it
+     */
+    public Perft(int parallelism, int hashMegabytes) {
+        pool = new ForkJoinPool(parallelism);
+        table = hashMegabytes > 0 ? new CountTable(hashMegabytes) : null;
+    }
+
+    /**
+     * Counts the leaf nodes {@code depth} plies below the current position of {@code game}.
+     */
+    public Result run(CrimsonChess game, int depth) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be between 0 and " + MAX_DEPTH + ": " + depth);
+        }
+        for (Worker each : workers) {
+            each.reset();
+        }
+        long start = System.nanoTime();
+        int castlingBits = CastlingRights.toBits(game.rawCastling());
+        int ep = Square.index(game.rawEnPassant());
+        long hash = Zobrist.hash(game.rawBoard(), game.getTurn(), castlingBits, ep);
+        PerftTask root = new PerftTask(CrimsonChess.deepCloneBoard(game.rawBoard()), game.getTurn(),
+                castlingBits, ep, hash, depth);
+        long nodes = pool.invoke(root);
+        long nanos = System.nanoTime() - start;
+        List<Long> perThread = new ArrayList<>();
+        long probes = 0;
+        long hits = 0;
+        for (Worker each : workers) {
+            perThread.add(each.leaves);
+            probes += each.probes;
+            hits += each.hits;
+        }
+        return new Result(nodes, nanos, probes, hits, perThread);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Worker newWorker() {
+        Worker created = new Worker();
+        workers.add(created);
+        return created;
+    }
+
+    /**
+     * Counts below a position owned by the task. Above {@link #SEQUENTIAL_DEPTH} every child gets
+     * its own board copy and task; all children are forked before any is joined, because a
+     * joining thread may run other tasks that reuse its worker's move buffers.
+     */
+    private final class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Piece[][] board;
+        private final PieceColor turn;
+        private final int castlingBits;
+        private final int ep;
+        private final long hash;
+        private final int depth;
+
+        PerftTask(Piece[][] board, PieceColor turn, int castlingBits, int ep, long hash, int depth) {
+            this.board = board;
+            this.turn = turn;
+            this.castlingBits = castlingBits;
+            this.ep = ep;
+            this.hash = hash;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Worker w = worker.get();
+            CastlingRights.fromBits(w.castling, castlingBits);
+            if (depth <= SEQUENTIAL_DEPTH) {
+                return w.count(board, turn, ep, hash, depth, 0);
+            }
+            long cached = w.probe(hash, depth);
+            if (cached >= 0) {
+                return cached;
+            }
+            int[] moves = w.moves[0];
+            int count = w.generator.generate(board, turn, w.castling, ep == Square.NONE ? null : Square.name(ep),
+                    Square.NONE, moves);
+            List<PerftTask> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                Piece[][] child = CrimsonChess.deepCloneBoard(board);
+                MoveGenerator.makeMove(child, move, turn);
+                MoveGenerator.updateCastling(w.castling, move, turn);
+                int childCastling = CastlingRights.toBits(w.castling);
+                CastlingRights.fromBits(w.castling, castlingBits);
+                int childEp = enPassantAfter(move);
+                long childHash = Zobrist.afterMove(hash, move, turn, castlingBits, childCastling, ep, childEp);
+                PerftTask task = new PerftTask(child, turn.opposite(), childCastling, childEp, childHash, depth - 1);
+                task.fork();
+                children.add(task);
+            }
+            long total = 0;
+            for (PerftTask child : children) {
+                total += child.join();
+            }
+            if (table != null) {
+                table.store(hash, depth, total);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Per-thread scratch state and statistics.
+     */
+    private final class Worker {
+        final MoveGenerator generator = new MoveGenerator();
+        final int[][] moves = new int[MAX_DEPTH + 1][CrimsonChess.MAX_MOVES];
+        final Map<PieceColor, CastlingRights> castling = new EnumMap<>(PieceColor.class);
+        long leaves;
+        long probes;
+        long hits;
+
+        Worker() {
+            castling.put(PieceColor.WHITE, new CastlingRights(false, false));
+            castling.put(PieceColor.BLACK, new CastlingRights(false, false));
+        }
+
+        void reset() {
+            leaves = 0;
+            probes = 0;
+            hits = 0;
+        }
+
+        long probe(long hash, int depth) {
+            if (table == null) {
+                return -1;
+            }
+            probes++;
+            long count = table.probe(hash, depth);
+            if (count >= 0) {
+                hits++;
+            }
+            return count;
+        }
+
+        /**
+         * Depth-first count with make/unmake on {@code board}; the castling map holds the rights
+         * of the current node.
+         */
+        long count(Piece[][] board, PieceColor turn, int ep, long hash, int depth, int ply) {
+            if (depth == 0) {
+                return 1;
+            }
+            if (depth > 1) {
+                long cached = probe(hash, depth);
+                if (cached >= 0) {
+                    return cached;
+                }
+            }
+            int[] list = moves[ply];
+            int count = generator.generate(board, turn, castling, ep == Square.NONE ? null : Square.name(ep),
+                    Square.NONE, list);
+            if (depth == 1) {
+                leaves += count;
+                return count;
+            }
+            int castlingBits = CastlingRights.toBits(castling);
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                int move = list[i];
+                MoveGenerator.makeMove(board, move, turn);
+                MoveGenerator.updateCastling(castling, move, turn);
+                int childEp = enPassantAfter(move);
+                long childHash = Zobrist.afterMove(hash, move, turn, castlingBits, CastlingRights.toBits(castling),
+                        ep, childEp);
+                total += count(board, turn.opposite(), childEp, childHash, depth - 1, ply + 1);
+                MoveGenerator.unmakeMove(board, move, turn);
+                CastlingRights.fromBits(castling, castlingBits);
+            }
+            if (table != null) {
+                table.store(hash, depth, total);
+            }
+            return total;
+        }
+    }
+
+    private static int enPassantAfter(int move) {
+        return PackedMove.isDoublePush(move) ? (PackedMove.from(move) + PackedMove.to(move)) >>> 1 : Square.NONE;
+    }
+
+    /**
+     * Always-replace hash table of subtree counts. Each slot is a key word and a data word written
+     * with opaque (single-copy atomic) accesses; the key is stored XORed with the data, so a slot
+     * torn by two racing writers simply fails to match instead of returning a wrong count.
+     */
+    private static final class CountTable {
+        private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final long[] slots;
+        private final int mask;
+
+        CountTable(int megabytes) {
+            int entries = Integer.highestOneBit((int) Math.min((megabytes * 1024L * 1024L) / 16, 1 << 30));
+            slots = new long[entries * 2];
+            mask = entries - 1;
+        }
+
+        long probe(long hash, int depth) {
+            int index = ((int) hash & mask) << 1;
+            long key = (long) SLOTS.getOpaque(slots, index);
+            long data = (long) SLOTS.getOpaque(slots, index + 1);
+            if ((key ^ data) != hash || (int) (data & 0xFF) != depth) {
+                return -1;
+            }
+            return data >>> 8;
+        }
+
+        void store(long hash, int depth, long count) {
+            int index = ((int) hash & mask) << 1;
+            long data = count << 8 | depth;
+            SLOTS.setOpaque(slots, index, hash ^ data);
+            SLOTS.setOpaque(slots, index + 1, data);
+        }
+    }
+
+    /**
+     * Totals of one {@link #run}. Leaf counts per thread only include subtrees a thread actually
+     * walked, not those answered from the table.
+     */
+    public static final class Result {
+        private final long nodes;
+        private final long nanos;
+        private final long probes;
+        private final long hits;
+        private final List<Long> leavesPerThread;
+
+        Result(long nodes, long nanos, long probes, long hits, List<Long> leavesPerThread) {
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.probes = probes;
+            this.hits = hits;
+            this.leavesPerThread = leavesPerThread;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getNodesPerSecond() {
+            return nodes * 1e9 / Math.max(1, nanos);
+        }
+
+        public double getHitRate() {
+            return probes == 0 ? 0 : (double) hits / probes;
+        }
+
+        public List<Long> getLeavesPerThread() {
+            return leavesPerThread;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "nodes %d in %.2f s (%.0f nodes/s), cache hit rate %.1f%%",
+                    nodes, nanos / 1e9, getNodesPerSecond(), getHitRate() * 100));
+            long walked = 0;
+            for (long leaves : leavesPerThread) {
+                walked += leaves;
+            }
+            for (int i = 0; i < leavesPerThread.size(); i++) {
+                long leaves = leavesPerThread.get(i);
+                text.append(String.format(Locale.ROOT, "%n  thread %d: %d leaves (%.1f%%)", i, leaves,
+                        walked == 0 ? 0 : leaves * 100.0 / walked));
+            }
+            return text.toString();
+        }
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int hash = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        CrimsonChess game = new CrimsonChess();
+        if (args.length > 3) {
+            game.loadFen(String.join(" ", List.of(args).subList(3, args.length)));
+        }
+        Perft perft = new Perft(threads, hash);
+        try {
+            System.out.println("perft(" + depth + ") " + game.toFen());
+            System.out.println(perft.run(game, depth));
+        } finally {
+            perft.shutdown();
+        }
+    }
+}
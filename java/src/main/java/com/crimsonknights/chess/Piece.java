@@ -1,17 +1,31 @@
 package com.crimsonknights.chess;
 
-import java.util.Objects;
-
 /**
- * Represents a chess piece.
+ * Represents a chess piece. There is exactly one instance per type and color, obtained through
+ * {@link #of(PieceType, PieceColor)}, so pieces can be shared freely and compared by identity.
  */
 public final class Piece {
+    private static final int TYPE_COUNT = PieceType.values().length;
+    private static final Piece[] INSTANCES = new Piece[PieceColor.values().length * TYPE_COUNT];
+
+    static {
+        for (PieceColor color : PieceColor.values()) {
+            for (PieceType type : PieceType.values()) {
+                INSTANCES[color.ordinal() * TYPE_COUNT + type.ordinal()] = new Piece(type, color);
+            }
+        }
+    }
+
     private final PieceType type;
     private final PieceColor color;
 
-    public Piece(PieceType type, PieceColor color) {
-        this.type = Objects.requireNonNull(type, "type");
-        this.color = Objects.requireNonNull(color, "color");
+    private Piece(PieceType type, PieceColor color) {
+        this.type = type;
+        this.color = color;
+    }
+
+    public static Piece of(PieceType type, PieceColor color) {
+        return INSTANCES[color.ordinal() * TYPE_COUNT + type.ordinal()];
     }
 
     public PieceType getType() {
@@ -22,7 +36,10 @@ public final class Piece {
         return color;
     }
 
+    /**
+     * Pieces are immutable flyweights, so this returns the same instance.
+     */
     public Piece copy() {
-        return new Piece(type, color);
+        return this;
     }
 }
@@ -0,0 +1,187 @@
+package com.crimsonknights.chess;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * An immutable position packed into four nibble-per-square {@code long}s plus side to move,
+ * castling rights, en passant square and move counters. A {@link CrimsonChess} publishes one
+ * after every change through {@link CrimsonChess#position()}, so other threads can read pieces,
+ * FEN and legal moves without locking the game or copying its board.
+ */
+public final class Position implements BoardView {
+    private static final PieceType[] TYPES = PieceType.values();
+    private static final PieceColor[] COLORS = PieceColor.values();
+    private static final Piece[] PIECES = new Piece[1 + COLORS.length * TYPES.length];
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static {
+        for (PieceColor color : COLORS) {
+            for (PieceType type : TYPES) {
+                PIECES[code(type, color)] = Piece.of(type, color);
+            }
+        }
+    }
+
+    private final long squares0;
+    private final long squares1;
+    private final long squares2;
+    private final long squares3;
+    // Side to move in bit 0, castling bits above it, then a flag and the en passant square.
+    private final int flags;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+
+    private Position(long[] squares, int flags, int halfmoveClock, int fullmoveNumber) {
+        this.squares0 = squares[0];
+        this.squares1 = squares[1];
+        this.squares2 = squares[2];
+        this.squares3 = squares[3];
+        this.flags = flags;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    static Position of(Piece[][] board, PieceColor turn, Map<PieceColor, CastlingRights> castling,
+                       String enPassant, int halfmoveClock, int fullmoveNumber) {
+        long[] squares = new long[4];
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board[square >>> 3][square & 7];
+            if (piece != null) {
+                squares[square >>> 4] |= (long) code(piece.getType(), piece.getColor()) << ((square & 15) * 4);
+            }
+        }
+        int ep = Square.index(enPassant);
+        int flags = turn.ordinal() | CastlingRights.toBits(castling) << 1
+                | (ep == Square.NONE ? 0 : 0x20 | ep << 6);
+        return new Position(squares, flags, halfmoveClock, fullmoveNumber);
+    }
+
+    @Override
+    public Piece pieceAt(int index) {
+        long word;
+        switch (index >>> 4) {
+            case 0:
+                word = squares0;
+                break;
+            case 1:
+                word = squares1;
+                break;
+            case 2:
+                word = squares2;
+                break;
+            default:
+                word = squares3;
+                break;
+        }
+        return PIECES[(int) (word >>> ((index & 15) * 4)) & 15];
+    }
+
+    public PieceColor getTurn() {
+        return COLORS[flags & 1];
+    }
+
+    public boolean canCastleKingSide(PieceColor color) {
+        return (flags & (color == PieceColor.WHITE ? 2 : 8)) != 0;
+    }
+
+    public boolean canCastleQueenSide(PieceColor color) {
+        return (flags & (color == PieceColor.WHITE ? 4 : 16)) != 0;
+    }
+
+    /**
+     * Returns the en passant target square, e.g. {@code e3}, or {@code null}.
+     */
+    public String getEnPassant() {
+        return (flags & 0x20) == 0 ? null : Square.name(flags >>> 6);
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public String toFen() {
+        return CrimsonChess.fen(this, getTurn(), flags >>> 1 & 15, getEnPassant(), halfmoveClock, fullmoveNumber);
+    }
+
+    /**
+     * Writes every legal move into {@code buffer} as a {@link PackedMove} and returns the count,
+     * like {@link CrimsonChess#legalMoves(int[])}. Safe to call from any thread; each thread
+     * unpacks into its own scratch board.
+     */
+    public int legalMoves(int[] buffer) {
+        Scratch scratch = SCRATCH.get();
+        unpack(scratch.board);
+        CastlingRights.fromBits(scratch.castling, flags >>> 1 & 15);
+        return scratch.generator.generate(scratch.board, getTurn(), scratch.castling, getEnPassant(),
+                Square.NONE, buffer);
+    }
+
+    /**
+     * Returns the position as a fresh {@link GameState} with its own board and castling rights.
+     */
+    GameState toState() {
+        Piece[][] board = new Piece[8][8];
+        unpack(board);
+        Map<PieceColor, CastlingRights> castling = newCastling();
+        CastlingRights.fromBits(castling, flags >>> 1 & 15);
+        return new GameState(board, getTurn(), castling, getEnPassant(), halfmoveClock, fullmoveNumber);
+    }
+
+    private void unpack(Piece[][] board) {
+        for (int square = 0; square < 64; square++) {
+            board[square >>> 3][square & 7] = pieceAt(square);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Position)) {
+            return false;
+        }
+        Position that = (Position) other;
+        return squares0 == that.squares0 && squares1 == that.squares1 && squares2 == that.squares2
+                && squares3 == that.squares3 && flags == that.flags
+                && halfmoveClock == that.halfmoveClock && fullmoveNumber == that.fullmoveNumber;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = squares0 * 31 + squares1;
+        hash = hash * 31 + squares2;
+        hash = hash * 31 + squares3;
+        hash = hash * 31 + flags;
+        hash = hash * 31 + halfmoveClock;
+        hash = hash * 31 + fullmoveNumber;
+        return Long.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+
+    private static int code(PieceType type, PieceColor color) {
+        return 1 + color.ordinal() * TYPES.length + type.ordinal();
+    }
+
+    private static Map<PieceColor, CastlingRights> newCastling() {
+        Map<PieceColor, CastlingRights> castling = new EnumMap<>(PieceColor.class);
+        castling.put(PieceColor.WHITE, new CastlingRights(false, false));
+        castling.put(PieceColor.BLACK, new CastlingRights(false, false));
+        return castling;
+    }
+
+    private static final class Scratch {
+        final Piece[][] board = new Piece[8][8];
+        final Map<PieceColor, CastlingRights> castling = newCastling();
+        final MoveGenerator generator = new MoveGenerator();
+    }
+}
@@ -0,0 +1,535 @@
+package com.crimsonknights.chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Iterative-deepening alpha-beta search with quiescence, check extensions and simple move
+ * ordering (previous principal variation, captures by most valuable victim, killer moves). The
+ * evaluation is material plus piece-square tables.
+ *
+ * <p>A search works on its own copy of the position taken at construction. One thread runs
+ * {@link #search}; any other thread may call {@link #stop()}.
+ */
+public final class Search {
+    public static final int MATE = 32000;
+    static final int MAX_PLY = 64;
+
+    private static final int INFINITY = MATE + 1;
+    private static final int[] VALUES = {0, 900, 500, 330, 320, 100};
+    // Piece-square bonuses from White's point of view, indexed like Square (a8 first).
+    private static final int[][] PST = {
+            {
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -20, -30, -30, -40, -40, -30, -30, -20,
+                    -10, -20, -20, -20, -20, -20, -20, -10,
+                    20, 20, 0, 0, 0, 0, 20, 20,
+                    20, 30, 10, 0, 0, 10, 30, 20
+            },
+            {
+                    -20, -10, -10, -5, -5, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 5, 5, 5, 0, -10,
+                    -5, 0, 5, 5, 5, 5, 0, -5,
+                    0, 0, 5, 5, 5, 5, 0, -5,
+                    -10, 5, 5, 5, 5, 5, 0, -10,
+                    -10, 0, 5, 0, 0, 0, 0, -10,
+                    -20, -10, -10, -5, -5, -10, -10, -20
+            },
+            {
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    5, 10, 10, 10, 10, 10, 10, 5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    0, 0, 0, 5, 5, 0, 0, 0
+            },
+            {
+                    -20, -10, -10, -10, -10, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 10, 10, 5, 0, -10,
+                    -10, 5, 5, 10, 10, 5, 5, -10,
+                    -10, 0, 10, 10, 10, 10, 0, -10,
+                    -10, 10, 10, 10, 10, 10, 10, -10,
+                    -10, 5, 0, 0, 0, 0, 5, -10,
+                    -20, -10, -10, -10, -10, -10, -10, -20
+            },
+            {
+                    -50, -40, -30, -30, -30, -30, -40, -50,
+                    -40, -20, 0, 0, 0, 0, -20, -40,
+                    -30, 0, 10, 15, 15, 10, 0, -30,
+                    -30, 5, 15, 20, 20, 15, 5, -30,
+                    -30, 0, 15, 20, 20, 15, 0, -30,
+                    -30, 5, 10, 15, 15, 10, 5, -30,
+                    -40, -20, 0, 5, 5, 0, -20, -40,
+                    -50, -40, -30, -30, -30, -30, -40, -50
+            },
+            {
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    50, 50, 50, 50, 50, 50, 50, 50,
+                    10, 10, 20, 30, 30, 20, 10, 10,
+                    5, 5, 10, 25, 25, 10, 5, 5,
+                    0, 0, 0, 20, 20, 0, 0, 0,
+                    5, -5, -10, 0, 0, -10, -5, 5,
+                    5, 10, 10, -20, -20, 10, 10, 5,
+                    0, 0, 0, 0, 0, 0, 0, 0
+            }
+    };
+
+    private final Piece[][] board;
+    private final Map<PieceColor, CastlingRights> castling;
+    private PieceColor turn;
+    private int epSquare;
+    private int halfmoveClock;
+
+    private final MoveGenerator generator = new MoveGenerator();
+    private final int[][] moves = new int[MAX_PLY + 1][CrimsonChess.MAX_MOVES];
+    private final int[][] orderScores = new int[MAX_PLY + 1][CrimsonChess.MAX_MOVES];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    private final int[] savedCastling = new int[MAX_PLY + 1];
+    private final int[] savedEp = new int[MAX_PLY + 1];
+    private final int[] savedClock = new int[MAX_PLY + 1];
+    private int[] previousPv = new int[0];
+    private boolean followPv;
+
+    private volatile boolean stopRequested;
+    private boolean aborted;
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private long startNanos;
+
+    /**
+     * Prepares a search of the current position of {@code game}; later moves in the game do not
+     * affect it.
+     */
+    public Search(CrimsonChess game) {
+        GameState state = game.snapshot();
+        board = state.getBoard();
+        castling = state.getCastling();
+        turn = state.getTurn();
+        epSquare = Square.index(state.getEnPassant());
+        halfmoveClock = state.getHalfmoveClock();
+    }
+
+    /**
+     * Asks a running search to finish as soon as possible; it still returns its best move so far.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Searches until a limit is reached or {@link #stop()} is called. {@code listener}, if not
+     * {@code null}, is told about every completed iteration on the searching thread.
+     */
+    public SearchResult search(SearchLimits limits, Consumer<SearchResult> listener) {
+        int maxDepth = begin(limits);
+        SearchResult best = null;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            followPv = true;
+            int score = alphaBeta(depth, 0, -INFINITY, INFINITY);
+            if (aborted) {
+                break;
+            }
+            previousPv = Arrays.copyOf(pv[0], pvLength[0]);
+            best = new SearchResult(previousPv.clone(), score, depth, nodes, elapsedMillis());
+            if (listener != null) {
+                listener.accept(best);
+            }
+            if (previousPv.length == 0 || best.isMate()) {
+                break;
+            }
+        }
+        if (best == null) {
+            // Stopped before the first iteration finished: fall back to any legal move.
+            int count = generate(0);
+            int[] line = count == 0 ? new int[0] : new int[] {moves[0][0]};
+            best = new SearchResult(line, 0, 0, nodes, elapsedMillis());
+        }
+        return best;
+    }
+
+    /**
+     * Searches the best {@code lines} moves of the position together, until a limit is reached or
+     * {@link #stop()} is called, and returns them best first; fewer when there are fewer legal
+     * moves. {@code listener}, if not {@code null}, is told about the lines of every completed
+     * iteration on the searching thread.
+     *
+     * <p>This is one search, not one per line: each iteration walks the root moves once, searching
+     * each with the score of the weakest line found so far as its lower bound, so a move that
+     * cannot make the list fails low as cheaply as in a normal search. Killer moves and the root
+     * order carry over from line to line and from one iteration to the next, and each line's
+     * previous principal variation is searched first below it.
+     *
+     * @throws IllegalArgumentException if {@code lines} is not positive
+     */
+    public List<SearchResult> analyse(SearchLimits limits, int lines, Consumer<List<SearchResult>> listener) {
+        if (lines < 1) {
+            throw new IllegalArgumentException("Lines must be positive: " + lines);
+        }
+        int maxDepth = begin(limits);
+        int count = generate(0);
+        scoreMoves(0, count, PackedMove.NONE);
+        int[] rootMoves = new int[count];
+        for (int i = 0; i < count; i++) {
+            rootMoves[i] = nextMove(0, i, count);
+        }
+        int[] rootScores = new int[count];
+        int[][] rootPvs = new int[count][];
+        for (int i = 0; i < count; i++) {
+            rootPvs[i] = new int[] {rootMoves[i]};
+        }
+        int wanted = Math.min(lines, count);
+        int[] top = new int[wanted];
+        boolean rootInCheck = inCheck();
+        List<SearchResult> best = new ArrayList<>();
+        for (int depth = 1; depth <= maxDepth && count > 0; depth++) {
+            sortRoot(rootMoves, rootScores, rootPvs);
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                int alpha = found < wanted ? -INFINITY : rootScores[top[wanted - 1]];
+                int move = rootMoves[i];
+                make(move, 0);
+                previousPv = rootPvs[i];
+                followPv = true;
+                int score = -alphaBeta(rootInCheck ? depth : depth - 1, 1, -INFINITY, -alpha);
+                followPv = false;
+                unmake(move, 0);
+                if (aborted) {
+                    break;
+                }
+                // A move at or below the weakest line only has an upper bound; it just keeps its
+                // old line for ordering.
+                rootScores[i] = score;
+                if (score > alpha) {
+                    updatePv(0, move);
+                    rootPvs[i] = Arrays.copyOf(pv[0], pvLength[0]);
+                    int slot = Math.min(found, wanted - 1);
+                    while (slot > 0 && rootScores[top[slot - 1]] < score) {
+                        top[slot] = top[slot - 1];
+                        slot--;
+                    }
+                    top[slot] = i;
+                    found = Math.min(found + 1, wanted);
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            best = new ArrayList<>(wanted);
+            boolean allMates = true;
+            for (int line = 0; line < wanted; line++) {
+                SearchResult result = new SearchResult(rootPvs[top[line]].clone(), rootScores[top[line]], depth,
+                        nodes, elapsedMillis());
+                allMates &= result.isMate();
+                best.add(result);
+            }
+            if (listener != null) {
+                listener.accept(Collections.unmodifiableList(best));
+            }
+            if (allMates) {
+                break;
+            }
+        }
+        if (best.isEmpty() && count > 0) {
+            // Stopped before the first iteration finished: fall back to any legal move.
+            best.add(new SearchResult(new int[] {rootMoves[0]}, 0, 0, nodes, elapsedMillis()));
+        }
+        return best;
+    }
+
+    /**
+     * Resets the per-search state and returns the depth to stop at.
+     */
+    private int begin(SearchLimits limits) {
+        startNanos = System.nanoTime();
+        deadline = limits.getMoveTimeMillis() > 0
+                ? startNanos + limits.getMoveTimeMillis() * 1_000_000L
+                : Long.MAX_VALUE;
+        nodeLimit = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+        nodes = 0;
+        aborted = false;
+        previousPv = new int[0];
+        for (int[] pair : killers) {
+            Arrays.fill(pair, PackedMove.NONE);
+        }
+        return limits.getDepth() > 0 ? Math.min(limits.getDepth(), MAX_PLY) : MAX_PLY;
+    }
+
+    /**
+     * Stable insertion sort of the root moves by their last score, best first, keeping each
+     * move's score and line with it.
+     */
+    private static void sortRoot(int[] rootMoves, int[] rootScores, int[][] rootPvs) {
+        for (int i = 1; i < rootMoves.length; i++) {
+            int move = rootMoves[i];
+            int score = rootScores[i];
+            int[] line = rootPvs[i];
+            int j = i;
+            for (; j > 0 && rootScores[j - 1] < score; j--) {
+                rootMoves[j] = rootMoves[j - 1];
+                rootScores[j] = rootScores[j - 1];
+                rootPvs[j] = rootPvs[j - 1];
+            }
+            rootMoves[j] = move;
+            rootScores[j] = score;
+            rootPvs[j] = line;
+        }
+    }
+
+    private int alphaBeta(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (ply > 0 && halfmoveClock >= 100) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return evaluate();
+        }
+        boolean inCheck = inCheck();
+        if (inCheck) {
+            depth++;
+        }
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        if (countNode()) {
+            return 0;
+        }
+        int count = generate(ply);
+        if (count == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        boolean onPv = followPv;
+        followPv = false;
+        int pvMove = onPv && ply < previousPv.length ? previousPv[ply] : PackedMove.NONE;
+        scoreMoves(ply, count, pvMove);
+        int bestScore = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(ply, i, count);
+            make(move, ply);
+            followPv = onPv && move == pvMove;
+            int score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+            followPv = false;
+            unmake(move, ply);
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        if (!PackedMove.isCapture(move) && killers[ply][0] != move) {
+                            killers[ply][1] = killers[ply][0];
+                            killers[ply][0] = move;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (countNode()) {
+            return 0;
+        }
+        int standPat = evaluate();
+        if (ply >= MAX_PLY || standPat >= beta) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        int count = generate(ply);
+        int[] list = moves[ply];
+        int tactical = 0;
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.isCapture(list[i]) || PackedMove.promotion(list[i]) != null) {
+                list[tactical++] = list[i];
+            }
+        }
+        scoreMoves(ply, tactical, PackedMove.NONE);
+        int bestScore = standPat;
+        for (int i = 0; i < tactical; i++) {
+            int move = nextMove(ply, i, tactical);
+            make(move, ply);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            unmake(move, ply);
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    private boolean countNode() {
+        nodes++;
+        if (stopRequested || nodes >= nodeLimit
+                || ((nodes & 2047) == 0 && System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    private int generate(int ply) {
+        String ep = epSquare == Square.NONE ? null : Square.name(epSquare);
+        return generator.generate(board, turn, castling, ep, Square.NONE, moves[ply]);
+    }
+
+    private void scoreMoves(int ply, int count, int pvMove) {
+        int[] list = moves[ply];
+        int[] scores = orderScores[ply];
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            int score;
+            if (move == pvMove) {
+                score = 1 << 30;
+            } else if (PackedMove.isCapture(move)) {
+                score = (1 << 20) + VALUES[PackedMove.captured(move).ordinal()] * 16
+                        - VALUES[PackedMove.piece(move).ordinal()] / 16;
+            } else if (move == killers[ply][0]) {
+                score = 1 << 19;
+            } else if (move == killers[ply][1]) {
+                score = (1 << 19) - 1;
+            } else {
+                score = 0;
+            }
+            PieceType promotion = PackedMove.promotion(move);
+            if (promotion != null) {
+                score += VALUES[promotion.ordinal()] * 16;
+            }
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Selection sort step: swaps the best-scored remaining move into slot {@code index}.
+     */
+    private int nextMove(int ply, int index, int count) {
+        int[] list = moves[ply];
+        int[] scores = orderScores[ply];
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = list[best];
+        list[best] = list[index];
+        list[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    private void updatePv(int ply, int move) {
+        int[] line = pv[ply];
+        line[ply] = move;
+        int childLength = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], ply + 1, line, ply + 1, childLength - ply - 1);
+        pvLength[ply] = Math.max(childLength, ply + 1);
+    }
+
+    private void make(int move, int ply) {
+        savedCastling[ply] = CastlingRights.toBits(castling);
+        savedEp[ply] = epSquare;
+        savedClock[ply] = halfmoveClock;
+        MoveGenerator.makeMove(board, move, turn);
+        MoveGenerator.updateCastling(castling, move, turn);
+        epSquare = PackedMove.isDoublePush(move)
+                ? (PackedMove.from(move) + PackedMove.to(move)) >>> 1
+                : Square.NONE;
+        halfmoveClock = PackedMove.piece(move) == PieceType.PAWN || PackedMove.isCapture(move)
+                ? 0
+                : halfmoveClock + 1;
+        turn = turn.opposite();
+    }
+
+    private void unmake(int move, int ply) {
+        turn = turn.opposite();
+        MoveGenerator.unmakeMove(board, move, turn);
+        CastlingRights.fromBits(castling, savedCastling[ply]);
+        epSquare = savedEp[ply];
+        halfmoveClock = savedClock[ply];
+    }
+
+    private boolean inCheck() {
+        int king = MoveGenerator.findKing(board, turn);
+        return king != Square.NONE && MoveGenerator.isAttacked(board, king & 7, king >>> 3, turn.opposite());
+    }
+
+    /**
+     * Material and piece-square score from the side to move's point of view.
+     */
+    int evaluate() {
+        return evaluate(board, turn);
+    }
+
+    /**
+     * Material and piece-square score of {@code position} from its side to move's point of view,
+     * the static evaluation this search's scores are built on.
+     */
+    public static int evaluate(Position position) {
+        int score = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = position.pieceAt(square);
+            if (piece != null) {
+                score += pieceScore(piece.getType(), piece.getColor(), square);
+            }
+        }
+        return position.getTurn() == PieceColor.WHITE ? score : -score;
+    }
+
+    static int evaluate(Piece[][] board, PieceColor turn) {
+        int score = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board[square >>> 3][square & 7];
+            if (piece == null) {
+                continue;
+            }
+            score += pieceScore(piece.getType(), piece.getColor(), square);
+        }
+        return turn == PieceColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Material plus piece-square bonus of one piece, positive for White.
+     */
+    static int pieceScore(PieceType type, PieceColor color, int square) {
+        int index = type.ordinal();
+        return color == PieceColor.WHITE
+                ? VALUES[index] + PST[index][square]
+                : -(VALUES[index] + PST[index][square ^ 56]);
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+}
@@ -0,0 +1,38 @@
+package com.crimsonknights.chess;
+
+/**
+ * Bounds for a {@link Search}. A zero limit means unbounded; with no limits at all the search
+ * runs until it is stopped or reaches the maximum depth.
+ */
+public final class SearchLimits {
+    private int depth;
+    private long moveTimeMillis;
+    private long nodes;
+
+    public SearchLimits depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public SearchLimits moveTime(long millis) {
+        this.moveTimeMillis = millis;
+        return this;
+    }
+
+    public SearchLimits nodes(long nodes) {
+        this.nodes = nodes;
+        return this;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+}
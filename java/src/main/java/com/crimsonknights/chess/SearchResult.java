@@ -0,0 +1,63 @@
+package com.crimsonknights.chess;
+
+/**
+ * Outcome of one completed {@link Search} iteration. Moves are {@link PackedMove}s and the score
+ * is in centipawns from the side to move's point of view.
+ */
+public final class SearchResult {
+    private final int[] pv;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long millis;
+
+    SearchResult(int[] pv, int score, int depth, long nodes, long millis) {
+        this.pv = pv;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    /**
+     * Returns the move to play, or {@link PackedMove#NONE} when the side to move has none.
+     */
+    public int getBestMove() {
+        return pv.length == 0 ? PackedMove.NONE : pv[0];
+    }
+
+    public int[] getPv() {
+        return pv.clone();
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * Returns the number of full moves to mate, negative when the side to move is being mated,
+     * or {@code 0} when the score is not a mate score.
+     */
+    public int getMateIn() {
+        if (!isMate()) {
+            return 0;
+        }
+        return score > 0 ? (Search.MATE - score + 1) / 2 : -(Search.MATE + score) / 2;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
@@ -0,0 +1,38 @@
+package com.crimsonknights.chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a {@link CrimsonChess#makeMove} call that took longer than the
+ * threshold, 1 ms unless a recording setting overrides it. The fields are only filled in once
+ * the event is known to be committed, so fast moves pay for the clock reads alone.
+ */
+@Name("com.crimsonknights.chess.SlowMove")
+@Label("Slow Move")
+@Category({"Crimson Knights", "Engine"})
+@Description("A makeMove call that exceeded the threshold")
+@Threshold("1 ms")
+@StackTrace(false)
+final class SlowMoveEvent extends jdk.jfr.Event {
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Legal")
+    @Description("Whether the move was legal and played")
+    boolean legal;
+
+    @Label("History Length")
+    int historyLength;
+
+    @Label("FEN")
+    @Description("Position after the call")
+    String fen;
+}
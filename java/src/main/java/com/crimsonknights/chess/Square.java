@@ -0,0 +1,53 @@
+package com.crimsonknights.chess;
+
+/**
+ * Converts between algebraic square names and board indices. Index 0 is a8 and index 63 is h1,
+ * matching the row-major layout of {@link CrimsonChess#exportBoard()}.
+ */
+public final class Square {
+    public static final int NONE = -1;
+
+    private static final String[] NAMES = new String[64];
+
+    static {
+        for (int index = 0; index < 64; index++) {
+            NAMES[index] = "" + (char) ('a' + file(index)) + (8 - rank(index));
+        }
+    }
+
+    private Square() {
+    }
+
+    /**
+     * Returns the index for a name like {@code e4}, or {@link #NONE} if it is not a square.
+     */
+    public static int index(String name) {
+        if (name == null || name.length() != 2) {
+            return NONE;
+        }
+        int file = name.charAt(0) - 'a';
+        int rank = '8' - name.charAt(1);
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return NONE;
+        }
+        return rank * 8 + file;
+    }
+
+    public static String name(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * File from 0 (a) to 7 (h).
+     */
+    public static int file(int index) {
+        return index & 7;
+    }
+
+    /**
+     * Board row from 0 (the eighth rank) to 7 (the first rank).
+     */
+    public static int rank(int index) {
+        return index >>> 3;
+    }
+}
@@ -0,0 +1,72 @@
+package com.crimsonknights.chess;
+
+/**
+ * Decides how long the engine thinks about one move under a game clock. A move gets a soft
+ * budget of its share of the remaining time plus most of the increment, and a hard budget the
+ * search is never allowed to pass.
+ *
+ * <p>After each completed iteration {@link #shouldStop} compares the time used against the soft
+ * budget, scaled by how settled the search looks: a best move that has not changed for several
+ * iterations stops early, while a new best move or a falling score buys extra time up to the hard
+ * budget. One manager serves one move.
+ */
+final class TimeManager {
+    static final long MOVE_OVERHEAD_MILLIS = 30;
+
+    private static final int MIN_MOVES_TO_GO = 20;
+    private static final int SCORE_DROP = 30;
+
+    private final long softMillis;
+    private final long hardMillis;
+    private int lastBest = PackedMove.NONE;
+    private int lastScore;
+    private int stableIterations;
+
+    /**
+     * @param remainingMillis time left on the engine's clock
+     * @param incrementMillis time added after each move
+     * @param fullmoveNumber the current move number, to estimate how many moves are still to come
+     */
+    TimeManager(long remainingMillis, long incrementMillis, int fullmoveNumber) {
+        long usable = Math.max(1, remainingMillis - MOVE_OVERHEAD_MILLIS);
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, 50 - fullmoveNumber);
+        softMillis = Math.min(usable, usable / movesToGo + incrementMillis * 3 / 4);
+        hardMillis = Math.min(usable, Math.max(softMillis, Math.min(softMillis * 4, usable / 4)));
+    }
+
+    long getSoftMillis() {
+        return softMillis;
+    }
+
+    long getHardMillis() {
+        return hardMillis;
+    }
+
+    /**
+     * Records a completed iteration and returns whether the search should stop after it.
+     *
+     * @param elapsedMillis time the search has used for this move so far
+     */
+    boolean shouldStop(SearchResult iteration, long elapsedMillis) {
+        int best = iteration.getBestMove();
+        double scale;
+        if (best != lastBest) {
+            stableIterations = 0;
+            scale = lastBest == PackedMove.NONE ? 1.0 : 1.6;
+        } else {
+            stableIterations++;
+            scale = stableIterations >= 4 ? 0.5 : stableIterations >= 2 ? 0.75 : 1.0;
+        }
+        if (lastBest != PackedMove.NONE && iteration.getScore() < lastScore - SCORE_DROP) {
+            scale *= 1.5;
+        }
+        lastBest = best;
+        lastScore = iteration.getScore();
+        if (iteration.isMate() || best == PackedMove.NONE) {
+            return true;
+        }
+        // The next iteration usually costs more than all the earlier ones together, so starting
+        // it with less than that left would only end in the hard limit cutting it off.
+        return elapsedMillis >= Math.min(hardMillis, softMillis * scale * 0.6);
+    }
+}
@@ -0,0 +1,94 @@
+package com.crimsonknights.chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * 64-bit Zobrist keys for positions: piece placement, side to move, castling rights and the en
+ * passant file. Keys come from a fixed seed, so hashes are stable between runs and processes.
+ */
+public final class Zobrist {
+    private static final long[][] PIECES = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x436B6E69676874L);
+        for (long[] squares : PIECES) {
+            for (int square = 0; square < 64; square++) {
+                squares[square] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            EN_PASSANT[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Hashes the current position of {@code game}.
+     */
+    public static long hash(CrimsonChess game) {
+        return hash(game.rawBoard(), game.getTurn(), CastlingRights.toBits(game.rawCastling()),
+                Square.index(game.rawEnPassant()));
+    }
+
+    static long hash(Piece[][] board, PieceColor turn, int castlingBits, int epSquare) {
+        long hash = 0L;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board[square >>> 3][square & 7];
+            if (piece != null) {
+                hash ^= piece(piece.getType(), piece.getColor(), square);
+            }
+        }
+        hash ^= CASTLING[castlingBits];
+        if (epSquare != Square.NONE) {
+            hash ^= EN_PASSANT[epSquare & 7];
+        }
+        return turn == PieceColor.BLACK ? hash ^ BLACK_TO_MOVE : hash;
+    }
+
+    /**
+     * Updates {@code hash} for a packed move played by {@code mover}, given the castling bits (see
+     * {@link CastlingRights#toBits}) and en passant squares before and after it.
+     */
+    static long afterMove(long hash, int move, PieceColor mover, int castlingBefore, int castlingAfter,
+                          int epBefore, int epAfter) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        PieceType piece = PackedMove.piece(move);
+        PieceType promotion = PackedMove.promotion(move);
+        PieceType captured = PackedMove.captured(move);
+        hash ^= piece(piece, mover, from);
+        hash ^= piece(promotion == null ? piece : promotion, mover, to);
+        if (captured != null) {
+            int victimSquare = PackedMove.isEnPassant(move) ? (from & ~7) | (to & 7) : to;
+            hash ^= piece(captured, mover.opposite(), victimSquare);
+        }
+        MoveFlags.CastlingSide castle = PackedMove.castle(move);
+        if (castle != null) {
+            int rank = from & ~7;
+            boolean kingSide = castle == MoveFlags.CastlingSide.KING_SIDE;
+            hash ^= piece(PieceType.ROOK, mover, rank + (kingSide ? 7 : 0));
+            hash ^= piece(PieceType.ROOK, mover, rank + (kingSide ? 5 : 3));
+        }
+        hash ^= CASTLING[castlingBefore] ^ CASTLING[castlingAfter];
+        if (epBefore != Square.NONE) {
+            hash ^= EN_PASSANT[epBefore & 7];
+        }
+        if (epAfter != Square.NONE) {
+            hash ^= EN_PASSANT[epAfter & 7];
+        }
+        return hash ^ BLACK_TO_MOVE;
+    }
+
+    private static long piece(PieceType type, PieceColor color, int square) {
+        return PIECES[color.ordinal() * 6 + type.ordinal()][square];
+    }
+}
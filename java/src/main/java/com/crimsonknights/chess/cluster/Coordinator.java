@@ -0,0 +1,279 @@
+package com.crimsonknights.chess.cluster;
+
+import com.crimsonknights.chess.CrimsonChess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Spreads {@link Job}s over local worker JVMs so large analyses are not bound by one heap and its
+ * garbage collector. Each worker is a child process running {@link Worker}, spoken to over its
+ * standard input and output with the binary frames of {@link FrameChannel}.
+ *
+ * <p>Every worker has a feeder thread that hands it one shard at a time. When a worker dies, its
+ * shard goes back to the front of the queue, where an idle worker usually picks it up while the
+ * dead one is restarted; a shard is given up after {@link #MAX_ATTEMPTS} deaths. A worker that
+ * has not answered within the {@link #jobTimeout job timeout} is killed and counts as dead, so a
+ * hung worker cannot hold its feeder forever. Nothing but the process command line is local, so
+ * the same framing can later run over sockets.
+ *
+ * <pre>
+ * Coordinator workers perft depth [fen]
+ * Coordinator workers analyse depth &lt; fens, one per line
+ * </pre>
+ */
+public final class Coordinator implements Closeable {
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final List<String> command;
+    private final WorkerProcess[] workers;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "coordinator-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long jobTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * @param workers number of worker processes
+     * @param jvmOptions extra options for the worker JVMs, such as {@code -Xmx512m}
+     */
+    public Coordinator(int workers, String... jvmOptions) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker: " + workers);
+        }
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(jvmOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Worker.class.getName());
+        this.workers = new WorkerProcess[workers];
+    }
+
+    /**
+     * Sets how long a worker may take over one job before it is killed and the job requeued.
+     */
+    public Coordinator jobTimeout(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Job timeout must be positive: " + millis);
+        }
+        this.jobTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * Runs every job and returns the results in the same order.
+     */
+    public List<JobResult> run(List<Job> jobs) throws InterruptedException {
+        BlockingDeque<Integer> pending = new LinkedBlockingDeque<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            pending.add(i);
+        }
+        JobResult[] results = new JobResult[jobs.size()];
+        int[] attempts = new int[jobs.size()];
+        CountDownLatch done = new CountDownLatch(jobs.size());
+        Thread[] feeders = new Thread[workers.length];
+        for (int slot = 0; slot < workers.length; slot++) {
+            int worker = slot;
+            feeders[slot] = new Thread(() -> feed(worker, jobs, pending, results, attempts, done),
+                    "coordinator-feeder-" + slot);
+            feeders[slot].start();
+        }
+        try {
+            done.await();
+        } finally {
+            for (Thread feeder : feeders) {
+                feeder.interrupt();
+                feeder.join();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Counts perft by sending each root move to the workers as its own shard.
+     *
+     * @throws IllegalStateException if a shard could not be computed
+     */
+    public long perft(CrimsonChess game, int depth) throws InterruptedException {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = new int[CrimsonChess.MAX_MOVES];
+        int count = game.legalMoves(moves);
+        String fen = game.toFen();
+        List<Job> jobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CrimsonChess child = new CrimsonChess();
+            child.loadFen(fen);
+            child.play(moves[i]);
+            jobs.add(Job.perft(child.toFen(), depth - 1));
+        }
+        long total = 0;
+        for (JobResult result : run(jobs)) {
+            if (result.isFailed()) {
+                throw new IllegalStateException("Perft shard failed: " + result.getError());
+            }
+            total += result.getNodes();
+        }
+        return total;
+    }
+
+    private void feed(int slot, List<Job> jobs, BlockingDeque<Integer> pending, JobResult[] results,
+                      int[] attempts, CountDownLatch done) {
+        while (done.getCount() > 0) {
+            Integer index;
+            try {
+                index = pending.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (index == null) {
+                continue;
+            }
+            Job job = jobs.get(index);
+            attempts[index]++;
+            try {
+                FrameChannel.Frame frame = exchange(slot, index, job);
+                results[index] = frame.type == FrameChannel.RESULT
+                        ? new JobResult(job, frame.nodes, frame.bestMove, frame.score, frame.depth, null, attempts[index])
+                        : new JobResult(job, 0, null, 0, 0, frame.message, attempts[index]);
+                done.countDown();
+            } catch (IOException e) {
+                discard(slot);
+                if (attempts[index] < MAX_ATTEMPTS) {
+                    pending.addFirst(index);
+                } else {
+                    results[index] = new JobResult(job, 0, null, 0, 0,
+                            "Worker died " + attempts[index] + " times: " + e, attempts[index]);
+                    done.countDown();
+                }
+            }
+        }
+    }
+
+    private FrameChannel.Frame exchange(int slot, int index, Job job) throws IOException {
+        WorkerProcess worker = workers[slot];
+        if (worker == null || !worker.process.isAlive()) {
+            discard(slot);
+            worker = new WorkerProcess(command);
+            workers[slot] = worker;
+        }
+        // Pipes have no read timeout, so a watchdog kills the worker instead, ending the read.
+        Process process = worker.process;
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            expired.set(true);
+            process.destroyForcibly();
+        }, jobTimeoutMillis, TimeUnit.MILLISECONDS);
+        FrameChannel.Frame frame;
+        try {
+            worker.channel.sendJob(index, job);
+            frame = worker.channel.receive();
+        } catch (IOException e) {
+            if (expired.get()) {
+                throw new InterruptedIOException("Job " + index + " timed out after " + jobTimeoutMillis + " ms");
+            }
+            throw e;
+        } finally {
+            timeout.cancel(false);
+        }
+        if ((frame.type != FrameChannel.RESULT && frame.type != FrameChannel.FAILED) || frame.id != index) {
+            throw new StreamCorruptedException("Unexpected frame " + frame.type + " for job " + frame.id);
+        }
+        return frame;
+    }
+
+    private void discard(int slot) {
+        WorkerProcess worker = workers[slot];
+        workers[slot] = null;
+        if (worker != null) {
+            worker.process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Asks every worker to exit and waits briefly before killing the stragglers.
+     */
+    @Override
+    public void close() {
+        for (int slot = 0; slot < workers.length; slot++) {
+            WorkerProcess worker = workers[slot];
+            if (worker == null) {
+                continue;
+            }
+            try {
+                worker.channel.sendShutdown();
+                worker.process.waitFor(5, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                // Already gone.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            discard(slot);
+        }
+        watchdog.shutdownNow();
+    }
+
+    private static final class WorkerProcess {
+        final Process process;
+        final FrameChannel channel;
+
+        WorkerProcess(List<String> command) throws IOException {
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            channel = new FrameChannel(process.getInputStream(), process.getOutputStream());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: Coordinator workers perft depth [fen] | workers analyse depth < fens");
+            return;
+        }
+        int workers = Integer.parseInt(args[0]);
+        int depth = Integer.parseInt(args[2]);
+        try (Coordinator coordinator = new Coordinator(workers)) {
+            long start = System.nanoTime();
+            if ("perft".equals(args[1])) {
+                CrimsonChess game = new CrimsonChess();
+                if (args.length > 3) {
+                    game.loadFen(String.join(" ", Arrays.asList(args).subList(3, args.length)));
+                }
+                System.out.println("perft(" + depth + ") = " + coordinator.perft(game, depth));
+            } else {
+                List<Job> jobs = new ArrayList<>();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        jobs.add(Job.analyse(line.trim(), depth, 0, 0));
+                    }
+                }
+                for (JobResult result : coordinator.run(jobs)) {
+                    System.out.println(result.getJob().getFen() + " ; " + (result.isFailed()
+                            ? "error " + result.getError()
+                            : "bestmove " + result.getBestMove() + " score " + result.getScore()
+                            + " nodes " + result.getNodes()));
+                }
+            }
+            System.out.printf("%.2f s%n", (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.crimsonknights.chess.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+/**
+ * Binary framing between the coordinator and its workers. Every frame is a big-endian
+ * {@code int} payload length, a type byte and the payload:
+ *
+ * <pre>
+ * JOB      int id, byte kind, int depth, long moveTimeMillis, long nodes, UTF fen
+ * RESULT   int id, long nodes, int score, int depth, UTF bestMove ("" for none)
+ * FAILED   int id, UTF message
+ * SHUTDOWN (empty)
+ * </pre>
+ *
+ * A channel is used by one thread at a time.
+ */
+final class FrameChannel implements Closeable {
+    static final byte JOB = 1;
+    static final byte RESULT = 2;
+    static final byte FAILED = 3;
+    static final byte SHUTDOWN = 4;
+
+    private static final int MAX_FRAME = 1 << 16;
+    private static final Job.Kind[] KINDS = Job.Kind.values();
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+    private final DataOutputStream payload = new DataOutputStream(buffer);
+
+    FrameChannel(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    void sendJob(int id, Job job) throws IOException {
+        buffer.reset();
+        payload.writeInt(id);
+        payload.writeByte(job.getKind().ordinal());
+        payload.writeInt(job.getDepth());
+        payload.writeLong(job.getMoveTimeMillis());
+        payload.writeLong(job.getNodes());
+        payload.writeUTF(job.getFen());
+        flush(JOB);
+    }
+
+    void sendResult(int id, long nodes, String bestMove, int score, int depth) throws IOException {
+        buffer.reset();
+        payload.writeInt(id);
+        payload.writeLong(nodes);
+        payload.writeInt(score);
+        payload.writeInt(depth);
+        payload.writeUTF(bestMove == null ? "" : bestMove);
+        flush(RESULT);
+    }
+
+    void sendFailure(int id, String message) throws IOException {
+        buffer.reset();
+        payload.writeInt(id);
+        payload.writeUTF(message == null ? "" : message);
+        flush(FAILED);
+    }
+
+    void sendShutdown() throws IOException {
+        buffer.reset();
+        flush(SHUTDOWN);
+    }
+
+    private void flush(byte type) throws IOException {
+        out.writeInt(buffer.size());
+        out.writeByte(type);
+        buffer.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Blocks for the next frame.
+     *
+     * @throws java.io.EOFException if the other side closed the stream
+     * @throws StreamCorruptedException if the frame does not parse to exactly its stated length
+     */
+    Frame receive() throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new StreamCorruptedException("Bad frame length " + length);
+        }
+        Frame frame = new Frame(in.readByte());
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            switch (frame.type) {
+                case JOB:
+                    frame.id = data.readInt();
+                    int kind = data.readByte();
+                    if (kind < 0 || kind >= KINDS.length) {
+                        throw new StreamCorruptedException("Bad job kind " + kind);
+                    }
+                    int depth = data.readInt();
+                    long moveTime = data.readLong();
+                    long nodes = data.readLong();
+                    String fen = data.readUTF();
+                    frame.job = KINDS[kind] == Job.Kind.PERFT
+                            ? Job.perft(fen, depth)
+                            : Job.analyse(fen, depth, moveTime, nodes);
+                    break;
+                case RESULT:
+                    frame.id = data.readInt();
+                    frame.nodes = data.readLong();
+                    frame.score = data.readInt();
+                    frame.depth = data.readInt();
+                    String move = data.readUTF();
+                    frame.bestMove = move.isEmpty() ? null : move;
+                    break;
+                case FAILED:
+                    frame.id = data.readInt();
+                    frame.message = data.readUTF();
+                    break;
+                case SHUTDOWN:
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown frame type " + frame.type);
+            }
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Frame type " + frame.type + " is longer than its length " + length);
+        }
+        if (data.available() > 0) {
+            throw new StreamCorruptedException("Frame type " + frame.type + " is shorter than its length " + length);
+        }
+        return frame;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            in.close();
+        }
+    }
+
+    static final class Frame {
+        final byte type;
+        int id;
+        Job job;
+        long nodes;
+        int score;
+        int depth;
+        String bestMove;
+        String message;
+
+        Frame(byte type) {
+            this.type = type;
+        }
+    }
+}
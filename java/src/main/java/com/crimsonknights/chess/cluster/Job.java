@@ -0,0 +1,58 @@
+package com.crimsonknights.chess.cluster;
+
+import java.util.Objects;
+
+/**
+ * One shard of work for a {@link Coordinator}: either a perft count or a search of a position.
+ */
+public final class Job {
+    public enum Kind {
+        PERFT,
+        ANALYSE
+    }
+
+    private final Kind kind;
+    private final String fen;
+    private final int depth;
+    private final long moveTimeMillis;
+    private final long nodes;
+
+    private Job(Kind kind, String fen, int depth, long moveTimeMillis, long nodes) {
+        this.kind = kind;
+        this.fen = Objects.requireNonNull(fen, "fen");
+        this.depth = depth;
+        this.moveTimeMillis = moveTimeMillis;
+        this.nodes = nodes;
+    }
+
+    public static Job perft(String fen, int depth) {
+        return new Job(Kind.PERFT, fen, depth, 0, 0);
+    }
+
+    /**
+     * Searches {@code fen}; zero limits are unbounded, as in {@link com.crimsonknights.chess.SearchLimits}.
+     */
+    public static Job analyse(String fen, int depth, long moveTimeMillis, long nodes) {
+        return new Job(Kind.ANALYSE, fen, depth, moveTimeMillis, nodes);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.crimsonknights.chess.cluster;
+
+/**
+ * Outcome of a {@link Job}. For perft jobs {@link #getNodes()} is the leaf count; for searches it
+ * is the number of nodes searched, alongside the best move and score.
+ */
+public final class JobResult {
+    private final Job job;
+    private final long nodes;
+    private final String bestMove;
+    private final int score;
+    private final int depth;
+    private final String error;
+    private final int attempts;
+
+    JobResult(Job job, long nodes, String bestMove, int score, int depth, String error, int attempts) {
+        this.job = job;
+        this.nodes = nodes;
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.error = error;
+        this.attempts = attempts;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the best move in coordinate notation, or {@code null} for perft jobs and positions
+     * without legal moves.
+     */
+    public String getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns why the job failed, or {@code null} when it succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns how many workers were handed the job; more than one means a worker died on it.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,73 @@
+package com.crimsonknights.chess.cluster;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.Perft;
+import com.crimsonknights.chess.Search;
+import com.crimsonknights.chess.SearchLimits;
+import com.crimsonknights.chess.SearchResult;
+
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Worker process started by {@link Coordinator}. It reads job frames from standard input, runs
+ * them one at a time and writes result frames to standard output until it gets a shutdown frame
+ * or its input closes. Diagnostics go to standard error.
+ */
+public final class Worker {
+    private Worker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Keep stray prints from corrupting the frame stream.
+        FileOutputStream frames = new FileOutputStream(FileDescriptor.out);
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        int hashMegabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        Perft perft = new Perft(1, hashMegabytes);
+        try (FrameChannel channel = new FrameChannel(System.in, frames)) {
+            while (true) {
+                FrameChannel.Frame frame;
+                try {
+                    frame = channel.receive();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (frame.type == FrameChannel.SHUTDOWN) {
+                    break;
+                }
+                if (frame.type == FrameChannel.JOB) {
+                    run(channel, perft, frame.id, frame.job);
+                }
+            }
+        } finally {
+            perft.shutdown();
+        }
+    }
+
+    private static void run(FrameChannel channel, Perft perft, int id, Job job) throws IOException {
+        try {
+            execute(channel, perft, id, job);
+        } catch (RuntimeException e) {
+            channel.sendFailure(id, e.toString());
+        }
+    }
+
+    private static void execute(FrameChannel channel, Perft perft, int id, Job job) throws IOException {
+        CrimsonChess game = new CrimsonChess();
+        game.loadFen(job.getFen());
+        if (job.getKind() == Job.Kind.PERFT) {
+            channel.sendResult(id, perft.run(game, job.getDepth()).getNodes(), null, 0, job.getDepth());
+            return;
+        }
+        SearchLimits limits = new SearchLimits().depth(job.getDepth()).moveTime(job.getMoveTimeMillis())
+                .nodes(job.getNodes());
+        SearchResult result = new Search(game).search(limits, null);
+        int best = result.getBestMove();
+        channel.sendResult(id, result.getNodes(), best == PackedMove.NONE ? null : PackedMove.toCoordinate(best),
+                result.getScore(), result.getDepth());
+    }
+}
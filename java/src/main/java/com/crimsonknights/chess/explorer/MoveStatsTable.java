@@ -0,0 +1,212 @@
+package com.crimsonknights.chess.explorer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap open-addressing table of move statistics, one 24-byte record per (position, move):
+ *
+ * <pre>
+ * long hash, int move, int whiteWins, int draws, int blackWins
+ * </pre>
+ *
+ * <p>The layout is the same as an {@link OpeningExplorer} file, so after {@link #sort()} the
+ * records can be written out as they are. A move code of {@code 0} marks an empty slot. Tables are
+ * owned by one thread.
+ */
+final class MoveStatsTable {
+    static final int RECORD_BYTES = 24;
+
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private boolean sorted;
+
+    MoveStatsTable(int initialCapacity) {
+        capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+        slots = allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Counts one game that played {@code move} from the position with {@code hash}.
+     *
+     * @param result {@code 0} for a White win, {@code 1} for a draw, {@code 2} for a Black win
+     */
+    void add(long hash, int move, int result) {
+        if (sorted) {
+            throw new IllegalStateException("Table has been sorted");
+        }
+        if (4L * (size + 1) > 3L * capacity) {
+            grow();
+        }
+        int offset = slotOf(hash, move) * RECORD_BYTES;
+        int counter = 12 + 4 * result;
+        slots.putInt(offset + counter, slots.getInt(offset + counter) + 1);
+    }
+
+    /**
+     * Returns the offset of the slot for the key, claiming an empty one if it is new.
+     */
+    private int slotOf(long hash, int move) {
+        int mask = capacity - 1;
+        int slot = (int) (mix(hash, move) >>> 32) & mask;
+        while (true) {
+            int offset = slot * RECORD_BYTES;
+            int stored = slots.getInt(offset + 8);
+            if (stored == 0) {
+                slots.putLong(offset, hash);
+                slots.putInt(offset + 8, move);
+                size++;
+                return slot;
+            }
+            if (stored == move && slots.getLong(offset) == hash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Opening table is full at " + size + " entries; index fewer plies");
+        }
+        ByteBuffer old = slots;
+        int oldCapacity = capacity;
+        capacity *= 2;
+        slots = allocate(capacity);
+        size = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int from = slot * RECORD_BYTES;
+            int move = old.getInt(from + 8);
+            if (move != 0) {
+                int to = slotOf(old.getLong(from), move) * RECORD_BYTES;
+                slots.putLong(to + 12, old.getLong(from + 12));
+                slots.putInt(to + 20, old.getInt(from + 20));
+            }
+        }
+    }
+
+    /**
+     * Packs the records to the front of the table and sorts them by hash, then move. The table
+     * takes no more moves afterwards.
+     */
+    void sort() {
+        if (sorted) {
+            return;
+        }
+        int kept = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (slots.getInt(slot * RECORD_BYTES + 8) != 0) {
+                if (slot != kept) {
+                    swap(slot, kept);
+                }
+                kept++;
+            }
+        }
+        quicksort(0, size - 1);
+        sorted = true;
+    }
+
+    /**
+     * Returns the sorted records, {@link #size()} of them, as a little-endian view.
+     */
+    ByteBuffer records() {
+        sort();
+        return slots.duplicate().order(ByteOrder.LITTLE_ENDIAN).limit(size * RECORD_BYTES).position(0);
+    }
+
+    long hashAt(int record) {
+        return slots.getLong(record * RECORD_BYTES);
+    }
+
+    int moveAt(int record) {
+        return slots.getInt(record * RECORD_BYTES + 8);
+    }
+
+    int countAt(int record, int result) {
+        return slots.getInt(record * RECORD_BYTES + 12 + 4 * result);
+    }
+
+    private void quicksort(int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            // Median of three as the pivot, kept in locals while the records move.
+            if (compare(middle, low) < 0) {
+                swap(middle, low);
+            }
+            if (compare(high, low) < 0) {
+                swap(high, low);
+            }
+            if (compare(high, middle) < 0) {
+                swap(high, middle);
+            }
+            long pivotHash = hashAt(middle);
+            int pivotMove = moveAt(middle);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(i, pivotHash, pivotMove) < 0) {
+                    i++;
+                }
+                while (compare(j, pivotHash, pivotMove) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recurse into the smaller half and loop on the larger, bounding the stack depth.
+            if (j - low < high - i) {
+                quicksort(low, j);
+                low = i;
+            } else {
+                quicksort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int a, int b) {
+        return compare(a, hashAt(b), moveAt(b));
+    }
+
+    private int compare(int record, long hash, int move) {
+        int byHash = Long.compare(hashAt(record), hash);
+        return byHash != 0 ? byHash : Integer.compare(moveAt(record), move);
+    }
+
+    private void swap(int a, int b) {
+        int first = a * RECORD_BYTES;
+        int second = b * RECORD_BYTES;
+        for (int word = 0; word < RECORD_BYTES; word += 8) {
+            long value = slots.getLong(first + word);
+            slots.putLong(first + word, slots.getLong(second + word));
+            slots.putLong(second + word, value);
+        }
+    }
+
+    static int compareKeys(long hashA, int moveA, long hashB, int moveB) {
+        int byHash = Long.compare(hashA, hashB);
+        return byHash != 0 ? byHash : Integer.compare(moveA, moveB);
+    }
+
+    private static long mix(long hash, int move) {
+        long mixed = (hash ^ move * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        return mixed ^ (mixed >>> 29);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,265 @@
+package com.crimsonknights.chess.explorer;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.PieceType;
+import com.crimsonknights.chess.Square;
+import com.crimsonknights.chess.Zobrist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Read-only opening explorer over a file written by {@link OpeningIndexer}: how often each move
+ * was played from a position and how those games ended. The file is a 32-byte header followed by
+ * 24-byte little-endian records sorted by Zobrist hash, then move:
+ *
+ * <pre>
+ * long hash, int move, int whiteWins, int draws, int blackWins
+ * </pre>
+ *
+ * <p>Moves are stored as {@code from | to << 6 | promotion << 12}, with the promotion as 1 to 4
+ * for queen, rook, bishop and knight. The records are memory-mapped and looked up by binary
+ * search, straight from the mapping; {@link #lowerBound} and the {@code ...At} accessors read them
+ * without creating any objects. An explorer may be shared between threads.
+ *
+ * <pre>
+ * OpeningExplorer index [fen]
+ * </pre>
+ */
+public final class OpeningExplorer {
+    static final int MAGIC = 0x584F4B43;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final PieceType[] PROMOTIONS = {
+            null, PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT
+    };
+
+    // Each mapping holds a whole number of records and stays under the 2 GiB mapping limit.
+    private static final int CHUNK_SHIFT = 25;
+    private static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private final long games;
+
+    private OpeningExplorer(MappedByteBuffer[] chunks, long size, long games) {
+        this.chunks = chunks;
+        this.size = size;
+        this.games = games;
+    }
+
+    /**
+     * Maps an index file.
+     *
+     * @throws IOException if the file cannot be read or is not an opening index
+     */
+    public static OpeningExplorer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            long size = header.getLong(8);
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || channel.size() != HEADER_BYTES + size * MoveStatsTable.RECORD_BYTES) {
+                throw new IOException("Not a Crimson Knights opening index: " + file);
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT)];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                long first = chunk * CHUNK_RECORDS;
+                long records = Math.min(CHUNK_RECORDS, size - first);
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * MoveStatsTable.RECORD_BYTES, records * MoveStatsTable.RECORD_BYTES);
+                chunks[chunk].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new OpeningExplorer(chunks, size, header.getLong(16));
+        }
+    }
+
+    /**
+     * Returns the number of (position, move) records.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of games indexed.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the index of the first record whose hash is not below {@code hash}, or
+     * {@link #size()} when there is none. The moves of a position are the records from there on
+     * that carry its hash.
+     */
+    public long lowerBound(long hash) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (hashAt(middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public long hashAt(long record) {
+        return chunk(record).getLong(offset(record));
+    }
+
+    /**
+     * Returns the move of a record in the file's {@code from | to << 6 | promotion << 12} form.
+     */
+    public int moveAt(long record) {
+        return chunk(record).getInt(offset(record) + 8);
+    }
+
+    public int whiteWinsAt(long record) {
+        return chunk(record).getInt(offset(record) + 12);
+    }
+
+    public int drawsAt(long record) {
+        return chunk(record).getInt(offset(record) + 16);
+    }
+
+    public int blackWinsAt(long record) {
+        return chunk(record).getInt(offset(record) + 20);
+    }
+
+    /**
+     * Returns the indexed moves from the current position of {@code game}, most played first.
+     */
+    public List<Line> explore(CrimsonChess game) {
+        long hash = Zobrist.hash(game);
+        List<Line> lines = new ArrayList<>();
+        for (long record = lowerBound(hash); record < size && hashAt(record) == hash; record++) {
+            String coordinate = coordinate(moveAt(record));
+            lines.add(new Line(coordinate, game.findMove(coordinate),
+                    whiteWinsAt(record), drawsAt(record), blackWinsAt(record)));
+        }
+        lines.sort((a, b) -> Long.compare(b.getGames(), a.getGames()));
+        return lines;
+    }
+
+    /**
+     * Turns a stored move into coordinate notation, e.g. {@code e7e8q}.
+     */
+    public static String coordinate(int move) {
+        PieceType promotion = PROMOTIONS[Math.min(PROMOTIONS.length - 1, move >>> 12 & 7)];
+        String text = Square.name(move & 63) + Square.name(move >>> 6 & 63);
+        return promotion == null ? text : text + promotion.getFenChar();
+    }
+
+    /**
+     * Returns the stored form of a {@link PackedMove}.
+     */
+    static int encode(int move) {
+        PieceType promotion = PackedMove.promotion(move);
+        int code = 0;
+        while (promotion != null && PROMOTIONS[code] != promotion) {
+            code++;
+        }
+        return PackedMove.from(move) | PackedMove.to(move) << 6 | code << 12;
+    }
+
+    private MappedByteBuffer chunk(long record) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)];
+    }
+
+    private static int offset(long record) {
+        return (int) (record & (CHUNK_RECORDS - 1)) * MoveStatsTable.RECORD_BYTES;
+    }
+
+    /**
+     * One move from a position with the results of the games that played it.
+     */
+    public static final class Line {
+        private final String coordinate;
+        private final int move;
+        private final int whiteWins;
+        private final int draws;
+        private final int blackWins;
+
+        Line(String coordinate, int move, int whiteWins, int draws, int blackWins) {
+            this.coordinate = coordinate;
+            this.move = move;
+            this.whiteWins = whiteWins;
+            this.draws = draws;
+            this.blackWins = blackWins;
+        }
+
+        public String getCoordinate() {
+            return coordinate;
+        }
+
+        /**
+         * Returns the move as a {@link PackedMove}, or {@link PackedMove#NONE} in the rare case
+         * of a hash collision with an unrelated position.
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public long getGames() {
+            return (long) whiteWins + draws + blackWins;
+        }
+
+        public int getWhiteWins() {
+            return whiteWins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getBlackWins() {
+            return blackWins;
+        }
+
+        /**
+         * Returns White's score in these games, from {@code 0} to {@code 1}.
+         */
+        public double getWhiteScore() {
+            return (whiteWins + 0.5 * draws) / getGames();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningExplorer index [fen]");
+            return;
+        }
+        OpeningExplorer explorer = open(Paths.get(args[0]));
+        CrimsonChess game = new CrimsonChess();
+        if (args.length > 1) {
+            game.loadFen(String.join(" ", Arrays.asList(args).subList(1, args.length)));
+        }
+        long start = System.nanoTime();
+        List<Line> lines = explorer.explore(game);
+        long micros = (System.nanoTime() - start) / 1000;
+        System.out.printf(Locale.ROOT, "%d games indexed, %d records; lookup took %d us%n",
+                explorer.getGames(), explorer.size(), micros);
+        for (Line line : lines) {
+            System.out.printf(Locale.ROOT, "%-6s %8d games  +%d =%d -%d  White %.1f%%%n", line.getCoordinate(),
+                    line.getGames(), line.getWhiteWins(), line.getDraws(), line.getBlackWins(),
+                    100 * line.getWhiteScore());
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.crimsonknights.chess.explorer;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.MoveFormatter;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.Zobrist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds an {@link OpeningExplorer} index from a PGN archive. Games are split from the file on
+ * the reading thread and handed out in batches; each worker replays its games through
+ * {@link CrimsonChess} and counts every (position, move) of the first {@code plies} plies in its
+ * own off-heap {@link MoveStatsTable}, so workers never share a lock. At the end each table is
+ * sorted in place and the sorted tables are merged straight into the index file.
+ *
+ * <p>Movetext may be SAN or coordinate notation; comments, variations and NAGs are skipped. Games
+ * without a decisive or drawn result, or with a move that does not parse, are skipped from that
+ * point on and counted.
+ *
+ * <pre>
+ * OpeningIndexer games.pgn index.ckox [plies] [threads]
+ * </pre>
+ */
+public final class OpeningIndexer {
+    private static final int BATCH_SIZE = 256;
+    private static final List<String> END = new ArrayList<>();
+
+    private final int plies;
+    private final int threads;
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * @param plies how many plies of each game to index
+     * @param threads worker threads
+     */
+    public OpeningIndexer(int plies, int threads) {
+        if (plies < 1 || threads < 1) {
+            throw new IllegalArgumentException("Plies and threads must be positive");
+        }
+        this.plies = plies;
+        this.threads = threads;
+    }
+
+    public long getGames() {
+        return games.get();
+    }
+
+    /**
+     * Returns how many games were left out entirely or cut short by a bad move.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Indexes every game in {@code pgn} and writes the index to {@code output}.
+     */
+    public void build(Path pgn, Path output) throws IOException, InterruptedException {
+        BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(2 * threads);
+        MoveStatsTable[] tables = new MoveStatsTable[threads];
+        Thread[] workers = new Thread[threads];
+        Throwable[] failure = new Throwable[1];
+        for (int i = 0; i < threads; i++) {
+            MoveStatsTable table = new MoveStatsTable(1 << 16);
+            tables[i] = table;
+            workers[i] = new Thread(() -> {
+                try {
+                    work(queue, table);
+                } catch (RuntimeException | InterruptedException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    // Keep taking batches so the reader is never left blocked on a full queue.
+                    drainQueue(queue);
+                }
+            }, "opening-indexer-" + i);
+            workers[i].start();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            StringBuilder game = new StringBuilder();
+            boolean inMoves = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("[") && inMoves) {
+                    batch.add(game.toString());
+                    game.setLength(0);
+                    inMoves = false;
+                    if (batch.size() == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!line.isBlank() && !line.startsWith("[") && !line.startsWith("%")) {
+                    inMoves = true;
+                }
+                game.append(line).append('\n');
+            }
+            if (inMoves) {
+                batch.add(game.toString());
+            }
+            queue.put(batch);
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        if (failure[0] != null) {
+            throw new IllegalStateException("Indexing failed", failure[0]);
+        }
+        write(tables, output, games.get());
+    }
+
+    private void work(BlockingQueue<List<String>> queue, MoveStatsTable table) throws InterruptedException {
+        CrimsonChess game = new CrimsonChess();
+        MoveFormatter formatter = new MoveFormatter();
+        List<String> batch;
+        while ((batch = queue.take()) != END) {
+            for (String text : batch) {
+                index(text, game, formatter, table);
+            }
+        }
+        table.sort();
+    }
+
+    private static void drainQueue(BlockingQueue<List<String>> queue) {
+        try {
+            while (queue.take() != END) {
+                // Discard.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replays one game's text and counts its opening moves.
+     */
+    private void index(String text, CrimsonChess game, MoveFormatter formatter, MoveStatsTable table) {
+        int result = -1;
+        String fen = null;
+        StringBuilder moves = new StringBuilder();
+        for (String line : text.split("\n")) {
+            if (line.startsWith("[")) {
+                String value = tagValue(line);
+                if (line.startsWith("[Result ")) {
+                    result = result(value);
+                } else if (line.startsWith("[FEN ")) {
+                    fen = value;
+                }
+            } else if (!line.startsWith("%")) {
+                moves.append(line).append('\n');
+            }
+        }
+        List<String> tokens = tokens(moves);
+        if (result < 0 && !tokens.isEmpty()) {
+            result = result(tokens.get(tokens.size() - 1));
+        }
+        if (result < 0) {
+            skipped.incrementAndGet();
+            return;
+        }
+        try {
+            if (fen == null) {
+                game.reset();
+            } else {
+                game.loadFen(fen);
+            }
+        } catch (IllegalArgumentException e) {
+            skipped.incrementAndGet();
+            return;
+        }
+        games.incrementAndGet();
+        int ply = 0;
+        for (String token : tokens) {
+            if (ply == plies || result(token) >= 0) {
+                break;
+            }
+            int move = formatter.parseSan(game, token);
+            if (move == PackedMove.NONE) {
+                move = game.findMove(token);
+            }
+            if (move == PackedMove.NONE) {
+                skipped.incrementAndGet();
+                break;
+            }
+            table.add(Zobrist.hash(game), OpeningExplorer.encode(move), result);
+            game.play(move);
+            ply++;
+        }
+    }
+
+    /**
+     * Splits movetext into move tokens, dropping move numbers, comments, variations and NAGs.
+     */
+    static List<String> tokens(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                while (i < text.length() && text.charAt(i) != '}') {
+                    i++;
+                }
+                i++;
+            } else if (c == ';') {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "{;()".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                if (depth > 0 || text.charAt(start) == '$') {
+                    continue;
+                }
+                String token = text.subSequence(start, i).toString();
+                int dots = token.lastIndexOf('.');
+                if (dots >= 0 && !token.endsWith("e.p.")) {
+                    token = token.substring(dots + 1);
+                }
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    static String tagValue(String line) {
+        int open = line.indexOf('"');
+        int close = line.lastIndexOf('"');
+        return open >= 0 && close > open ? line.substring(open + 1, close) : "";
+    }
+
+    /**
+     * Maps a result to {@code 0} for a White win, {@code 1} for a draw and {@code 2} for a Black
+     * win, or {@code -1}.
+     */
+    static int result(String text) {
+        switch (text) {
+            case "1-0":
+                return 0;
+            case "1/2-1/2":
+                return 1;
+            case "0-1":
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Merges the sorted tables into one index file, adding up records that several tables share.
+     */
+    static void write(MoveStatsTable[] tables, Path output, long games) throws IOException {
+        int[] next = new int[tables.length];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096 * MoveStatsTable.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int[] counts = new int[3];
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(OpeningExplorer.HEADER_BYTES);
+            while (true) {
+                int smallest = -1;
+                for (int t = 0; t < tables.length; t++) {
+                    if (next[t] < tables[t].size() && (smallest < 0
+                            || MoveStatsTable.compareKeys(tables[t].hashAt(next[t]), tables[t].moveAt(next[t]),
+                            tables[smallest].hashAt(next[smallest]), tables[smallest].moveAt(next[smallest])) < 0)) {
+                        smallest = t;
+                    }
+                }
+                if (smallest < 0) {
+                    break;
+                }
+                long hash = tables[smallest].hashAt(next[smallest]);
+                int move = tables[smallest].moveAt(next[smallest]);
+                counts[0] = 0;
+                counts[1] = 0;
+                counts[2] = 0;
+                for (int t = 0; t < tables.length; t++) {
+                    int record = next[t];
+                    if (record < tables[t].size() && tables[t].hashAt(record) == hash && tables[t].moveAt(record) == move) {
+                        for (int result = 0; result < 3; result++) {
+                            counts[result] += tables[t].countAt(record, result);
+                        }
+                        next[t]++;
+                    }
+                }
+                buffer.putLong(hash).putInt(move).putInt(counts[0]).putInt(counts[1]).putInt(counts[2]);
+                records++;
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+            }
+            drain(channel, buffer);
+            buffer.putInt(OpeningExplorer.MAGIC).putInt(OpeningExplorer.VERSION).putLong(records).putLong(games)
+                    .putLong(0L).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningIndexer games.pgn index.ckox [plies] [threads]");
+            return;
+        }
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        OpeningIndexer indexer = new OpeningIndexer(plies, threads);
+        long start = System.nanoTime();
+        indexer.build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.printf(Locale.ROOT, "Indexed %d games (%d skipped) in %.1f s%n",
+                indexer.getGames(), indexer.getSkipped(), (System.nanoTime() - start) / 1e9);
+    }
+}
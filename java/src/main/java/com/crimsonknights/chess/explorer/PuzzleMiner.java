@@ -0,0 +1,488 @@
+package com.crimsonknights.chess.explorer;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.MoveFormatter;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+import com.crimsonknights.chess.Position;
+import com.crimsonknights.chess.Search;
+import com.crimsonknights.chess.SearchLimits;
+import com.crimsonknights.chess.SearchResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mines tactic puzzles from a PGN archive: positions where exactly one move wins material or
+ * mates. Every game is replayed through {@link CrimsonChess} and each position goes through three
+ * stages, each much dearer than the one before, so that few positions reach the last:
+ *
+ * <ol>
+ * <li>tactical: a capture or promotion is available, or the move played gave check;</li>
+ * <li>swing: the side to move went on to win two pawns' worth of material within the next four
+ *     plies of the game, or a one-ply search with quiescence already wins that much;</li>
+ * <li>verify: a two-line {@link Search#analyse} finds a mate where the second-best move does not
+ *     mate, or a win of {@value #WIN} centipawns where the second-best move gains at most
+ *     {@value #ALTERNATIVE}.</li>
+ * </ol>
+ *
+ * <p>Gains are measured against the better of the static {@link Search#evaluate evaluation} before
+ * and after the opponent's last move, in the same units as the search's scores, so taking back a
+ * piece the opponent just captured is not a puzzle. Each puzzle is one
+ * tab-separated line of FEN, solution moves and the engine's verdict; the positions along a
+ * solution are not offered again.
+ *
+ * <p>Batches of games are mined on a thread pool and written in input order, so the output is the
+ * same for any number of threads. Every {@value #CHECKPOINT_MILLIS} ms the output is synced and
+ * a checkpoint next to it records how many games are done and how long the output was; a later
+ * run with the same files truncates the output to that length and skips those games.
+ *
+ * <pre>
+ * PuzzleMiner games.pgn puzzles.tsv [depth] [threads]
+ * </pre>
+ */
+public final class PuzzleMiner {
+    static final int MAGIC = 0x5A504B43;
+    static final int VERSION = 1;
+    static final int CHECKPOINT_BYTES = 32;
+    static final long CHECKPOINT_MILLIS = 10_000;
+
+    private static final int BATCH_SIZE = 16;
+    private static final int MIN_PLY = 8;
+    private static final int SWING = 200;
+    private static final int SWING_PLIES = 4;
+    private static final int WIN = 250;
+    private static final int ALTERNATIVE = 100;
+    private static final int MAX_SOLUTION_PLIES = 3;
+
+    private final int depth;
+    private final int threads;
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder tactical = new LongAdder();
+    private final LongAdder swings = new LongAdder();
+    private long games;
+    private long puzzles;
+    private long resumedGames;
+
+    private final ThreadLocal<CrimsonChess> replays = ThreadLocal.withInitial(CrimsonChess::new);
+    private final ThreadLocal<CrimsonChess> boards = ThreadLocal.withInitial(CrimsonChess::new);
+    private final ThreadLocal<MoveFormatter> formatters = ThreadLocal.withInitial(MoveFormatter::new);
+    private final ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[CrimsonChess.MAX_MOVES]);
+
+    /**
+     * @param depth depth of the verifying search
+     * @param threads worker threads
+     */
+    public PuzzleMiner(int depth, int threads) {
+        if (depth < 1 || threads < 1) {
+            throw new IllegalArgumentException("Depth and threads must be positive");
+        }
+        this.depth = depth;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the games done, including those of earlier runs.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the games skipped because an earlier run had already mined them.
+     */
+    public long getResumedGames() {
+        return resumedGames;
+    }
+
+    public long getPuzzles() {
+        return puzzles;
+    }
+
+    /**
+     * Returns the positions looked at in this run, and how many passed the first and second
+     * stage.
+     */
+    public long[] getStageCounts() {
+        return new long[] {positions.sum(), tactical.sum(), swings.sum()};
+    }
+
+    /**
+     * Mines every game of {@code pgn} not yet done and appends the puzzles to {@code output},
+     * resuming from the checkpoint beside it if there is one.
+     *
+     * @throws IOException if a file cannot be read or written, or the checkpoint does not match
+     *     the output
+     */
+    public void run(Path pgn, Path output) throws IOException, InterruptedException {
+        Path checkpoint = output.resolveSibling(output.getFileName() + ".ckpt");
+        long[] state = readCheckpoint(checkpoint);
+        games = state[0];
+        puzzles = state[2];
+        resumedGames = state[0];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        BlockingQueue<Future<Chunk>> inFlight = new ArrayBlockingQueue<>(4 * threads);
+        Future<Chunk> end = CompletableFuture.completedFuture(null);
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() < state[1]) {
+                throw new IOException("Output is shorter than its checkpoint: " + output);
+            }
+            channel.truncate(state[1]);
+            channel.position(state[1]);
+            AtomicReference<IOException> writeFailure = new AtomicReference<>();
+            Thread writer = new Thread(() -> writeFailure.set(write(inFlight, end, channel, checkpoint)),
+                    "puzzle-writer");
+            writer.start();
+            try (BufferedReader reader = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)) {
+                long skip = state[0];
+                List<String> batch = new ArrayList<>(BATCH_SIZE);
+                StringBuilder game = new StringBuilder();
+                boolean inMoves = false;
+                String line;
+                while ((line = reader.readLine()) != null && writeFailure.get() == null) {
+                    if (line.startsWith("[") && inMoves) {
+                        if (skip > 0) {
+                            skip--;
+                        } else {
+                            batch.add(game.toString());
+                        }
+                        game.setLength(0);
+                        inMoves = false;
+                        if (batch.size() == BATCH_SIZE) {
+                            List<String> chunk = batch;
+                            inFlight.put(pool.submit(() -> mine(chunk)));
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    if (!line.isBlank() && !line.startsWith("[") && !line.startsWith("%")) {
+                        inMoves = true;
+                    }
+                    game.append(line).append('\n');
+                }
+                if (inMoves && skip == 0) {
+                    batch.add(game.toString());
+                }
+                if (!batch.isEmpty()) {
+                    List<String> chunk = batch;
+                    inFlight.put(pool.submit(() -> mine(chunk)));
+                }
+            } finally {
+                inFlight.put(end);
+                writer.join();
+                pool.shutdownNow();
+            }
+            if (writeFailure.get() != null) {
+                throw writeFailure.get();
+            }
+        }
+    }
+
+    /**
+     * Writes finished batches in order until {@code end} arrives, checkpointing as it goes, and
+     * returns the first failure, or {@code null}. After a failure it keeps taking batches so the
+     * reader never blocks.
+     */
+    private IOException write(BlockingQueue<Future<Chunk>> inFlight, Future<Chunk> end, FileChannel channel,
+                              Path checkpoint) {
+        IOException failure = null;
+        long lastCheckpoint = System.nanoTime();
+        try {
+            Future<Chunk> next;
+            while ((next = inFlight.take()) != end) {
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    Chunk chunk = next.get();
+                    ByteBuffer bytes = ByteBuffer.wrap(chunk.text.getBytes(StandardCharsets.UTF_8));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    games += chunk.games;
+                    puzzles += chunk.puzzles;
+                    if (System.nanoTime() - lastCheckpoint >= CHECKPOINT_MILLIS * 1_000_000L) {
+                        writeCheckpoint(channel, checkpoint);
+                        lastCheckpoint = System.nanoTime();
+                    }
+                } catch (ExecutionException e) {
+                    failure = new IOException("Mining failed", e.getCause());
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure == null) {
+                writeCheckpoint(channel, checkpoint);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+        return failure;
+    }
+
+    /**
+     * Syncs the output, then replaces the checkpoint in one atomic rename, so a crash leaves
+     * either the old checkpoint or the new one, each matching output that is on disk.
+     */
+    private void writeCheckpoint(FileChannel channel, Path checkpoint) throws IOException {
+        channel.force(false);
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKPOINT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(games).putLong(channel.position()).putLong(puzzles).flip();
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the games done, output length and puzzles found by earlier runs, all zero when
+     * there is no checkpoint.
+     */
+    static long[] readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return new long[3];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() != CHECKPOINT_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a Crimson Knights puzzle checkpoint: " + checkpoint);
+        }
+        return new long[] {buffer.getLong(8), buffer.getLong(16), buffer.getLong(24)};
+    }
+
+    private Chunk mine(List<String> batch) {
+        StringBuilder out = new StringBuilder();
+        int found = 0;
+        for (String text : batch) {
+            found += mine(text, out);
+        }
+        return new Chunk(batch.size(), found, out.toString());
+    }
+
+    /**
+     * Replays one game and appends its puzzles to {@code out}; returns how many it found.
+     */
+    private int mine(String text, StringBuilder out) {
+        String fen = null;
+        StringBuilder movetext = new StringBuilder();
+        for (String line : text.split("\n")) {
+            if (line.startsWith("[FEN ")) {
+                fen = OpeningIndexer.tagValue(line);
+            } else if (!line.startsWith("[") && !line.startsWith("%")) {
+                movetext.append(line).append('\n');
+            }
+        }
+        CrimsonChess game = replays.get();
+        try {
+            if (fen == null) {
+                game.reset();
+            } else {
+                game.loadFen(fen);
+            }
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+        MoveFormatter formatter = formatters.get();
+        List<Position> line = new ArrayList<>();
+        List<Boolean> checks = new ArrayList<>();
+        line.add(game.position());
+        for (String token : OpeningIndexer.tokens(movetext)) {
+            if (OpeningIndexer.result(token) >= 0 || token.equals("*")) {
+                break;
+            }
+            int move = formatter.parseSan(game, token);
+            if (move == PackedMove.NONE) {
+                move = game.findMove(token);
+            }
+            if (move == PackedMove.NONE) {
+                break;
+            }
+            game.play(move);
+            line.add(game.position());
+            checks.add(inCheck(game));
+        }
+        int[] balance = new int[line.size()];
+        for (int ply = 0; ply < balance.length; ply++) {
+            balance[ply] = balance(line.get(ply));
+        }
+        int[] moves = buffers.get();
+        int found = 0;
+        for (int ply = MIN_PLY; ply < line.size(); ply++) {
+            positions.increment();
+            Position position = line.get(ply);
+            int count = position.legalMoves(moves);
+            if (count < 2 || !isTactical(moves, count, ply < checks.size() && checks.get(ply))) {
+                continue;
+            }
+            tactical.increment();
+            int sign = position.getTurn() == PieceColor.WHITE ? 1 : -1;
+            int baseline = Math.max(sign * balance[ply], sign * balance[ply - 1]);
+            CrimsonChess board = boards.get();
+            board.loadFen(position.toFen());
+            if (!swung(balance, ply, sign, baseline) && !quickWin(board, baseline)) {
+                continue;
+            }
+            swings.increment();
+            int length = verify(board, baseline, position.toFen(), out);
+            if (length > 0) {
+                found++;
+                ply += length;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Stage one: a capture or promotion is on the board, or the move played gave check.
+     */
+    private static boolean isTactical(int[] moves, int count, boolean playedCheck) {
+        if (playedCheck) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.isCapture(moves[i]) || PackedMove.promotion(moves[i]) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stage two, from the game record: the side to move gained {@value #SWING} within
+     * {@value #SWING_PLIES} plies.
+     */
+    private static boolean swung(int[] balance, int ply, int sign, int baseline) {
+        for (int later = ply + 1; later <= ply + SWING_PLIES && later < balance.length; later++) {
+            if (sign * balance[later] - baseline >= SWING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stage two, from a one-ply search with quiescence: the side to move already wins
+     * {@value #SWING}.
+     */
+    private static boolean quickWin(CrimsonChess board, int baseline) {
+        SearchResult result = new Search(board).search(new SearchLimits().depth(1), null);
+        return result.getMateIn() > 0 || result.getScore() - baseline >= SWING;
+    }
+
+    /**
+     * Stage three: appends the puzzle if the best move mates or wins {@value #WIN} and the second
+     * best does not. Returns the length of the solution, or {@code 0}.
+     */
+    private int verify(CrimsonChess board, int baseline, String fen, StringBuilder out) {
+        List<SearchResult> lines = new Search(board).analyse(new SearchLimits().depth(depth), 2, null);
+        if (lines.size() < 2) {
+            return 0;
+        }
+        SearchResult best = lines.get(0);
+        SearchResult second = lines.get(1);
+        int[] pv = best.getPv();
+        int length;
+        String verdict;
+        if (best.isMate() && best.getMateIn() > 0) {
+            if (second.isMate() && second.getMateIn() > 0) {
+                return 0;
+            }
+            length = pv.length;
+            verdict = "mate " + best.getMateIn();
+        } else if (!best.isMate() && best.getScore() - baseline >= WIN && second.getScore() - baseline <= ALTERNATIVE) {
+            // Stop the line on a move of the solver.
+            length = Math.min(pv.length, MAX_SOLUTION_PLIES);
+            length -= 1 - (length & 1);
+            verdict = "+" + (best.getScore() - baseline);
+        } else {
+            return 0;
+        }
+        out.append(fen).append('\t');
+        for (int i = 0; i < length; i++) {
+            out.append(i == 0 ? "" : " ").append(PackedMove.toCoordinate(pv[i]));
+        }
+        out.append('\t').append(verdict).append('\n');
+        return length;
+    }
+
+    private static boolean inCheck(CrimsonChess game) {
+        long attacked = game.attacks(game.getTurn().opposite());
+        for (int square = 0; square < 64; square++) {
+            Piece piece = game.pieceAt(square);
+            if (piece != null && piece.getType() == PieceType.KING && piece.getColor() == game.getTurn()) {
+                return (attacked & 1L << square) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Static evaluation in centipawns, positive when White is ahead.
+     */
+    private static int balance(Position position) {
+        int score = Search.evaluate(position);
+        return position.getTurn() == PieceColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Puzzles of one batch of games, as output text.
+     */
+    private static final class Chunk {
+        final int games;
+        final int puzzles;
+        final String text;
+
+        Chunk(int games, int puzzles, String text) {
+            this.games = games;
+            this.puzzles = puzzles;
+            this.text = text;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: PuzzleMiner games.pgn puzzles.tsv [depth] [threads]");
+            return;
+        }
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        PuzzleMiner miner = new PuzzleMiner(depth, threads);
+        long start = System.nanoTime();
+        miner.run(Paths.get(args[0]), Paths.get(args[1]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] stages = miner.getStageCounts();
+        long mined = miner.getGames() - miner.getResumedGames();
+        System.out.printf(Locale.ROOT, "%d games (%d resumed), %d puzzles; %.1f s, %.0f games/s%n",
+                miner.getGames(), miner.getResumedGames(), miner.getPuzzles(), seconds, mined / seconds);
+        System.out.printf(Locale.ROOT, "this run: positions %d, tactical %d, swing %d%n",
+                stages[0], stages[1], stages[2]);
+    }
+}
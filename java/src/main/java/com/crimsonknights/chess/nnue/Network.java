@@ -0,0 +1,160 @@
+package com.crimsonknights.chess.nnue;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Quantized weights of an efficiently updatable neural network: a 768-input feature transformer
+ * (one input per color, piece type and square, seen from each side) with {@code hidden} int16
+ * outputs per perspective, then a dense int8 layer of {@code head} neurons and an int8 output
+ * neuron. Networks are immutable and shared by any number of {@link NnueEvaluator}s.
+ *
+ * <p>The forward pass clamps both accumulators to 0..127 and concatenates them, side to move
+ * first. Head neuron {@code o} computes {@code clamp((bias + sum(input * weight)) >> 6, 0, 127)}
+ * and the output is {@code (bias + sum(head * weight)) >> 4} centipawns.
+ *
+ * <p>Files are little-endian: magic {@code CKNN}, version, {@code hidden}, {@code head}, then the
+ * transformer weights ({@code 768 x hidden} int16, feature-major) and biases ({@code hidden}
+ * int16), the head weights ({@code head x 2 hidden} int8, neuron-major) and biases
+ * ({@code head} int32), the output weights ({@code head} int8) and bias (int32).
+ */
+public final class Network {
+    static final int FEATURES = 768;
+
+    private static final int MAGIC = 0x4E4E4B43;
+    private static final int VERSION = 1;
+    private static final int MAX_HIDDEN = 2048;
+    private static final int MAX_HEAD = 256;
+
+    final int hidden;
+    final int head;
+    final short[] featureWeights;
+    final short[] featureBiases;
+    // Widened from int8 on load so the dot products run on ints.
+    final int[] headWeights;
+    final int[] headBiases;
+    final int[] outputWeights;
+    final int outputBias;
+
+    private Network(int hidden, int head, short[] featureWeights, short[] featureBiases, int[] headWeights,
+                    int[] headBiases, int[] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.head = head;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.headWeights = headWeights;
+        this.headBiases = headBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads a network file.
+     *
+     * @throws IOException if the file cannot be read or is not a network of this version
+     */
+    public static Network load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a Crimson Knights network: " + file);
+            }
+            int hidden = buffer.getInt();
+            int head = buffer.getInt();
+            if (hidden < 1 || hidden > MAX_HIDDEN || head < 1 || head > MAX_HEAD) {
+                throw new IOException("Bad network dimensions " + hidden + "x" + head + ": " + file);
+            }
+            short[] featureWeights = new short[FEATURES * hidden];
+            buffer.asShortBuffer().get(featureWeights);
+            buffer.position(buffer.position() + featureWeights.length * 2);
+            short[] featureBiases = new short[hidden];
+            buffer.asShortBuffer().get(featureBiases);
+            buffer.position(buffer.position() + hidden * 2);
+            int[] headWeights = new int[head * 2 * hidden];
+            for (int i = 0; i < headWeights.length; i++) {
+                headWeights[i] = buffer.get();
+            }
+            int[] headBiases = new int[head];
+            for (int i = 0; i < head; i++) {
+                headBiases[i] = buffer.getInt();
+            }
+            int[] outputWeights = new int[head];
+            for (int i = 0; i < head; i++) {
+                outputWeights[i] = buffer.get();
+            }
+            int outputBias = buffer.getInt();
+            if (buffer.hasRemaining()) {
+                throw new IOException("Trailing data in network: " + file);
+            }
+            return new Network(hidden, head, featureWeights, featureBiases, headWeights, headBiases,
+                    outputWeights, outputBias);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated network: " + file, e);
+        }
+    }
+
+    /**
+     * Writes the network in the format {@link #load} reads.
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + featureWeights.length * 2 + hidden * 2
+                + headWeights.length + head * 4 + head + 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hidden).putInt(head);
+        for (short weight : featureWeights) {
+            buffer.putShort(weight);
+        }
+        for (short bias : featureBiases) {
+            buffer.putShort(bias);
+        }
+        for (int weight : headWeights) {
+            buffer.put((byte) weight);
+        }
+        for (int bias : headBiases) {
+            buffer.putInt(bias);
+        }
+        for (int weight : outputWeights) {
+            buffer.put((byte) weight);
+        }
+        buffer.putInt(outputBias);
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * Returns an untrained network with small random weights, for benchmarks and tests.
+     */
+    public static Network random(int hidden, int head, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        short[] featureWeights = new short[FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) random.nextInt(-16, 17);
+        }
+        short[] featureBiases = new short[hidden];
+        for (int i = 0; i < hidden; i++) {
+            featureBiases[i] = (short) random.nextInt(0, 64);
+        }
+        int[] headWeights = new int[head * 2 * hidden];
+        for (int i = 0; i < headWeights.length; i++) {
+            headWeights[i] = random.nextInt(-8, 9);
+        }
+        int[] headBiases = new int[head];
+        int[] outputWeights = new int[head];
+        for (int i = 0; i < head; i++) {
+            headBiases[i] = random.nextInt(-256, 257);
+            outputWeights[i] = random.nextInt(-127, 128);
+        }
+        return new Network(hidden, head, featureWeights, featureBiases, headWeights, headBiases, outputWeights, 0);
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    public int getHead() {
+        return head;
+    }
+}
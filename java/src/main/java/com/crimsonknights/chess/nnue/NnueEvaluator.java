@@ -0,0 +1,168 @@
+package com.crimsonknights.chess.nnue;
+
+import com.crimsonknights.chess.BoardView;
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Evaluates positions with a {@link Network}, keeping the feature transformer's two accumulators
+ * up to date incrementally. The evaluator remembers the board it last saw; each call compares the
+ * new board with it square by square and only adds and subtracts the weight rows of the pieces
+ * that changed. After a move or an undo that is two to four rows, so the evaluator follows
+ * {@link CrimsonChess#makeMove}, {@link CrimsonChess#undo()}, {@link CrimsonChess#play} and even
+ * {@link CrimsonChess#loadFen} without hooks. Evaluation allocates nothing.
+ *
+ * <p>An evaluator is not thread-safe; use one per game or search thread.
+ *
+ * <pre>
+ * NnueEvaluator [network file]
+ * </pre>
+ */
+public final class NnueEvaluator {
+    private static final int HALF = Network.FEATURES / 2;
+
+    private final Network network;
+    private final short[] white;
+    private final short[] black;
+    private final int[] inputs;
+    private final Piece[] seen = new Piece[64];
+
+    public NnueEvaluator(Network network) {
+        this.network = network;
+        this.white = network.featureBiases.clone();
+        this.black = network.featureBiases.clone();
+        this.inputs = new int[2 * network.hidden];
+    }
+
+    /**
+     * Returns the evaluation of the current position of {@code game} in centipawns, from the side
+     * to move's point of view.
+     */
+    public int evaluate(CrimsonChess game) {
+        return evaluate(game.boardView(), game.getTurn());
+    }
+
+    public int evaluate(BoardView board, PieceColor turn) {
+        update(board);
+        return forward(turn == PieceColor.WHITE ? white : black, turn == PieceColor.WHITE ? black : white);
+    }
+
+    /**
+     * Brings the accumulators in line with {@code board}.
+     */
+    public void update(BoardView board) {
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board.pieceAt(square);
+            Piece old = seen[square];
+            if (piece != old) {
+                if (old != null) {
+                    apply(old, square, -1);
+                }
+                if (piece != null) {
+                    apply(piece, square, 1);
+                }
+                seen[square] = piece;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the accumulators from scratch; {@link #update} gives the same result.
+     */
+    public void refresh(BoardView board) {
+        System.arraycopy(network.featureBiases, 0, white, 0, network.hidden);
+        System.arraycopy(network.featureBiases, 0, black, 0, network.hidden);
+        Arrays.fill(seen, null);
+        update(board);
+    }
+
+    private void apply(Piece piece, int square, int sign) {
+        int hidden = network.hidden;
+        short[] weights = network.featureWeights;
+        int type = piece.getType().ordinal() * 64;
+        boolean isWhite = piece.getColor() == PieceColor.WHITE;
+        // Each side sees its own pieces in the first half, with the board flipped for Black.
+        int whiteRow = ((isWhite ? 0 : HALF) + type + square) * hidden;
+        int blackRow = ((isWhite ? HALF : 0) + type + (square ^ 56)) * hidden;
+        if (sign > 0) {
+            for (int i = 0; i < hidden; i++) {
+                white[i] += weights[whiteRow + i];
+                black[i] += weights[blackRow + i];
+            }
+        } else {
+            for (int i = 0; i < hidden; i++) {
+                white[i] -= weights[whiteRow + i];
+                black[i] -= weights[blackRow + i];
+            }
+        }
+    }
+
+    private int forward(short[] us, short[] them) {
+        int hidden = network.hidden;
+        for (int i = 0; i < hidden; i++) {
+            inputs[i] = Math.min(Math.max(us[i], 0), 127);
+            inputs[hidden + i] = Math.min(Math.max(them[i], 0), 127);
+        }
+        int width = 2 * hidden;
+        int[] weights = network.headWeights;
+        int output = network.outputBias;
+        for (int neuron = 0; neuron < network.head; neuron++) {
+            int row = neuron * width;
+            int sum = network.headBiases[neuron];
+            for (int i = 0; i < width; i++) {
+                sum += inputs[i] * weights[row + i];
+            }
+            output += Math.min(Math.max(sum >> 6, 0), 127) * network.outputWeights[neuron];
+        }
+        return output >> 4;
+    }
+
+    /**
+     * Plays random games and reports the cost of an incremental evaluation next to a full refresh.
+     */
+    public static void main(String[] args) throws IOException {
+        Network network = args.length > 0 ? Network.load(Paths.get(args[0])) : Network.random(128, 8, 1);
+        NnueEvaluator incremental = new NnueEvaluator(network);
+        NnueEvaluator fresh = new NnueEvaluator(network);
+        SplittableRandom random = new SplittableRandom(1);
+        CrimsonChess game = new CrimsonChess();
+        int[] moves = new int[CrimsonChess.MAX_MOVES];
+        for (int pass = 0; pass < 3; pass++) {
+            long incrementalNanos = 0;
+            long refreshNanos = 0;
+            long checksum = 0;
+            int evaluations = 200_000;
+            for (int i = 0; i < evaluations; i++) {
+                int count = game.legalMoves(moves);
+                if (count == 0 || i % 200 == 0) {
+                    game.reset();
+                } else {
+                    game.play(moves[random.nextInt(count)]);
+                }
+                long start = System.nanoTime();
+                int score = incremental.evaluate(game);
+                long middle = System.nanoTime();
+                fresh.refresh(game.boardView());
+                int expected = fresh.evaluate(game);
+                long end = System.nanoTime();
+                if (score != expected) {
+                    throw new IllegalStateException("Incremental evaluation drifted at " + game.toFen());
+                }
+                incrementalNanos += middle - start;
+                refreshNanos += end - middle;
+                checksum += score;
+            }
+            System.out.printf(Locale.ROOT, "%dx%d network: incremental %.0f ns, refresh %.0f ns per evaluation (%d)%n",
+                    network.hidden, network.head, (double) incrementalNanos / evaluations,
+                    (double) refreshNanos / evaluations, checksum);
+        }
+    }
+}
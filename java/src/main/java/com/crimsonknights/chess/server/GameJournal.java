@@ -0,0 +1,592 @@
+package com.crimsonknights.chess.server;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.MoveRecord;
+import com.crimsonknights.chess.PieceType;
+import com.crimsonknights.chess.Square;
+import com.crimsonknights.chess.Zobrist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of game sessions, so games in progress survive a server restart. Every
+ * event is one 32-byte little-endian entry in a memory-mapped segment file:
+ *
+ * <pre>
+ * long gameId, int kind, int move, long hash, int check, int unused
+ * </pre>
+ *
+ * <p>{@code kind} is one of start, FEN (twelve ASCII bytes of the start position in the move and
+ * hash fields), move, undo and end. A move is stored as {@code from | to << 6 | promotion << 12}
+ * with the Zobrist hash of the position after it, which recovery checks while replaying. The
+ * check word tells a complete entry from a torn or never-written one.
+ *
+ * <p>Appending only copies an entry into the mapped segment; a flusher thread forces the dirty
+ * range to disk every {@code syncMillis}, so all moves made in that window share one fsync.
+ * {@link #sync()} waits for the next one when a caller needs its entries durable.
+ *
+ * <p>Opening a journal recovers every game that has not ended by scanning all segments in
+ * parallel and replaying the games on the same threads, then rewrites those games into a fresh
+ * segment and deletes the old ones, so recovery time follows the games in progress rather than
+ * the age of the journal. The fresh segment is written under a temporary name and renamed into
+ * place once forced, so a crash during compaction never leaves a partial copy to be replayed.
+ */
+public final class GameJournal implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+
+    private static final int MAGIC = 0x4E4A4B43;
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 32;
+    private static final String PREFIX = "journal-";
+    private static final String EXTENSION = ".ckj";
+
+    private static final int START = 1;
+    private static final int FEN = 2;
+    private static final int MOVE = 3;
+    private static final int UNDO = 4;
+    private static final int END = 5;
+
+    private static final PieceType[] PROMOTIONS = {
+            null, PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT
+    };
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long syncMillis;
+    private final AtomicLong nextGameId = new AtomicLong(1);
+    private final Map<Long, RecoveredGame> recovered;
+    private final int corruptGames;
+    private final Thread flusher;
+
+    // Guarded by this.
+    private long segmentNumber;
+    private MappedByteBuffer segment;
+    private int position;
+    private int flushedPosition;
+    private long appended;
+    private long durable;
+    private boolean closed;
+
+    public GameJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, 2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Opens or creates the journal in {@code directory} and recovers its games.
+     *
+     * @param segmentBytes size of each segment file
+     * @param syncMillis longest time an entry waits for its fsync
+     * @param threads threads used for recovery
+     * @throws IOException if a segment cannot be read or written
+     */
+    public GameJournal(Path directory, int segmentBytes, long syncMillis, int threads) throws IOException {
+        if (segmentBytes < 2 * ENTRY_BYTES || segmentBytes % ENTRY_BYTES != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + ENTRY_BYTES + ": " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncMillis = Math.max(1, syncMillis);
+        Files.createDirectories(directory);
+        List<Path> old = segments(directory);
+        Recovery recovery = recover(old, threads);
+        recovered = recovery.games;
+        corruptGames = recovery.corrupt;
+        nextGameId.set(recovery.maxGameId + 1);
+        segmentNumber = old.isEmpty() ? 0 : number(old.get(old.size() - 1));
+        synchronized (this) {
+            // The compacted segment only takes its live name once it is complete and on disk, so a
+            // crash part way through leaves the old segments to recover from again.
+            Path live = segmentFile(++segmentNumber);
+            Path temporary = live.resolveSibling(live.getFileName() + ".tmp");
+            Files.deleteIfExists(temporary);
+            openSegment(temporary, segmentNumber);
+            for (RecoveredGame game : recovered.values()) {
+                writeStart(game.id, game.startFen);
+                for (int i = 0; i < game.moves.length; i++) {
+                    write(game.id, MOVE, game.moves[i], game.hashes[i]);
+                }
+            }
+            segment.force();
+            flushedPosition = position;
+            durable = appended;
+            Files.move(temporary, live, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path file : old) {
+            Files.delete(file);
+        }
+        flusher = new Thread(this::flushLoop, "game-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns the games that were in progress when the journal was last closed or the process
+     * died, by id, each with its full move history.
+     */
+    public Map<Long, RecoveredGame> getRecoveredGames() {
+        return Collections.unmodifiableMap(recovered);
+    }
+
+    /**
+     * Returns how many games were dropped during recovery because a move failed to replay or did
+     * not reach the recorded position.
+     */
+    public int getCorruptGames() {
+        return corruptGames;
+    }
+
+    /**
+     * Returns an id no other game in this journal has used.
+     */
+    public long newGameId() {
+        return nextGameId.getAndIncrement();
+    }
+
+    /**
+     * Records that game {@code gameId} starts, or restarts, from {@code fen}; {@code null} means
+     * the standard starting position.
+     */
+    public synchronized void recordStart(long gameId, String fen) throws IOException {
+        writeStart(gameId, fen);
+    }
+
+    /**
+     * Records a move just made in {@code game}.
+     */
+    public void recordMove(long gameId, MoveRecord move, CrimsonChess game) throws IOException {
+        int from = Square.index(move.getFrom());
+        int to = Square.index(move.getTo());
+        int promotion = move.getPromotion() == null ? 0 : promotionCode(move.getPromotion());
+        long hash = Zobrist.hash(game);
+        synchronized (this) {
+            write(gameId, MOVE, from | to << 6 | promotion << 12, hash);
+        }
+    }
+
+    public synchronized void recordUndo(long gameId) throws IOException {
+        write(gameId, UNDO, 0, 0L);
+    }
+
+    /**
+     * Records that a game is over, so it is not recovered.
+     */
+    public synchronized void recordEnd(long gameId) throws IOException {
+        write(gameId, END, 0, 0L);
+    }
+
+    /**
+     * Blocks until every entry appended so far is on disk.
+     */
+    public void sync() throws InterruptedException {
+        synchronized (this) {
+            long target = appended;
+            while (durable < target && !closed) {
+                notifyAll();
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Flushes outstanding entries and stops the flusher. Games still open are recovered the next
+     * time the journal is opened.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segment.force();
+            durable = appended;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeStart(long gameId, String fen) throws IOException {
+        write(gameId, START, 0, 0L);
+        if (fen == null) {
+            return;
+        }
+        byte[] bytes = fen.getBytes(StandardCharsets.US_ASCII);
+        for (int offset = 0; offset < bytes.length; offset += 12) {
+            byte[] chunk = Arrays.copyOfRange(bytes, offset, offset + 12);
+            ByteBuffer words = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+            write(gameId, FEN, words.getInt(0), words.getLong(4));
+        }
+    }
+
+    private void write(long gameId, int kind, int move, long hash) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        if (position == segmentBytes) {
+            segment.force();
+            segmentNumber++;
+            openSegment(segmentFile(segmentNumber), segmentNumber);
+        }
+        MappedByteBuffer buffer = segment;
+        buffer.putLong(position, gameId);
+        buffer.putInt(position + 8, kind);
+        buffer.putInt(position + 12, move);
+        buffer.putLong(position + 16, hash);
+        buffer.putInt(position + 24, check(gameId, kind, move, hash));
+        position += ENTRY_BYTES;
+        appended++;
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format(Locale.ROOT, "%s%08d%s", PREFIX, number, EXTENSION));
+    }
+
+    private void openSegment(Path file, long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, number);
+        position = ENTRY_BYTES;
+        flushedPosition = 0;
+    }
+
+    /**
+     * Forces the dirty part of the current segment every {@code syncMillis}, outside the lock so
+     * appends carry on during the fsync.
+     */
+    private void flushLoop() {
+        while (true) {
+            MappedByteBuffer buffer;
+            int from;
+            int to;
+            long target;
+            synchronized (this) {
+                try {
+                    wait(syncMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                if (durable == appended) {
+                    continue;
+                }
+                buffer = segment;
+                from = flushedPosition;
+                to = position;
+                target = appended;
+                flushedPosition = to;
+            }
+            buffer.force(from, to - from);
+            synchronized (this) {
+                durable = Math.max(durable, target);
+                notifyAll();
+            }
+        }
+    }
+
+    private static int promotionCode(PieceType promotion) {
+        for (int code = 1; code < PROMOTIONS.length; code++) {
+            if (PROMOTIONS[code] == promotion) {
+                return code;
+            }
+        }
+        return 0;
+    }
+
+    private static int check(long gameId, int kind, int move, long hash) {
+        long mixed = (gameId * 0x9E3779B97F4A7C15L + kind) * 0xBF58476D1CE4E5B9L + move;
+        mixed = (mixed ^ hash) * 0x94D049BB133111EBL;
+        return (int) (mixed >>> 32) | 1;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static long number(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * Reads the segments in parallel, then replays the games with the same threads, each thread
+     * taking the games whose id falls in its share.
+     */
+    private static Recovery recover(List<Path> files, int threads) throws IOException {
+        Recovery recovery = new Recovery();
+        if (files.isEmpty()) {
+            return recovery;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Entries>> reads = new ArrayList<>();
+            for (Path file : files) {
+                reads.add(pool.submit(() -> Entries.read(file)));
+            }
+            List<Entries> segments = new ArrayList<>();
+            for (Future<Entries> read : reads) {
+                segments.add(read.get());
+            }
+            List<Future<Recovery>> shares = new ArrayList<>();
+            for (int share = 0; share < threads; share++) {
+                int index = share;
+                shares.add(pool.submit(() -> replay(segments, index, threads)));
+            }
+            for (Future<Recovery> share : shares) {
+                Recovery part = share.get();
+                recovery.games.putAll(part.games);
+                recovery.corrupt += part.corrupt;
+                recovery.maxGameId = Math.max(recovery.maxGameId, part.maxGameId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering the journal", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Journal recovery failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return recovery;
+    }
+
+    private static Recovery replay(List<Entries> segments, int share, int shares) {
+        Map<Long, GameLog> logs = new HashMap<>();
+        Recovery recovery = new Recovery();
+        for (Entries entries : segments) {
+            for (int i = 0; i < entries.count; i++) {
+                long id = entries.ids[i];
+                recovery.maxGameId = Math.max(recovery.maxGameId, id);
+                if (Math.floorMod(Long.hashCode(id), shares) != share) {
+                    continue;
+                }
+                GameLog log = logs.computeIfAbsent(id, GameLog::new);
+                log.apply(entries.kinds[i], entries.moves[i], entries.hashes[i]);
+            }
+        }
+        for (GameLog log : logs.values()) {
+            if (log.ended) {
+                continue;
+            }
+            RecoveredGame game = log.replay();
+            if (game == null) {
+                recovery.corrupt++;
+            } else {
+                recovery.games.put(game.id, game);
+            }
+        }
+        return recovery;
+    }
+
+    /**
+     * A game rebuilt from the journal.
+     */
+    public static final class RecoveredGame {
+        private final long id;
+        private final String startFen;
+        private final int[] moves;
+        private final long[] hashes;
+        private final CrimsonChess game;
+
+        RecoveredGame(long id, String startFen, int[] moves, long[] hashes, CrimsonChess game) {
+            this.id = id;
+            this.startFen = startFen;
+            this.moves = moves;
+            this.hashes = hashes;
+            this.game = game;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getPlies() {
+            return moves.length;
+        }
+
+        /**
+         * Returns the game in its last journaled position. The recovered game belongs to whoever
+         * takes it and is not copied.
+         */
+        public CrimsonChess getGame() {
+            return game;
+        }
+    }
+
+    private static final class Recovery {
+        final Map<Long, RecoveredGame> games = new HashMap<>();
+        int corrupt;
+        long maxGameId;
+    }
+
+    /**
+     * The complete entries of one segment, read into columns.
+     */
+    private static final class Entries {
+        final long[] ids;
+        final int[] kinds;
+        final int[] moves;
+        final long[] hashes;
+        final int count;
+
+        private Entries(long[] ids, int[] kinds, int[] moves, long[] hashes, int count) {
+            this.ids = ids;
+            this.kinds = kinds;
+            this.moves = moves;
+            this.hashes = hashes;
+            this.count = count;
+        }
+
+        static Entries read(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < ENTRY_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a Crimson Knights game journal: " + file);
+            }
+            int capacity = buffer.capacity() / ENTRY_BYTES - 1;
+            long[] ids = new long[capacity];
+            int[] kinds = new int[capacity];
+            int[] moves = new int[capacity];
+            long[] hashes = new long[capacity];
+            int count = 0;
+            for (int offset = ENTRY_BYTES; offset + ENTRY_BYTES <= buffer.capacity(); offset += ENTRY_BYTES) {
+                long id = buffer.getLong(offset);
+                int kind = buffer.getInt(offset + 8);
+                int move = buffer.getInt(offset + 12);
+                long hash = buffer.getLong(offset + 16);
+                if (kind == 0 || buffer.getInt(offset + 24) != check(id, kind, move, hash)) {
+                    // The tail was never written, or the process died mid-entry.
+                    break;
+                }
+                ids[count] = id;
+                kinds[count] = kind;
+                moves[count] = move;
+                hashes[count] = hash;
+                count++;
+            }
+            return new Entries(ids, kinds, moves, hashes, count);
+        }
+    }
+
+    /**
+     * The surviving moves of one game, with undos already applied.
+     */
+    private static final class GameLog {
+        final long id;
+        final ByteArrayOutputStream fen = new ByteArrayOutputStream();
+        int[] moves = new int[64];
+        long[] hashes = new long[64];
+        int count;
+        boolean ended;
+
+        GameLog(long id) {
+            this.id = id;
+        }
+
+        void apply(int kind, int move, long hash) {
+            switch (kind) {
+                case START:
+                    fen.reset();
+                    count = 0;
+                    ended = false;
+                    break;
+                case FEN:
+                    byte[] chunk = new byte[12];
+                    ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN).putInt(move).putLong(hash);
+                    fen.write(chunk, 0, 12);
+                    break;
+                case MOVE:
+                    if (count == moves.length) {
+                        moves = Arrays.copyOf(moves, count * 2);
+                        hashes = Arrays.copyOf(hashes, count * 2);
+                    }
+                    moves[count] = move;
+                    hashes[count] = hash;
+                    count++;
+                    break;
+                case UNDO:
+                    count = Math.max(0, count - 1);
+                    break;
+                case END:
+                    ended = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Replays the moves with {@link CrimsonChess#makeMove}, so the rebuilt game keeps its move
+         * history for undo, checking each against its recorded hash. Returns {@code null} when the
+         * log does not replay cleanly.
+         */
+        RecoveredGame replay() {
+            String startFen = fen.size() == 0 ? null : fen.toString(StandardCharsets.US_ASCII).trim();
+            CrimsonChess game = new CrimsonChess();
+            try {
+                if (startFen != null) {
+                    game.loadFen(startFen);
+                }
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                PieceType promotion = PROMOTIONS[Math.min(PROMOTIONS.length - 1, move >>> 12 & 7)];
+                MoveRecord record = game.makeMove(Square.name(move & 63), Square.name(move >>> 6 & 63),
+                        promotion == null ? null : promotion.getFenChar());
+                if (record == null) {
+                    return null;
+                }
+                if (Zobrist.hash(game) != hashes[i]) {
+                    return null;
+                }
+            }
+            return new RecoveredGame(id, startFen, Arrays.copyOf(moves, count), Arrays.copyOf(hashes, count), game);
+        }
+    }
+}
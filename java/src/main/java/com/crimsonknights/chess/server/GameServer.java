@@ -0,0 +1,201 @@
+package com.crimsonknights.chess.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many games at once over a line-based TCP protocol, one game per connection. Each request
+ * is a single line and gets a single response line starting with {@code ok} or {@code error}:
+ *
+ * <pre>
+ * new              start a fresh game
+ * move e2e4        play a move; the reply adds check, checkmate or draw &lt;reason&gt;
+ * undo             take back the last move and echo it
+ * moves [square]   list the legal moves, optionally only those from one square
+ * fen [fen]        print the position, or load one
+ * stats            plies played, move latency and an estimate of the memory the session retains
+ * sessions         number of open sessions on the server
+ * id               the game's journal id
+ * resume id        take over a game recovered from the journal after a restart
+ * quit             close the connection
+ * </pre>
+ *
+ * <p>With a {@link GameJournal}, every game is journaled as it is played. A game ends when its
+ * connection closes while the server is running; games cut off by a shutdown or crash are
+ * recovered the next time the journal is opened and wait for a client to {@code resume} them.
+ *
+ * <p>Every connection is served by its own thread, which owns the session for its whole life.
+ * On a JVM with virtual threads those threads are virtual, so tens of thousands of idle sessions
+ * cost little more than their games; otherwise they fall back to small-stack platform threads and
+ * the process thread limit becomes the ceiling.
+ */
+public final class GameServer implements Closeable {
+    private static final int BACKLOG = 4096;
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final ThreadFactory connectionThreads = connectionThreadFactory("chess-session-");
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sessionsOpened = new AtomicLong();
+    private final GameJournal journal;
+    private final Map<Long, GameJournal.RecoveredGame> unclaimed = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Binds the server; use port {@code 0} to pick a free one.
+     */
+    public GameServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Binds the server and journals its games to {@code journal}, offering the games it recovered
+     * to {@code resume}. The caller keeps ownership of the journal and closes it after the server.
+     */
+    public GameServer(int port, GameJournal journal) throws IOException {
+        serverSocket = new ServerSocket(port, BACKLOG);
+        this.journal = journal;
+        if (journal != null) {
+            unclaimed.putAll(journal.getRecoveredGames());
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions() {
+        return connections.size();
+    }
+
+    public long getSessionsOpened() {
+        return sessionsOpened.get();
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "chess-server-accept");
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                sessionsOpened.incrementAndGet();
+                connectionThreads.newThread(() -> serve(socket)).start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        GameSession session = null;
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            session = new GameSession(journal, unclaimed);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if ("quit".equalsIgnoreCase(line)) {
+                    writer.write("bye\n");
+                    break;
+                }
+                String response = "sessions".equalsIgnoreCase(line)
+                        ? "ok " + getActiveSessions()
+                        : session.execute(line);
+                writer.write(response);
+                writer.write('\n');
+                // Pipelined requests are answered in one write once the input runs dry.
+                if (!reader.ready()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; its session simply ends.
+        } finally {
+            connections.remove(socket);
+            endSession(session);
+        }
+    }
+
+    private void endSession(GameSession session) {
+        // Games cut off by shutting the server down stay open in the journal for recovery.
+        if (session == null || closed) {
+            return;
+        }
+        try {
+            session.end();
+        } catch (IOException e) {
+            System.err.println("Could not journal the end of a game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a factory for one-per-connection threads: virtual threads when the running JVM has
+     * them, small-stack daemon platform threads otherwise.
+     */
+    static ThreadFactory connectionThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicLong counter = new AtomicLong();
+            return task -> {
+                Thread thread = new Thread(null, task, namePrefix + counter.getAndIncrement(), PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7878;
+        GameJournal journal = args.length > 1 ? new GameJournal(Paths.get(args[1])) : null;
+        GameServer server = new GameServer(port, journal);
+        server.start();
+        if (journal != null) {
+            System.out.println("Recovered " + journal.getRecoveredGames().size() + " games, dropped "
+                    + journal.getCorruptGames());
+        }
+        System.out.println("Crimson Knights game server listening on port " + server.getPort());
+    }
+}
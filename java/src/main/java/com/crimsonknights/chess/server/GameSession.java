@@ -0,0 +1,206 @@
+package com.crimsonknights.chess.server;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.MoveRecord;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.Square;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One game hosted by {@link GameServer}. A session belongs to the thread serving its connection
+ * and is never touched by any other thread, so neither it nor its engine needs locking. With a
+ * {@link GameJournal}, every change to the game is journaled before the response is sent, and a
+ * change whose journal write fails is not kept, so the live game never runs ahead of the journal.
+ */
+final class GameSession {
+    // Retained sizes measured on a 64-bit JVM with compressed references, for the estimate in
+    // stats: the GameState kept for undo (an 8x8 board of references and a castling map), a
+    // MoveRecord with its notation and flags, a CrimsonChess with its board and move buffer, and
+    // this session's own move buffer and latency histogram.
+    private static final int STATE_BYTES = 560;
+    private static final int RECORD_BYTES = 120;
+    private static final int GAME_BYTES = 1600;
+    private static final int SESSION_BYTES = 64 + 16 + CrimsonChess.MAX_MOVES * 4 + 1200;
+
+    private final GameJournal journal;
+    private final Map<Long, GameJournal.RecoveredGame> unclaimed;
+    private CrimsonChess game = new CrimsonChess();
+    private long gameId;
+    private final int[] moves = new int[CrimsonChess.MAX_MOVES];
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+
+    /**
+     * @param journal where to record the game, or {@code null}
+     * @param unclaimed recovered games that {@code resume} may take over
+     */
+    GameSession(GameJournal journal, Map<Long, GameJournal.RecoveredGame> unclaimed) throws IOException {
+        this.journal = journal;
+        this.unclaimed = unclaimed;
+        if (journal != null) {
+            gameId = journal.newGameId();
+            journal.recordStart(gameId, null);
+        }
+    }
+
+    /**
+     * Runs one protocol command and returns the response line, without the trailing newline.
+     */
+    String execute(String line) {
+        String[] words = line.trim().split("\\s+", 2);
+        String command = words[0].toLowerCase(Locale.ROOT);
+        String argument = words.length > 1 ? words[1] : null;
+        try {
+            switch (command) {
+                case "new":
+                    if (journal != null) {
+                        journal.recordStart(gameId, null);
+                    }
+                    game.reset();
+                    return "ok";
+                case "move":
+                    return move(argument);
+                case "undo":
+                    return undo();
+                case "moves":
+                    return legalMoves(argument);
+                case "fen":
+                    return fen(argument);
+                case "stats":
+                    return stats();
+                case "id":
+                    return journal == null ? "error no journal" : "ok " + gameId;
+                case "resume":
+                    return resume(argument);
+                default:
+                    return "error unknown command " + command;
+            }
+        } catch (IOException e) {
+            return "error journal " + e.getMessage();
+        }
+    }
+
+    /**
+     * Journals the end of the game when its connection closes for good.
+     */
+    void end() throws IOException {
+        if (journal != null) {
+            journal.recordEnd(gameId);
+        }
+    }
+
+    private String move(String text) throws IOException {
+        if (text == null || text.length() < 4 || text.length() > 5) {
+            return "error expected a move like e2e4 or e7e8q";
+        }
+        long start = System.nanoTime();
+        Character promotion = text.length() == 5 ? text.charAt(4) : null;
+        MoveRecord record = game.makeMove(text.substring(0, 2), text.substring(2, 4), promotion);
+        if (record != null && journal != null) {
+            try {
+                journal.recordMove(gameId, record, game);
+            } catch (IOException e) {
+                // The journal entry needs the position after the move, so take the move back.
+                game.undo();
+                throw e;
+            }
+        }
+        moveLatency.record(System.nanoTime() - start);
+        if (record == null) {
+            return "error illegal move " + text;
+        }
+        if (record.isCheckmate()) {
+            return "ok checkmate";
+        }
+        if (record.isDraw()) {
+            return "ok draw " + record.getDrawReason();
+        }
+        return record.isCheck() ? "ok check" : "ok";
+    }
+
+    private String undo() throws IOException {
+        if (game.getHistory().isEmpty()) {
+            return "error nothing to undo";
+        }
+        if (journal != null) {
+            journal.recordUndo(gameId);
+        }
+        MoveRecord undone = game.undo();
+        return "ok " + undone.getFrom() + undone.getTo();
+    }
+
+    /**
+     * Takes over a game recovered from the journal, ending the one this session had.
+     */
+    private String resume(String id) throws IOException {
+        if (journal == null) {
+            return "error no journal";
+        }
+        GameJournal.RecoveredGame recovered;
+        try {
+            recovered = id == null ? null : unclaimed.remove(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            recovered = null;
+        }
+        if (recovered == null) {
+            return "error no recovered game " + id;
+        }
+        journal.recordEnd(gameId);
+        game = recovered.getGame();
+        gameId = recovered.getId();
+        return "ok " + game.toFen();
+    }
+
+    private String legalMoves(String square) {
+        int from = Square.NONE;
+        if (square != null) {
+            from = Square.index(square);
+            if (from == Square.NONE) {
+                return "error bad square " + square;
+            }
+        }
+        int count = game.legalMoves(moves);
+        StringBuilder response = new StringBuilder(2 + count * 6).append("ok");
+        for (int i = 0; i < count; i++) {
+            if (from == Square.NONE || PackedMove.from(moves[i]) == from) {
+                response.append(' ').append(PackedMove.toCoordinate(moves[i]));
+            }
+        }
+        return response.toString();
+    }
+
+    private String fen(String fen) throws IOException {
+        if (fen == null) {
+            return "ok " + game.toFen();
+        }
+        CrimsonChess loaded = new CrimsonChess();
+        try {
+            loaded.loadFen(fen);
+        } catch (IllegalArgumentException e) {
+            return "error " + e.getMessage();
+        }
+        if (journal != null) {
+            journal.recordStart(gameId, loaded.toFen());
+        }
+        game = loaded;
+        return "ok";
+    }
+
+    /**
+     * Reports the history length, move latency in microseconds and an estimate of the bytes the
+     * session retains. The estimate is built from the history length and typical object sizes,
+     * not measured, and leaves out the connection's own buffers.
+     */
+    private String stats() {
+        int plies = game.getHistory().size();
+        return String.format(Locale.ROOT, "ok plies=%d moves=%d p50us=%.1f p99us=%.1f maxus=%.1f estimatedBytes=%d",
+                plies, moveLatency.count(), moveLatency.percentile(50) / 1000.0,
+                moveLatency.percentile(99) / 1000.0, moveLatency.max() / 1000.0, retainedBytes(plies));
+    }
+
+    private static long retainedBytes(int plies) {
+        return SESSION_BYTES + GAME_BYTES + (long) plies * (RECORD_BYTES + STATE_BYTES);
+    }
+}
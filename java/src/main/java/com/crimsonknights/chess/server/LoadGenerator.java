@@ -0,0 +1,141 @@
+package com.crimsonknights.chess.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load-generator client for {@link GameServer}. It opens the requested number of sessions, waits
+ * until all of them are connected, then has each play random legal moves and reports the
+ * round-trip latency of the {@code move} requests.
+ *
+ * <pre>
+ * LoadGenerator [host] [port] [sessions] [moves per session]
+ * </pre>
+ */
+public final class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final int movesPerSession;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public LoadGenerator(String host, int port, int sessions, int movesPerSession) {
+        this.host = host;
+        this.port = port;
+        this.sessions = sessions;
+        this.movesPerSession = movesPerSession;
+    }
+
+    /**
+     * Runs the load and returns the merged move latencies of every session.
+     */
+    public LatencyHistogram run() throws InterruptedException {
+        ThreadFactory threads = GameServer.connectionThreadFactory("chess-load-");
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(sessions);
+        List<LatencyHistogram> results = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            LatencyHistogram latency = new LatencyHistogram();
+            long seed = i;
+            results.add(latency);
+            Thread worker = threads.newThread(() -> play(seed, latency, connected, go));
+            workers.add(worker);
+            worker.start();
+        }
+        connected.await();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram latency : results) {
+            total.add(latency);
+        }
+        return total;
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    private void play(long seed, LatencyHistogram latency, CountDownLatch connected, CountDownLatch go) {
+        boolean counted = false;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            connected.countDown();
+            counted = true;
+            go.await();
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int played = 0; played < movesPerSession; played++) {
+                String[] moves = request(reader, writer, "moves").split(" ");
+                if (moves.length < 2) {
+                    request(reader, writer, "new");
+                    continue;
+                }
+                String move = moves[1 + random.nextInt(moves.length - 1)];
+                long start = System.nanoTime();
+                String reply = request(reader, writer, "move " + move);
+                latency.record(System.nanoTime() - start);
+                if (!reply.startsWith("ok")) {
+                    failures.incrementAndGet();
+                } else if (reply.length() > 2 && !reply.equals("ok check")) {
+                    request(reader, writer, "new");
+                }
+            }
+            request(reader, writer, "quit");
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!counted) {
+                connected.countDown();
+            }
+        }
+    }
+
+    private static String request(BufferedReader reader, Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+        String reply = reader.readLine();
+        if (reply == null) {
+            throw new IOException("Server closed the connection");
+        }
+        return reply;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7878;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        LoadGenerator generator = new LoadGenerator(host, port, sessions, moves);
+        long start = System.nanoTime();
+        LatencyHistogram latency = generator.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%d sessions, %d moves in %.2f s (%.0f moves/s), %d failures%n",
+                sessions, latency.count(), seconds, latency.count() / seconds, generator.getFailures());
+        System.out.printf(Locale.ROOT, "move round trip: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                latency.mean() / 1000.0, latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0,
+                latency.max() / 1000.0);
+    }
+}
@@ -0,0 +1,335 @@
+package com.crimsonknights.chess.server;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Move;
+import com.crimsonknights.chess.MoveRecord;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceType;
+import com.crimsonknights.chess.Position;
+import com.crimsonknights.chess.Zobrist;
+import com.crimsonknights.chess.tournament.BotSettings;
+import com.crimsonknights.chess.tournament.CrimsonBot;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP endpoint that lets the browser edition hand rules checking and bot moves to the server,
+ * built on the JDK's own {@code com.sun.net.httpserver}. Each request runs on its own thread
+ * from {@link GameServer#connectionThreadFactory}, so on virtual threads as soon as the JVM has
+ * them.
+ *
+ * <pre>
+ * GET or POST /api/position?fen=...&amp;moves=e2e4+e7e5&amp;bot=randomness=0.45
+ * GET /api/stats
+ * </pre>
+ *
+ * <p>Parameters come from the query string or a form-encoded body. {@code fen} defaults to the
+ * starting position and {@code moves} is a space-separated list of coordinate moves played from
+ * it. With {@code bot}, whose value is a {@link BotSettings} string and may be empty, the reply
+ * also carries the move the {@link CrimsonBot} would play. The reply is JSON:
+ *
+ * <pre>
+ * {"fen":"...","turn":"w","status":"check","drawReason":null,"legalMoves":["e1f1"],"botMove":"e1f1"}
+ * </pre>
+ *
+ * <p>{@code status} is {@code normal}, {@code check}, {@code checkmate}, {@code stalemate} or
+ * {@code draw}. Replies are cached by Zobrist hash, move clocks and bot settings; the bot is
+ * seeded from the hash, so a cached reply is the one that would have been computed anyway.
+ */
+public final class MoveService {
+    private static final int CACHE_SEGMENTS = 16;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final HttpServer server;
+    private final Segment[] cache = new Segment[CACHE_SEGMENTS];
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Binds the service; use port {@code 0} to pick a free one.
+     *
+     * @param cacheCapacity replies kept in the cache
+     */
+    public MoveService(int port, int cacheCapacity) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        ThreadFactory threads = GameServer.connectionThreadFactory("move-service-");
+        server.setExecutor(task -> threads.newThread(task).start());
+        server.createContext("/api/position", this::position);
+        server.createContext("/api/stats", this::stats);
+        int perSegment = Math.max(1, cacheCapacity / CACHE_SEGMENTS);
+        for (int i = 0; i < CACHE_SEGMENTS; i++) {
+            cache[i] = new Segment(perSegment);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void position(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                send(exchange, 204, null);
+                return;
+            }
+            requests.increment();
+            String reply;
+            try {
+                Map<String, String> parameters = parameters(exchange);
+                reply = reply(parameters.get("fen"), parameters.getOrDefault("moves", ""), parameters.get("bot"));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+                return;
+            }
+            send(exchange, 200, reply);
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, String.format(Locale.ROOT, "{\"requests\":%d,\"cacheHits\":%d}",
+                    getRequests(), getCacheHits()));
+        }
+    }
+
+    /**
+     * Builds the JSON reply for a position, from the cache when it can.
+     *
+     * @throws IllegalArgumentException if the FEN, a move or the bot settings are invalid
+     */
+    String reply(String fen, String moves, String bot) {
+        CrimsonChess game = new CrimsonChess();
+        if (fen != null && !fen.isBlank()) {
+            game.loadFen(fen);
+        }
+        MoveRecord last = null;
+        String[] list = moves.trim().isEmpty() ? new String[0] : moves.trim().split("\\s+");
+        for (int i = 0; i < list.length; i++) {
+            int move = game.findMove(list[i]);
+            if (move == PackedMove.NONE) {
+                throw new IllegalArgumentException("Illegal move " + list[i]);
+            }
+            if (i < list.length - 1) {
+                game.play(move);
+            } else {
+                // Only the last move needs a full record, for its check and draw flags.
+                PieceType promotion = PackedMove.promotion(move);
+                last = game.makeMove(list[i].substring(0, 2), list[i].substring(2, 4),
+                        promotion == null ? null : promotion.getFenChar());
+            }
+        }
+        BotSettings settings = bot == null ? null : BotSettings.parse(bot);
+        // The settings that change the bot's move, exactly; two bots only share a reply if these match.
+        String player = settings == null ? null : settings.getRandomness() + "," + settings.getAggression()
+                + "," + settings.getSoftness();
+        long hash = Zobrist.hash(game);
+        Position position = game.position();
+        long clocks = (long) position.getHalfmoveClock() << 32 | position.getFullmoveNumber();
+        long key = hash ^ (clocks + 1) * 0x9E3779B97F4A7C15L
+                ^ (player == null ? 0 : (player.hashCode() + 1L) * 0xBF58476D1CE4E5B9L)
+                ^ (last != null && last.isDraw() ? 0x94D049BB133111EBL : 0);
+        Segment segment = cache[(int) (key >>> 60)];
+        synchronized (segment) {
+            CachedReply cached = segment.get(key);
+            if (cached != null && Objects.equals(cached.player, player)) {
+                hits.increment();
+                return cached.json;
+            }
+        }
+        String reply = describe(game, last, settings, hash);
+        synchronized (segment) {
+            segment.put(key, new CachedReply(player, reply));
+        }
+        return reply;
+    }
+
+    private static String describe(CrimsonChess game, MoveRecord last, BotSettings settings, long hash) {
+        int[] moves = new int[CrimsonChess.MAX_MOVES];
+        int count = game.legalMoves(moves);
+        boolean check = inCheck(game);
+        String status;
+        String drawReason = null;
+        if (count == 0) {
+            status = check ? "checkmate" : "stalemate";
+        } else if (last != null && last.isDraw()) {
+            status = "draw";
+            drawReason = last.getDrawReason();
+        } else if (game.isInsufficientMaterial()) {
+            // Checked on the position too, so a bare FEN gets the same status as moves reaching it.
+            status = "draw";
+            drawReason = "insufficient";
+        } else if (game.position().getHalfmoveClock() >= 100) {
+            status = "draw";
+            drawReason = "fifty-move";
+        } else {
+            status = check ? "check" : "normal";
+        }
+        StringBuilder json = new StringBuilder(64 + count * 8);
+        json.append("{\"fen\":").append(quote(game.toFen()))
+                .append(",\"turn\":\"").append(game.getTurn().getFenChar()).append('"')
+                .append(",\"status\":\"").append(status).append('"')
+                .append(",\"drawReason\":").append(drawReason == null ? "null" : quote(drawReason))
+                .append(",\"legalMoves\":[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "\"" : ",\"").append(PackedMove.toCoordinate(moves[i])).append('"');
+        }
+        json.append("],\"botMove\":");
+        Move botMove = settings == null || count == 0 || drawReason != null
+                ? null
+                : new CrimsonBot(game, settings, new SplittableRandom(hash)).chooseMove();
+        if (botMove == null) {
+            json.append("null");
+        } else {
+            json.append('"').append(botMove.getFrom()).append(botMove.getTo());
+            if (botMove.getPromotion() != null) {
+                json.append(botMove.getPromotion().getFenChar());
+            }
+            json.append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    private static boolean inCheck(CrimsonChess game) {
+        long attacked = game.attacks(game.getTurn().opposite());
+        for (int square = 0; square < 64; square++) {
+            Piece piece = game.pieceAt(square);
+            if (piece != null && piece.getType() == PieceType.KING && piece.getColor() == game.getTurn()) {
+                return (attacked & 1L << square) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the query string and, for a POST, a form-encoded body of at most
+     * {@link #MAX_BODY_BYTES}.
+     *
+     * @throws IllegalArgumentException if the body is too large or a value is badly encoded
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery(), parameters);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+                if (bytes.length > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body over " + MAX_BODY_BYTES + " bytes");
+                }
+                parse(new String(bytes, StandardCharsets.UTF_8), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parse(String query, Map<String, String> parameters) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * A cached reply with the bot settings it was computed for, since the key only hashes them.
+     */
+    private static final class CachedReply {
+        final String player;
+        final String json;
+
+        CachedReply(String player, String json) {
+            this.player = player;
+            this.json = json;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<Long, CachedReply> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedReply> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int cache = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        MoveService service = new MoveService(port, cache);
+        service.start();
+        System.out.println("Crimson Knights move service listening on http://localhost:" + service.getPort()
+                + "/api/position");
+    }
+}
@@ -0,0 +1,154 @@
+package com.crimsonknights.chess.server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load test for {@link MoveService}. Each client plays random games through the service the
+ * way the browser does, sending the whole move list with every request and asking for a bot move
+ * on every other one, and the round-trip latency of each request is recorded. Clients start their
+ * games from the same few openings, so the cache sees the mix of repeated and fresh positions a
+ * real audience produces.
+ *
+ * <p>Without a host, a service is started in this JVM on a free port.
+ *
+ * <pre>
+ * MoveServiceLoadTest [host:port] [clients] [requests per client]
+ * </pre>
+ */
+public final class MoveServiceLoadTest {
+    private static final String[] OPENINGS = {"", "e2e4", "d2d4", "e2e4 e7e5", "e2e4 c7c5", "d2d4 d7d5 c2c4"};
+
+    private final URI endpoint;
+    private final int clients;
+    private final int requestsPerClient;
+    private final HttpClient http;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public MoveServiceLoadTest(String hostAndPort, int clients, int requestsPerClient) {
+        this.endpoint = URI.create("http://" + hostAndPort + "/api/position");
+        this.clients = clients;
+        this.requestsPerClient = requestsPerClient;
+        this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    /**
+     * Runs the load and returns the merged request latencies of every client.
+     */
+    public LatencyHistogram run() throws InterruptedException {
+        ThreadFactory threads = GameServer.connectionThreadFactory("move-load-");
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(clients);
+        List<LatencyHistogram> results = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            LatencyHistogram latency = new LatencyHistogram();
+            long seed = i;
+            results.add(latency);
+            Thread worker = threads.newThread(() -> play(seed, latency, go));
+            workers.add(worker);
+            worker.start();
+        }
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram latency : results) {
+            total.add(latency);
+        }
+        return total;
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    private void play(long seed, LatencyHistogram latency, CountDownLatch go) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder moves = new StringBuilder(OPENINGS[random.nextInt(OPENINGS.length)]);
+        try {
+            go.await();
+            for (int sent = 0; sent < requestsPerClient; sent++) {
+                boolean bot = sent % 2 == 1;
+                String query = "moves=" + URLEncoder.encode(moves.toString(), StandardCharsets.UTF_8)
+                        + (bot ? "&bot=" : "");
+                HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint + "?" + query)).GET().build();
+                long start = System.nanoTime();
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                latency.record(System.nanoTime() - start);
+                String body = response.body();
+                if (response.statusCode() != 200) {
+                    failures.incrementAndGet();
+                    moves.setLength(0);
+                    continue;
+                }
+                String next = bot ? field(body, "\"botMove\":\"") : randomMove(body, random);
+                if (next == null || !body.contains("\"status\":\"normal\"") && !body.contains("\"status\":\"check\"")) {
+                    moves.setLength(0);
+                    moves.append(OPENINGS[random.nextInt(OPENINGS.length)]);
+                } else {
+                    moves.append(moves.length() == 0 ? "" : " ").append(next);
+                }
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String field(String body, String prefix) {
+        int start = body.indexOf(prefix);
+        return start < 0 ? null : body.substring(start + prefix.length(), body.indexOf('"', start + prefix.length()));
+    }
+
+    private static String randomMove(String body, SplittableRandom random) {
+        int start = body.indexOf("\"legalMoves\":[") + 14;
+        int end = body.indexOf(']', start);
+        if (end <= start) {
+            return null;
+        }
+        String[] moves = body.substring(start, end).split(",");
+        String move = moves[random.nextInt(moves.length)];
+        return move.substring(1, move.length() - 1);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        MoveService local = null;
+        String target;
+        if (args.length > 0 && !args[0].equals("-")) {
+            target = args[0];
+        } else {
+            local = new MoveService(0, 100_000);
+            local.start();
+            target = "localhost:" + local.getPort();
+        }
+        MoveServiceLoadTest test = new MoveServiceLoadTest(target, clients, requests);
+        long start = System.nanoTime();
+        LatencyHistogram latency = test.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%d clients, %d requests in %.2f s (%.0f requests/s), %d failures%n",
+                clients, latency.count(), seconds, latency.count() / seconds, test.getFailures());
+        System.out.printf(Locale.ROOT, "round trip: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                latency.mean() / 1000.0, latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0,
+                latency.max() / 1000.0);
+        if (local != null) {
+            System.out.printf(Locale.ROOT, "cache hits: %d of %d%n", local.getCacheHits(), local.getRequests());
+            local.stop();
+        }
+    }
+}
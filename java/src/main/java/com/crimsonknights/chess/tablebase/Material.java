@@ -0,0 +1,214 @@
+package com.crimsonknights.chess.tablebase;
+
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Describes the material of an endgame table such as {@code KQvK} or {@code KBNvK}.
+ *
+ * <p>Every material is stored in a canonical orientation where white is the stronger side. Pieces
+ * other than the kings are identified by a small piece code so that a position can be matched to
+ * its table without allocating.
+ */
+final class Material {
+    static final int MAX_PIECES = 4;
+    static final int KEY_COUNT = 11 * 11;
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private final String name;
+    private final int[] codes;
+
+    private Material(int[] codes) {
+        this.codes = codes;
+        this.name = buildName(codes);
+    }
+
+    /**
+     * Parses a material name like {@code KRvKB}, returning it in canonical orientation.
+     */
+    static Material of(String name) {
+        String upper = name.trim().toUpperCase(Locale.ROOT);
+        int separator = upper.indexOf('V');
+        if (separator < 1 || upper.charAt(0) != 'K' || separator + 1 >= upper.length()
+                || upper.charAt(separator + 1) != 'K') {
+            throw new IllegalArgumentException("Material must look like KQvK: " + name);
+        }
+        List<Integer> codes = new ArrayList<>();
+        addSide(codes, upper.substring(1, separator), PieceColor.WHITE, name);
+        addSide(codes, upper.substring(separator + 2), PieceColor.BLACK, name);
+        return of(codes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static void addSide(List<Integer> codes, String pieces, PieceColor color, String name) {
+        for (char c : pieces.toCharArray()) {
+            PieceType type = PieceType.fromFenChar(c);
+            if (type == PieceType.KING) {
+                throw new IllegalArgumentException("Only one king per side is allowed: " + name);
+            }
+            codes.add(pieceCode(type, color));
+        }
+    }
+
+    static Material of(int[] pieceCodes) {
+        int[] codes = pieceCodes.clone();
+        Arrays.sort(codes);
+        if (codes.length + 2 > MAX_PIECES) {
+            throw new IllegalArgumentException("Tables are limited to " + MAX_PIECES + " pieces");
+        }
+        int[] flipped = flip(codes);
+        if (isStronger(flipped, codes)) {
+            codes = flipped;
+        }
+        boolean whitePawn = false;
+        boolean blackPawn = false;
+        for (int code : codes) {
+            if (typeOf(code) == PieceType.PAWN) {
+                whitePawn |= colorOf(code) == PieceColor.WHITE;
+                blackPawn |= colorOf(code) == PieceColor.BLACK;
+            }
+        }
+        if (whitePawn && blackPawn) {
+            throw new IllegalArgumentException(
+                    "Pawns on both sides need en passant state, which the tables do not index");
+        }
+        return new Material(codes);
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Returns the non-king piece codes in slot order (ascending), canonical orientation.
+     */
+    int[] codes() {
+        return codes.clone();
+    }
+
+    int pieceCount() {
+        return codes.length + 2;
+    }
+
+    /**
+     * Number of entries: side to move times one square per piece.
+     */
+    int entryCount() {
+        return 2 << (6 * pieceCount());
+    }
+
+    int key() {
+        return key(codes);
+    }
+
+    int flippedKey() {
+        return key(flip(codes));
+    }
+
+    /**
+     * Returns the canonical materials reachable by one capture or promotion.
+     */
+    List<Material> dependencies() {
+        List<Material> result = new ArrayList<>();
+        for (int i = 0; i < codes.length; i++) {
+            int[] without = new int[codes.length - 1];
+            for (int j = 0, k = 0; j < codes.length; j++) {
+                if (j != i) {
+                    without[k++] = codes[j];
+                }
+            }
+            addUnique(result, of(without));
+            if (typeOf(codes[i]) == PieceType.PAWN) {
+                for (PieceType promotion : List.of(PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP,
+                        PieceType.KNIGHT)) {
+                    int[] promoted = codes.clone();
+                    promoted[i] = pieceCode(promotion, colorOf(codes[i]));
+                    addUnique(result, of(promoted));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addUnique(List<Material> list, Material material) {
+        for (Material existing : list) {
+            if (existing.name.equals(material.name)) {
+                return;
+            }
+        }
+        list.add(material);
+    }
+
+    /**
+     * Encodes a non-king piece as 1-5 for white and 6-10 for black, ordered queen to pawn.
+     */
+    static int pieceCode(PieceType type, PieceColor color) {
+        return (color == PieceColor.WHITE ? 0 : 5) + type.ordinal();
+    }
+
+    static PieceType typeOf(int code) {
+        return TYPES[code > 5 ? code - 5 : code];
+    }
+
+    static PieceColor colorOf(int code) {
+        return code > 5 ? PieceColor.BLACK : PieceColor.WHITE;
+    }
+
+    static int flipCode(int code) {
+        return code > 5 ? code - 5 : code + 5;
+    }
+
+    /**
+     * Builds the lookup key for up to two non-king piece codes (0 meaning absent).
+     */
+    static int key(int codeA, int codeB) {
+        return codeA <= codeB ? codeA * 11 + codeB : codeB * 11 + codeA;
+    }
+
+    private static int key(int[] codes) {
+        return key(codes.length > 0 ? codes[0] : 0, codes.length > 1 ? codes[1] : 0);
+    }
+
+    private static int[] flip(int[] codes) {
+        int[] flipped = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            flipped[i] = flipCode(codes[i]);
+        }
+        Arrays.sort(flipped);
+        return flipped;
+    }
+
+    private static boolean isStronger(int[] candidate, int[] current) {
+        int[] candidateWhite = side(candidate, PieceColor.WHITE);
+        int[] currentWhite = side(current, PieceColor.WHITE);
+        if (candidateWhite.length != currentWhite.length) {
+            return candidateWhite.length > currentWhite.length;
+        }
+        // Lower codes are more valuable pieces, so the first difference decides.
+        return Arrays.compare(candidateWhite, currentWhite) < 0;
+    }
+
+    private static int[] side(int[] codes, PieceColor color) {
+        return Arrays.stream(codes).filter(code -> colorOf(code) == color).toArray();
+    }
+
+    private static String buildName(int[] codes) {
+        StringBuilder white = new StringBuilder("K");
+        StringBuilder black = new StringBuilder("K");
+        for (int code : codes) {
+            char symbol = Character.toUpperCase(typeOf(code).getFenChar());
+            (colorOf(code) == PieceColor.WHITE ? white : black).append(symbol);
+        }
+        return white + "v" + black;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
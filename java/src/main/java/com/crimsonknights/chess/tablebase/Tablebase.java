@@ -0,0 +1,154 @@
+package com.crimsonknights.chess.tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A single memory-mapped endgame table.
+ *
+ * <p>Each entry holds a bit-packed code for one position: {@code 0} for a draw (or an unreachable
+ * position), an odd value {@code n} when the side to move mates in {@code n} plies and an even
+ * value {@code n} when the side to move is mated after {@code n - 2} plies. Entries are indexed by
+ * side to move followed by one six-bit square per piece in slot order (white king, black king,
+ * then the remaining pieces by ascending piece code), with a8 as square 0.
+ */
+public final class Tablebase {
+    static final String EXTENSION = ".cktb";
+
+    private static final int MAGIC = 0x434B5442;
+    private static final int VERSION = 1;
+    private static final int NAME_BYTES = 16;
+    private static final int HEADER_BYTES = 48;
+
+    private final Material material;
+    private final MappedByteBuffer data;
+    private final int bits;
+    private final long mask;
+    private final int maxCode;
+
+    private Tablebase(Material material, MappedByteBuffer data, int bits, int maxCode) {
+        this.material = material;
+        this.data = data;
+        this.bits = bits;
+        this.mask = (1L << bits) - 1;
+        this.maxCode = maxCode;
+    }
+
+    /**
+     * Maps a table file written by {@link TablebaseGenerator}.
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a Crimson Knights tablebase: " + file);
+            }
+            int bits = buffer.getInt(12);
+            int maxCode = buffer.getInt(24);
+            int nameLength = buffer.getInt(28);
+            byte[] name = new byte[nameLength];
+            buffer.get(32, name);
+            Material material = Material.of(new String(name, StandardCharsets.US_ASCII));
+            if (buffer.getLong(16) != material.entryCount() || buffer.getInt(8) != material.pieceCount()) {
+                throw new IOException("Tablebase header does not match its material: " + file);
+            }
+            return new Tablebase(material, buffer, bits, maxCode);
+        }
+    }
+
+    /**
+     * Bit-packs the given codes and writes them to {@code file}.
+     */
+    static void write(Path file, Material material, int[] codes) throws IOException {
+        int maxCode = 0;
+        for (int code : codes) {
+            maxCode = Math.max(maxCode, code);
+        }
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxCode));
+        byte[] name = material.name().getBytes(StandardCharsets.US_ASCII);
+        if (name.length > NAME_BYTES) {
+            throw new IllegalArgumentException("Material name too long: " + material);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(material.pieceCount()).putInt(bits)
+                    .putLong(codes.length).putInt(maxCode).putInt(name.length).put(name);
+            header.position(HEADER_BYTES).flip();
+            writeFully(channel, header);
+
+            ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long word = 0;
+            int used = 0;
+            for (int code : codes) {
+                long value = code;
+                word |= value << used;
+                used += bits;
+                if (used >= 64) {
+                    out.putLong(word);
+                    used -= 64;
+                    word = used == 0 ? 0 : value >>> (bits - used);
+                    if (!out.hasRemaining()) {
+                        out.flip();
+                        writeFully(channel, out);
+                        out.clear();
+                    }
+                }
+            }
+            // Always emit the partial word plus one padding word so reads never straddle the end.
+            out.putLong(word);
+            if (!out.hasRemaining()) {
+                out.flip();
+                writeFully(channel, out);
+                out.clear();
+            }
+            out.putLong(0);
+            out.flip();
+            writeFully(channel, out);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public String getMaterial() {
+        return material.name();
+    }
+
+    public int getBitsPerEntry() {
+        return bits;
+    }
+
+    /**
+     * Largest entry code in the table; see the class documentation for the encoding.
+     */
+    public int getMaxCode() {
+        return maxCode;
+    }
+
+    Material material() {
+        return material;
+    }
+
+    int code(int index) {
+        long bitPosition = (long) index * bits;
+        int word = (int) (bitPosition >>> 6);
+        int offset = (int) (bitPosition & 63);
+        long value = data.getLong(HEADER_BYTES + word * 8) >>> offset;
+        if (offset + bits > 64) {
+            value |= data.getLong(HEADER_BYTES + (word + 1) * 8) << (64 - offset);
+        }
+        return (int) (value & mask);
+    }
+}
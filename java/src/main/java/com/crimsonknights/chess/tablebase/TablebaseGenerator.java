@@ -0,0 +1,636 @@
+package com.crimsonknights.chess.tablebase;
+
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds distance-to-mate tables by retrograde analysis.
+ *
+ * <p>Positions are scored level by level: mates first, then every predecessor of a lost position
+ * is a win, and a position whose moves all lead to won positions is a loss. Captures and
+ * promotions leave the table, so their results are read from previously generated tables, which
+ * this class builds on demand. Each level is a parallel sweep over the whole table.
+ *
+ * <p>The move rules mirror {@link com.crimsonknights.chess.CrimsonChess} on a compact square
+ * index board, since cloning a full game state for each of the tens of millions of positions would
+ * dominate the run time. Castling and en passant never arise in the supported materials.
+ */
+public final class TablebaseGenerator {
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final int UNKNOWN = 0;
+    private static final int ILLEGAL = 0xFF;
+    private static final int CODE_MASK = 0xFF;
+    private static final int COUNTER_SHIFT = 8;
+    private static final int SEED_SHIFT = 16;
+    private static final int WHITE = 0;
+    private static final int CHUNK = 1 << 14;
+
+    private static final int KING = PieceType.KING.ordinal();
+    private static final int QUEEN = PieceType.QUEEN.ordinal();
+    private static final int ROOK = PieceType.ROOK.ordinal();
+    private static final int BISHOP = PieceType.BISHOP.ordinal();
+    private static final int KNIGHT = PieceType.KNIGHT.ordinal();
+    private static final int PAWN = PieceType.PAWN.ordinal();
+
+    private static final int[][] KING_STEPS = {
+            {1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+    private static final int[][] KNIGHT_STEPS = {
+            {1, 2}, {2, 1}, {-1, 2}, {-2, 1}, {1, -2}, {2, -1}, {-1, -2}, {-2, -1}
+    };
+    private static final int[][] ORTHOGONAL = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] DIAGONAL = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[] PROMOTIONS = {QUEEN, ROOK, BISHOP, KNIGHT};
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private final Path directory;
+    private final ForkJoinPool pool;
+    private final TablebaseProber prober = new TablebaseProber();
+    private PrintStream progress;
+
+    public TablebaseGenerator(Path directory, int parallelism) {
+        this.directory = directory;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Sets where a line about each generated table goes; {@code null}, the default, prints nothing.
+     */
+    public TablebaseGenerator progress(PrintStream progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: TablebaseGenerator <directory> <material>... (e.g. KQvK KBNvK)");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(directory,
+                Runtime.getRuntime().availableProcessors()).progress(System.out);
+        try {
+            for (int i = 1; i < args.length; i++) {
+                generator.generate(args[i]);
+            }
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * Generates the table for {@code materialName} and everything it depends on, reusing any
+     * table files already present in the output directory.
+     */
+    public Tablebase generate(String materialName) throws IOException {
+        return generate(Material.of(materialName));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Tablebase generate(Material material) throws IOException {
+        Tablebase existing = prober.table(material);
+        if (existing != null) {
+            return existing;
+        }
+        Path file = directory.resolve(material.name() + Tablebase.EXTENSION);
+        if (Files.exists(file)) {
+            Tablebase table = Tablebase.open(file);
+            prober.register(table);
+            return table;
+        }
+        for (Material dependency : material.dependencies()) {
+            generate(dependency);
+        }
+
+        long start = System.nanoTime();
+        Job job = new Job(material);
+        job.run();
+        Tablebase.write(file, material, job.entries);
+        Tablebase table = Tablebase.open(file);
+        prober.register(table);
+        if (progress != null) {
+            progress.printf(Locale.ROOT, "Generated %s: %d positions, %d levels in %d ms%n", material,
+                    job.entries.length, job.levels, (System.nanoTime() - start) / 1_000_000);
+        }
+        return table;
+    }
+
+    /**
+     * Working state for one table. Each entry packs the result code, the number of in-table moves
+     * not yet refuted and the best result reachable through captures or promotions.
+     */
+    private final class Job {
+        final Material material;
+        final int pieces;
+        final int[] types;
+        final int[] colors;
+        final int[] codes;
+        final int[] weights;
+        final int sideBit;
+        final int[] entries;
+        final AtomicInteger maxSeed = new AtomicInteger();
+        int levels;
+
+        Job(Material material) {
+            this.material = material;
+            int[] pieceCodes = material.codes();
+            pieces = material.pieceCount();
+            types = new int[pieces];
+            colors = new int[pieces];
+            codes = new int[pieces];
+            types[0] = KING;
+            colors[0] = WHITE;
+            types[1] = KING;
+            colors[1] = 1;
+            for (int i = 0; i < pieceCodes.length; i++) {
+                codes[i + 2] = pieceCodes[i];
+                types[i + 2] = Material.typeOf(pieceCodes[i]).ordinal();
+                colors[i + 2] = Material.colorOf(pieceCodes[i]) == PieceColor.WHITE ? WHITE : 1;
+            }
+            weights = new int[pieces];
+            for (int i = 0; i < pieces; i++) {
+                weights[i] = 1 << (6 * (pieces - 1 - i));
+            }
+            sideBit = 1 << (6 * pieces);
+            entries = new int[material.entryCount()];
+        }
+
+        void run() {
+            pool.invoke(new Sweep(this, 0, entries.length, -1, null));
+            for (int level = 1; ; level++) {
+                if (level + 2 >= ILLEGAL) {
+                    throw new IllegalStateException("Distance to mate exceeds the code range");
+                }
+                AtomicBoolean progress = new AtomicBoolean();
+                pool.invoke(new Sweep(this, 0, entries.length, level, progress));
+                levels = level;
+                if (!progress.get() && level > maxSeed.get()) {
+                    break;
+                }
+            }
+            for (int i = 0; i < entries.length; i++) {
+                int code = entries[i] & CODE_MASK;
+                entries[i] = code == ILLEGAL ? 0 : code;
+            }
+        }
+
+        int value(int index) {
+            return (int) ENTRIES.getVolatile(entries, index) & CODE_MASK;
+        }
+
+        int seed(int index) {
+            return (entries[index] >>> SEED_SHIFT) & 0xFF;
+        }
+
+        int counter(int index) {
+            return ((int) ENTRIES.getVolatile(entries, index) >>> COUNTER_SHIFT) & 0xFF;
+        }
+
+        /**
+         * Removes one unrefuted move from the entry and returns how many remain.
+         */
+        int decrement(int index) {
+            int previous = (int) ENTRIES.getAndAdd(entries, index, -(1 << COUNTER_SHIFT));
+            return ((previous >>> COUNTER_SHIFT) & 0xFF) - 1;
+        }
+
+        boolean resolve(int index, int code) {
+            while (true) {
+                int current = (int) ENTRIES.getVolatile(entries, index);
+                if ((current & CODE_MASK) != UNKNOWN) {
+                    return false;
+                }
+                if (ENTRIES.compareAndSet(entries, index, current, (current & ~CODE_MASK) | code)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private final class Sweep extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final int from;
+        private final int to;
+        private final int level;
+        private final AtomicBoolean progress;
+
+        Sweep(Job job, int from, int to, int level, AtomicBoolean progress) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+            this.level = level;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Sweep(job, from, mid, level, progress), new Sweep(job, mid, to, level, progress));
+                return;
+            }
+            Scratch scratch = new Scratch(job);
+            boolean changed = false;
+            for (int index = from; index < to; index++) {
+                if (level < 0) {
+                    scratch.initialise(index);
+                } else {
+                    changed |= scratch.advance(index, level);
+                }
+            }
+            if (changed) {
+                progress.set(true);
+            }
+        }
+    }
+
+    /**
+     * Per-task board used to decode positions and walk their moves.
+     */
+    private final class Scratch {
+        private final Job job;
+        private final int[] squares;
+        private final int[] board = new int[64];
+        private final int[] moves = new int[256];
+
+        Scratch(Job job) {
+            this.job = job;
+            this.squares = new int[job.pieces];
+        }
+
+        void initialise(int index) {
+            int side = decode(index);
+            if (isIllegal(side)) {
+                clearBoard();
+                job.entries[index] = ILLEGAL;
+                return;
+            }
+            int count = generate(side, moves);
+            int inTable = 0;
+            int legal = 0;
+            boolean subDraw = false;
+            int subWin = Integer.MAX_VALUE;
+            int subLoss = 0;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                int slot = move >>> 12;
+                int target = (move >>> 6) & 63;
+                int promotion = move & 7;
+                int origin = squares[slot];
+                int captured = board[target] - 1;
+                squares[slot] = target;
+                board[origin] = 0;
+                board[target] = slot + 1;
+                if (captured >= 0) {
+                    squares[captured] = -1;
+                }
+                if (!attacked(squares[side], side ^ 1)) {
+                    legal++;
+                    if (captured < 0 && promotion == 0) {
+                        inTable++;
+                    } else {
+                        int child = lookupChild(side ^ 1, slot, promotion);
+                        if (child == 0) {
+                            subDraw = true;
+                        } else if (child % 2 == 1) {
+                            subLoss = Math.max(subLoss, child + 1);
+                        } else {
+                            subWin = Math.min(subWin, child - 1);
+                        }
+                    }
+                }
+                squares[slot] = origin;
+                board[origin] = slot + 1;
+                board[target] = captured + 1;
+                if (captured >= 0) {
+                    squares[captured] = target;
+                }
+            }
+            boolean inCheck = attacked(squares[side], side ^ 1);
+            clearBoard();
+            if (legal == 0) {
+                // Stalemates stay unresolved, and a permanent extra move keeps them from losing.
+                job.entries[index] = 1 << COUNTER_SHIFT | (inCheck ? 2 : UNKNOWN);
+                return;
+            }
+            int seed = subWin != Integer.MAX_VALUE ? subWin : subLoss;
+            job.entries[index] = seed << SEED_SHIFT | (inTable + (subDraw ? 1 : 0)) << COUNTER_SHIFT;
+            if (seed > 0) {
+                job.maxSeed.accumulateAndGet(seed, Math::max);
+            }
+        }
+
+        boolean advance(int index, int level) {
+            int code = job.value(index);
+            boolean odd = level % 2 == 1;
+            boolean changed = false;
+            if (code == UNKNOWN) {
+                int seed = job.seed(index);
+                if (seed == level && (odd || job.counter(index) == 0)) {
+                    // Odd seeds are wins through a capture or promotion, even seeds are losses
+                    // whose in-table moves have all been refuted.
+                    changed = job.resolve(index, odd ? level : level + 2);
+                }
+                return changed;
+            }
+            if (code != (odd ? level + 1 : level - 1)) {
+                return false;
+            }
+            int side = decode(index);
+            int mover = side ^ 1;
+            for (int slot = 0; slot < job.pieces; slot++) {
+                if (job.colors[slot] != mover) {
+                    continue;
+                }
+                int count = retract(slot, moves);
+                for (int i = 0; i < count; i++) {
+                    int parent = (index ^ job.sideBit) + (moves[i] - squares[slot]) * job.weights[slot];
+                    int parentCode = job.value(parent);
+                    if (parentCode != UNKNOWN) {
+                        continue;
+                    }
+                    if (odd) {
+                        changed |= job.resolve(parent, level);
+                    } else {
+                        if (job.decrement(parent) == 0 && level >= job.seed(parent)) {
+                            changed |= job.resolve(parent, level + 2);
+                        }
+                    }
+                }
+            }
+            clearBoard();
+            return changed;
+        }
+
+        private int decode(int index) {
+            for (int slot = job.pieces - 1, shift = 0; slot >= 0; slot--, shift += 6) {
+                squares[slot] = (index >>> shift) & 63;
+            }
+            clearBoard();
+            for (int slot = 0; slot < job.pieces; slot++) {
+                board[squares[slot]] = slot + 1;
+            }
+            return index >>> (6 * job.pieces);
+        }
+
+        private void clearBoard() {
+            for (int square : squares) {
+                if (square >= 0) {
+                    board[square] = 0;
+                }
+            }
+        }
+
+        /**
+         * Rejects overlapping pieces, pawns on the back ranks and positions where the side that
+         * just moved is still in check.
+         */
+        private boolean isIllegal(int side) {
+            for (int slot = 0; slot < job.pieces; slot++) {
+                if (board[squares[slot]] != slot + 1) {
+                    return true;
+                }
+                int rank = squares[slot] >>> 3;
+                if (job.types[slot] == PAWN && (rank == 0 || rank == 7)) {
+                    return true;
+                }
+            }
+            return attacked(squares[side ^ 1], side);
+        }
+
+        private int lookupChild(int side, int movedSlot, int promotion) {
+            int codeA = 0;
+            int squareA = 0;
+            int codeB = 0;
+            int squareB = 0;
+            for (int slot = 2; slot < job.pieces; slot++) {
+                if (squares[slot] < 0) {
+                    continue;
+                }
+                int code = job.codes[slot];
+                if (slot == movedSlot && promotion != 0) {
+                    code = Material.pieceCode(TYPES[promotion],
+                            job.colors[slot] == WHITE ? PieceColor.WHITE : PieceColor.BLACK);
+                }
+                if (codeA == 0) {
+                    codeA = code;
+                    squareA = squares[slot];
+                } else {
+                    codeB = code;
+                    squareB = squares[slot];
+                }
+            }
+            int result = prober.lookup(squares[0], squares[1], codeA, squareA, codeB, squareB, side);
+            if (result < 0) {
+                throw new IllegalStateException("Missing dependency table while generating " + job.material);
+            }
+            return result;
+        }
+
+        /**
+         * Fills {@code out} with pseudo-legal moves encoded as slot, target square and promotion.
+         */
+        private int generate(int side, int[] out) {
+            int count = 0;
+            for (int slot = 0; slot < job.pieces; slot++) {
+                if (job.colors[slot] != side) {
+                    continue;
+                }
+                int square = squares[slot];
+                int type = job.types[slot];
+                if (type == PAWN) {
+                    count = pawnMoves(slot, square, side, out, count);
+                } else {
+                    int[][] steps = type == KNIGHT ? KNIGHT_STEPS : type == KING ? KING_STEPS : null;
+                    if (steps != null) {
+                        count = stepMoves(slot, square, steps, side, out, count, false);
+                    } else {
+                        if (type != BISHOP) {
+                            count = stepMoves(slot, square, ORTHOGONAL, side, out, count, true);
+                        }
+                        if (type != ROOK) {
+                            count = stepMoves(slot, square, DIAGONAL, side, out, count, true);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        private int stepMoves(int slot, int square, int[][] steps, int side, int[] out, int count,
+                              boolean slide) {
+            for (int[] step : steps) {
+                int file = (square & 7) + step[0];
+                int rank = (square >>> 3) + step[1];
+                while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                    int target = rank * 8 + file;
+                    int occupant = board[target] - 1;
+                    if (occupant < 0 || job.colors[occupant] != side) {
+                        out[count++] = slot << 12 | target << 6;
+                    }
+                    if (occupant >= 0 || !slide) {
+                        break;
+                    }
+                    file += step[0];
+                    rank += step[1];
+                }
+            }
+            return count;
+        }
+
+        private int pawnMoves(int slot, int square, int side, int[] out, int count) {
+            int dir = side == WHITE ? -1 : 1;
+            int rank = square >>> 3;
+            int file = square & 7;
+            int forward = rank + dir;
+            int promotionRank = side == WHITE ? 0 : 7;
+            int startRank = side == WHITE ? 6 : 1;
+            if (board[forward * 8 + file] == 0) {
+                count = pawnTarget(slot, forward * 8 + file, forward == promotionRank, out, count);
+                int twoForward = rank + dir * 2;
+                if (rank == startRank && board[twoForward * 8 + file] == 0) {
+                    out[count++] = slot << 12 | (twoForward * 8 + file) << 6;
+                }
+            }
+            for (int df = -1; df <= 1; df += 2) {
+                int captureFile = file + df;
+                if (captureFile < 0 || captureFile > 7) {
+                    continue;
+                }
+                int occupant = board[forward * 8 + captureFile] - 1;
+                if (occupant >= 0 && job.colors[occupant] != side) {
+                    count = pawnTarget(slot, forward * 8 + captureFile, forward == promotionRank, out, count);
+                }
+            }
+            return count;
+        }
+
+        private int pawnTarget(int slot, int target, boolean promotion, int[] out, int count) {
+            if (!promotion) {
+                out[count++] = slot << 12 | target << 6;
+                return count;
+            }
+            for (int type : PROMOTIONS) {
+                out[count++] = slot << 12 | target << 6 | type;
+            }
+            return count;
+        }
+
+        /**
+         * Fills {@code out} with the squares the piece in {@code slot} could have come from
+         * without a capture or promotion.
+         */
+        private int retract(int slot, int[] out) {
+            int square = squares[slot];
+            int type = job.types[slot];
+            int count = 0;
+            if (type == PAWN) {
+                int dir = job.colors[slot] == WHITE ? 1 : -1;
+                int rank = square >>> 3;
+                int back = rank + dir;
+                int startRank = job.colors[slot] == WHITE ? 6 : 1;
+                if (back >= 1 && back <= 6 && board[back * 8 + (square & 7)] == 0) {
+                    out[count++] = back * 8 + (square & 7);
+                    int twoBack = back + dir;
+                    if (twoBack == startRank && board[twoBack * 8 + (square & 7)] == 0) {
+                        out[count++] = twoBack * 8 + (square & 7);
+                    }
+                }
+                return count;
+            }
+            int[][] steps = type == KNIGHT ? KNIGHT_STEPS : type == KING ? KING_STEPS : null;
+            if (steps != null) {
+                return retractSteps(square, steps, false, out, count);
+            }
+            if (type != BISHOP) {
+                count = retractSteps(square, ORTHOGONAL, true, out, count);
+            }
+            if (type != ROOK) {
+                count = retractSteps(square, DIAGONAL, true, out, count);
+            }
+            return count;
+        }
+
+        private int retractSteps(int square, int[][] steps, boolean slide, int[] out, int count) {
+            for (int[] step : steps) {
+                int file = (square & 7) + step[0];
+                int rank = (square >>> 3) + step[1];
+                while (file >= 0 && file < 8 && rank >= 0 && rank < 8 && board[rank * 8 + file] == 0) {
+                    out[count++] = rank * 8 + file;
+                    if (!slide) {
+                        break;
+                    }
+                    file += step[0];
+                    rank += step[1];
+                }
+            }
+            return count;
+        }
+
+        private boolean attacked(int target, int byColor) {
+            for (int slot = 0; slot < job.pieces; slot++) {
+                int square = squares[slot];
+                if (square < 0 || job.colors[slot] != byColor) {
+                    continue;
+                }
+                int df = (target & 7) - (square & 7);
+                int dr = (target >>> 3) - (square >>> 3);
+                int type = job.types[slot];
+                if (type == KING) {
+                    if (Math.max(Math.abs(df), Math.abs(dr)) == 1) {
+                        return true;
+                    }
+                } else if (type == KNIGHT) {
+                    if (Math.abs(df * dr) == 2) {
+                        return true;
+                    }
+                } else if (type == PAWN) {
+                    if (dr == (byColor == WHITE ? -1 : 1) && Math.abs(df) == 1) {
+                        return true;
+                    }
+                } else {
+                    boolean straight = df == 0 || dr == 0;
+                    boolean diagonal = Math.abs(df) == Math.abs(dr);
+                    if (((straight && type != BISHOP) || (diagonal && type != ROOK)) && (df != 0 || dr != 0)
+                            && clearPath(square, target, Integer.signum(df), Integer.signum(dr))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean clearPath(int from, int target, int stepFile, int stepRank) {
+            int file = (from & 7) + stepFile;
+            int rank = (from >>> 3) + stepRank;
+            while (rank * 8 + file != target) {
+                if (board[rank * 8 + file] != 0) {
+                    return false;
+                }
+                file += stepFile;
+                rank += stepRank;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.crimsonknights.chess.tablebase;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Answers endgame queries for {@link CrimsonChess} positions from memory-mapped tables.
+ *
+ * <p>Probing never allocates and is safe to call from several threads at once. Castling rights
+ * are ignored, which only matters for a handful of rook endings that still have them.
+ */
+public final class TablebaseProber {
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final Tablebase[] tables = new Tablebase[Material.KEY_COUNT];
+    private final boolean[] flipped = new boolean[Material.KEY_COUNT];
+
+    TablebaseProber() {
+    }
+
+    /**
+     * Maps every table found in {@code directory}.
+     */
+    public static TablebaseProber open(Path directory) throws IOException {
+        TablebaseProber prober = new TablebaseProber();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.EXTENSION)) {
+            for (Path file : files) {
+                prober.register(Tablebase.open(file));
+            }
+        }
+        return prober;
+    }
+
+    void register(Tablebase table) {
+        Material material = table.material();
+        int flippedKey = material.flippedKey();
+        if (flippedKey != material.key()) {
+            tables[flippedKey] = table;
+            flipped[flippedKey] = true;
+        }
+        tables[material.key()] = table;
+        flipped[material.key()] = false;
+    }
+
+    Tablebase table(Material material) {
+        return tables[material.key()];
+    }
+
+    /**
+     * Returns {@link #WIN}, {@link #DRAW} or {@link #LOSS} from the side to move's point of view,
+     * or {@link #UNKNOWN} when no table covers the position.
+     */
+    public int probeWdl(CrimsonChess game) {
+        int code = probeCode(game);
+        if (code < 0) {
+            return UNKNOWN;
+        }
+        return code == 0 ? DRAW : (code % 2 == 1 ? WIN : LOSS);
+    }
+
+    /**
+     * Returns the distance to mate in plies: positive when the side to move mates, negative when
+     * it gets mated, {@code 0} for draws and for positions that are already checkmate (use
+     * {@link #probeWdl} to tell those apart), or {@link #UNKNOWN} when no table covers the position.
+     */
+    public int probeDtm(CrimsonChess game) {
+        int code = probeCode(game);
+        if (code < 0) {
+            return UNKNOWN;
+        }
+        if (code == 0) {
+            return 0;
+        }
+        return code % 2 == 1 ? code : -(code - 2);
+    }
+
+    private int probeCode(CrimsonChess game) {
+        int whiteKing = -1;
+        int blackKing = -1;
+        int codeA = 0;
+        int squareA = 0;
+        int codeB = 0;
+        int squareB = 0;
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = game.pieceAt(square);
+            if (piece == null) {
+                continue;
+            }
+            if (++count > Material.MAX_PIECES) {
+                return -1;
+            }
+            if (piece.getType() == PieceType.KING) {
+                if (piece.getColor() == PieceColor.WHITE) {
+                    whiteKing = square;
+                } else {
+                    blackKing = square;
+                }
+            } else if (codeA == 0) {
+                codeA = Material.pieceCode(piece.getType(), piece.getColor());
+                squareA = square;
+            } else {
+                codeB = Material.pieceCode(piece.getType(), piece.getColor());
+                squareB = square;
+            }
+        }
+        if (whiteKing < 0 || blackKing < 0) {
+            return -1;
+        }
+        int sideToMove = game.getTurn() == PieceColor.WHITE ? 0 : 1;
+        return lookup(whiteKing, blackKing, codeA, squareA, codeB, squareB, sideToMove);
+    }
+
+    /**
+     * Looks up a position given as king squares plus up to two other pieces (code {@code 0} when
+     * absent). Returns the raw table code, or {@code -1} when no table covers the material.
+     */
+    int lookup(int whiteKing, int blackKing, int codeA, int squareA, int codeB, int squareB,
+               int sideToMove) {
+        int key = Material.key(codeA, codeB);
+        Tablebase table = tables[key];
+        if (table == null) {
+            return -1;
+        }
+        if (flipped[key]) {
+            int king = whiteKing;
+            whiteKing = blackKing ^ 56;
+            blackKing = king ^ 56;
+            codeA = codeA == 0 ? 0 : Material.flipCode(codeA);
+            codeB = codeB == 0 ? 0 : Material.flipCode(codeB);
+            squareA ^= 56;
+            squareB ^= 56;
+            sideToMove ^= 1;
+        }
+        int index = (sideToMove << 6 | whiteKing) << 6 | blackKing;
+        if (codeA != 0 && codeB != 0) {
+            if (codeA <= codeB) {
+                index = (index << 6 | squareA) << 6 | squareB;
+            } else {
+                index = (index << 6 | squareB) << 6 | squareA;
+            }
+        } else if (codeA != 0) {
+            index = index << 6 | squareA;
+        } else if (codeB != 0) {
+            index = index << 6 | squareB;
+        }
+        return table.code(index);
+    }
+}
@@ -0,0 +1,99 @@
+package com.crimsonknights.chess.tournament;
+
+import java.util.Locale;
+
+/**
+ * Tuning knobs of a {@link CrimsonBot}, with the defaults of the browser bot. {@code randomness}
+ * scales the noise added to every move score, {@code aggression} the bonus for giving check and
+ * {@code softness} how far below the best score a move may be and still be picked.
+ */
+public final class BotSettings {
+    private String name = "bot";
+    private double randomness = 0.35;
+    private double aggression = 1.1;
+    private int softness = 140;
+
+    /**
+     * Parses a comma-separated list such as {@code name=soft,randomness=0.45,aggression=1}; keys
+     * that are not given keep their defaults.
+     *
+     * @throws IllegalArgumentException on an unknown key or a malformed value
+     */
+    public static BotSettings parse(String text) {
+        BotSettings settings = new BotSettings();
+        if (text.isEmpty()) {
+            return settings;
+        }
+        for (String pair : text.split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + pair);
+            }
+            String key = pair.substring(0, equals).trim();
+            String value = pair.substring(equals + 1).trim();
+            try {
+                switch (key) {
+                    case "name":
+                        settings.name(value);
+                        break;
+                    case "randomness":
+                        settings.randomness(Double.parseDouble(value));
+                        break;
+                    case "aggression":
+                        settings.aggression(Double.parseDouble(value));
+                        break;
+                    case "softness":
+                        settings.softness(Integer.parseInt(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown bot setting: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + key + ": " + value, e);
+            }
+        }
+        return settings;
+    }
+
+    public BotSettings name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public BotSettings randomness(double randomness) {
+        this.randomness = randomness;
+        return this;
+    }
+
+    public BotSettings aggression(double aggression) {
+        this.aggression = aggression;
+        return this;
+    }
+
+    public BotSettings softness(int softness) {
+        this.softness = softness;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getRandomness() {
+        return randomness;
+    }
+
+    public double getAggression() {
+        return aggression;
+    }
+
+    public int getSoftness() {
+        return softness;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (randomness %.2f, aggression %.2f, softness %d)",
+                name, randomness, aggression, softness);
+    }
+}
@@ -0,0 +1,173 @@
+package com.crimsonknights.chess.tournament;
+
+import com.crimsonknights.chess.BoardView;
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Move;
+import com.crimsonknights.chess.MoveRecord;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Java port of the browser's {@code CrimsonBot}: every legal move is played, scored by material,
+ * piece-square tables and a few tactical bonuses plus some noise, and one of the moves within
+ * {@code softness} of the best is picked at random. Unlike the browser bot it plays either color.
+ *
+ * <p>A bot drives the game it was created for and is not thread-safe; give each game its own.
+ */
+public final class CrimsonBot {
+    // Indexed by PieceType ordinal: king, queen, rook, bishop, knight, pawn.
+    static final int[] VALUES = {20000, 900, 500, 315, 305, 100};
+    // From Black's point of view, indexed like Square (a8 first); White reads them reversed.
+    // Scaled by PST_SCALE when scoring.
+    static final double PST_SCALE = 0.6;
+    static final int[][] PST = {
+            {
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -20, -30, -30, -40, -40, -30, -30, -20,
+                    -10, -20, -20, -20, -20, -20, -20, -10,
+                    20, 20, 0, 0, 0, 0, 20, 20,
+                    20, 30, 10, 0, 0, 10, 30, 20
+            },
+            {
+                    -20, -10, -10, -5, -5, -10, -10, -20,
+                    -10, 0, 5, 0, 0, 5, 0, -10,
+                    -10, 5, 5, 5, 5, 5, 5, -10,
+                    -5, 0, 5, 5, 5, 5, 0, -5,
+                    0, 0, 5, 5, 5, 5, 0, -5,
+                    -10, 5, 5, 5, 5, 5, 5, -10,
+                    -10, 0, 5, 0, 0, 5, 0, -10,
+                    -20, -10, -10, -5, -5, -10, -10, -20
+            },
+            {
+                    0, 0, 5, 10, 10, 5, 0, 0,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    5, 10, 10, 10, 10, 10, 10, 5,
+                    0, 0, 0, 5, 5, 0, 0, 0
+            },
+            {
+                    -20, -10, -10, -5, -5, -10, -10, -20,
+                    -10, 0, 10, 0, 0, 10, 0, -10,
+                    -10, 10, 5, 10, 10, 5, 10, -10,
+                    -5, 0, 10, 10, 10, 10, 0, -5,
+                    0, 5, 10, 10, 10, 10, 5, 0,
+                    -10, 0, 10, 10, 10, 10, 0, -10,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -20, -10, -10, -5, -5, -10, -10, -20
+            },
+            {
+                    -30, -20, -10, -10, -10, -10, -20, -30,
+                    -20, -5, 0, 5, 5, 0, -5, -20,
+                    -10, 5, 10, 15, 15, 10, 5, -10,
+                    -10, 0, 15, 20, 20, 15, 0, -10,
+                    -10, 5, 15, 20, 20, 15, 5, -10,
+                    -10, 0, 10, 15, 15, 10, 0, -10,
+                    -20, -5, 0, 0, 0, 0, -5, -20,
+                    -30, -20, -10, -10, -10, -10, -20, -30
+            },
+            {
+                    0, 5, 5, 0, 5, 10, 50, 0,
+                    0, 10, -5, 0, 5, 10, 10, 0,
+                    0, 10, -10, 20, 25, 5, 10, 0,
+                    5, 5, 10, 25, 30, 10, 5, 5,
+                    10, 10, 20, 30, 35, 20, 10, 10,
+                    15, 15, 20, 25, 25, 20, 15, 15,
+                    30, 30, 30, 35, 35, 30, 30, 30,
+                    0, 0, 0, 0, 0, 0, 0, 0
+            }
+    };
+
+    private final CrimsonChess game;
+    private final BotSettings settings;
+    private final SplittableRandom random;
+    private final double[] scores = new double[CrimsonChess.MAX_MOVES];
+    private final int[] candidates = new int[CrimsonChess.MAX_MOVES];
+
+    public CrimsonBot(CrimsonChess game, BotSettings settings, SplittableRandom random) {
+        this.game = game;
+        this.settings = settings;
+        this.random = random;
+    }
+
+    /**
+     * Picks a move for the side to move, or returns {@code null} when it has none. The game is
+     * left as it was.
+     */
+    public Move chooseMove() {
+        List<Move> moves = game.legalMoves();
+        if (moves.isEmpty()) {
+            return null;
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < moves.size(); i++) {
+            scores[i] = scoreMove(moves.get(i));
+            best = Math.max(best, scores[i]);
+        }
+        int count = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            if (scores[i] >= best - settings.getSoftness()) {
+                candidates[count++] = i;
+            }
+        }
+        return moves.get(candidates[random.nextInt(count)]);
+    }
+
+    private double scoreMove(Move move) {
+        Character promotion = move.getPromotion() == null ? null : move.getPromotion().getFenChar();
+        MoveRecord record = game.makeMove(move.getFrom(), move.getTo(), promotion);
+        if (record == null) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double score;
+        if (record.isCheckmate()) {
+            score = Double.POSITIVE_INFINITY;
+        } else {
+            score = evaluate(game.boardView(), record.getColor());
+            if (record.getCapturedPiece() != null) {
+                score += VALUES[record.getCapturedPiece().getType().ordinal()] * 0.9;
+                if (record.getPiece() != PieceType.PAWN) {
+                    score += 25;
+                }
+            }
+            if (record.isCheck()) {
+                score += 35 * settings.getAggression();
+            }
+            if (record.isDraw()) {
+                score -= 120;
+            }
+            if (record.getFlags().getCastle() != null) {
+                score += 15;
+            }
+        }
+        game.undo();
+        return score + (random.nextDouble() - 0.5) * settings.getRandomness() * 120;
+    }
+
+    /**
+     * Material and scaled piece-square score from {@code side}'s point of view.
+     */
+    private static double evaluate(BoardView board, PieceColor side) {
+        double total = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board.pieceAt(square);
+            if (piece == null) {
+                continue;
+            }
+            int type = piece.getType().ordinal();
+            int positional = piece.getColor() == PieceColor.BLACK ? PST[type][square] : PST[type][63 - square];
+            double value = VALUES[type] + positional * PST_SCALE;
+            total += piece.getColor() == side ? value : -value;
+        }
+        return total;
+    }
+}
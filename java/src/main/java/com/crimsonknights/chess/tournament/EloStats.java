@@ -0,0 +1,157 @@
+package com.crimsonknights.chess.tournament;
+
+import java.util.Locale;
+
+/**
+ * Win/draw/loss tally of one player against another, with the usual match statistics: Elo
+ * difference with a 95% confidence interval, likelihood of superiority and a sequential
+ * probability ratio test. Scores use the normal approximation to the trinomial distribution.
+ */
+public final class EloStats {
+    private static final double Z_95 = 1.959964;
+
+    private final long wins;
+    private final long draws;
+    private final long losses;
+
+    public EloStats(long wins, long draws, long losses) {
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public long getLosses() {
+        return losses;
+    }
+
+    public long games() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Returns the mean points per game, from 0 to 1.
+     */
+    public double score() {
+        long games = games();
+        return games == 0 ? 0.5 : (wins + draws * 0.5) / games;
+    }
+
+    public double eloDifference() {
+        return elo(score());
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval of {@link #eloDifference()}.
+     */
+    public double eloError() {
+        long games = games();
+        if (games == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double margin = Z_95 * Math.sqrt(variance() / games);
+        double score = score();
+        return (elo(Math.min(score + margin, 1)) - elo(Math.max(score - margin, 0))) / 2;
+    }
+
+    /**
+     * Returns the likelihood of superiority: the probability that the player is the stronger
+     * one, judged on decisive games only.
+     */
+    public double los() {
+        long decisive = wins + losses;
+        if (decisive == 0) {
+            return 0.5;
+        }
+        return 0.5 * (1 + erf((wins - losses) / Math.sqrt(2.0 * decisive)));
+    }
+
+    /**
+     * Returns the log-likelihood ratio of the hypothesis that the Elo difference is {@code elo1}
+     * against the hypothesis that it is {@code elo0}.
+     */
+    public double llr(double elo0, double elo1) {
+        long games = games();
+        double variance = variance();
+        if (games == 0 || variance == 0) {
+            return 0;
+        }
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return games * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * Runs the SPRT for {@code elo0} against {@code elo1} with error rates {@code alpha} (false
+     * positive) and {@code beta} (false negative).
+     *
+     * @return {@code 1} when H1 is accepted, {@code -1} when H0 is accepted, {@code 0} while the
+     *     test is still open
+     */
+    public int sprt(double elo0, double elo1, double alpha, double beta) {
+        double llr = llr(elo0, elo1);
+        if (llr >= Math.log((1 - beta) / alpha)) {
+            return 1;
+        }
+        if (llr <= Math.log(beta / (1 - alpha))) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Describes the tally, the Elo estimate, LOS and the SPRT state for the given bounds with
+     * 5% error rates.
+     */
+    public String describe(double elo0, double elo1) {
+        int verdict = sprt(elo0, elo1, 0.05, 0.05);
+        return String.format(Locale.ROOT,
+                "+%d =%d -%d (%.1f%%), Elo %+.1f +/- %.1f, LOS %.1f%%%n"
+                        + "SPRT elo0 %.1f elo1 %.1f: LLR %.2f [%.2f, %.2f] %s",
+                wins, draws, losses, score() * 100, eloDifference(), eloError(), los() * 100,
+                elo0, elo1, llr(elo0, elo1), Math.log(0.05 / 0.95), Math.log(0.95 / 0.05),
+                verdict > 0 ? "H1 accepted" : verdict < 0 ? "H0 accepted" : "continue");
+    }
+
+    private double variance() {
+        long games = games();
+        if (games == 0) {
+            return 0;
+        }
+        double score = score();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    private static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Abramowitz and Stegun 7.1.26; accurate to about 1e-7, plenty for a percentage.
+     */
+    private static double erf(double x) {
+        double t = 1 / (1 + 0.3275911 * Math.abs(x));
+        double poly = t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429))));
+        double value = 1 - poly * Math.exp(-x * x);
+        return x >= 0 ? value : -value;
+    }
+}
@@ -0,0 +1,419 @@
+package com.crimsonknights.chess.tournament;
+
+import com.crimsonknights.chess.BoardView;
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Piece;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.PieceType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Texel tuning of the {@link CrimsonBot} piece values and piece-square tables: finds the weights
+ * whose evaluation, passed through a logistic curve, best predicts the game results of a set of
+ * labelled positions.
+ *
+ * <p>Positions are read one line at a time, {@code FEN result}, where the result is {@code 1-0},
+ * {@code 0-1}, {@code 1/2-1/2} or a White score such as {@code [0.5]}; the EPD form
+ * {@code FEN c9 "1-0";} is accepted too. Each position is reduced once, on the worker threads, to
+ * a few dozen {@code short}s of feature index and coefficient, so the corpus never exists as
+ * boards or strings in memory. Every step of the Adam optimizer then runs over those arrays in
+ * parallel, one gradient buffer per thread.
+ *
+ * <pre>
+ * TexelTuner positions [epochs] [threads] [output]
+ * </pre>
+ */
+public final class TexelTuner {
+    private static final PieceType[] TYPES = PieceType.values();
+    private static final int PST_OFFSET = TYPES.length;
+    // Material for every type but the king, whose count never differs, then one PST per type.
+    private static final int PARAMETERS = PST_OFFSET + TYPES.length * 64;
+    private static final int COEFFICIENT_BITS = 5;
+    private static final int COEFFICIENT_BIAS = 1 << (COEFFICIENT_BITS - 1);
+    private static final int SHARD_SIZE = 16384;
+    private static final double LN_10_OVER_400 = Math.log(10) / 400;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final int threads;
+    private final double[][] gradients;
+    private long positions;
+    private long rejected;
+
+    public TexelTuner(int threads) {
+        this.threads = threads;
+        this.gradients = new double[threads][PARAMETERS];
+    }
+
+    /**
+     * Streams labelled positions from {@code file} and extracts their features on the worker
+     * threads. Lines that do not parse are counted and skipped.
+     */
+    public void load(Path file) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<Shard>> pending = new ArrayDeque<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>(SHARD_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == SHARD_SIZE) {
+                    List<String> batch = lines;
+                    pending.add(pool.submit(() -> Shard.extract(batch)));
+                    lines = new ArrayList<>(SHARD_SIZE);
+                    // Keep only a few batches of raw lines in flight so the heap stays bounded.
+                    if (pending.size() > 2 * threads) {
+                        collect(pending.removeFirst());
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                List<String> batch = lines;
+                pending.add(pool.submit(() -> Shard.extract(batch)));
+            }
+            while (!pending.isEmpty()) {
+                collect(pending.removeFirst());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void collect(Future<Shard> future) throws InterruptedException {
+        try {
+            Shard shard = future.get();
+            shards.add(shard);
+            positions += shard.count;
+            rejected += shard.rejected;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Feature extraction failed", e.getCause());
+        }
+    }
+
+    public long getPositions() {
+        return positions;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the current {@link CrimsonBot} weights as a parameter vector: material by piece type,
+     * then the scaled piece-square tables.
+     */
+    public static double[] initialWeights() {
+        double[] weights = new double[PARAMETERS];
+        for (int type = 0; type < TYPES.length; type++) {
+            weights[type] = CrimsonBot.VALUES[type];
+            for (int square = 0; square < 64; square++) {
+                weights[PST_OFFSET + type * 64 + square] = CrimsonBot.PST[type][square] * CrimsonBot.PST_SCALE;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Finds the logistic scale {@code K} that minimises the error of {@code weights}.
+     */
+    public double fitScale(double[] weights) throws InterruptedException {
+        double low = 0.01;
+        double high = 5;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if (error(weights, a, false) < error(weights, b, false)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Runs {@code epochs} full-batch Adam steps on {@code weights} in place and returns the final
+     * mean squared error. {@code progress}, if not {@code null}, gets a line every ten epochs.
+     *
+     * @throws IllegalStateException if no positions were loaded
+     */
+    public double tune(double[] weights, double scale, int epochs, double learningRate, PrintStream progress)
+            throws InterruptedException {
+        if (positions == 0) {
+            throw new IllegalStateException("No positions loaded");
+        }
+        double[] first = new double[PARAMETERS];
+        double[] second = new double[PARAMETERS];
+        double beta1 = 0.9;
+        double beta2 = 0.999;
+        double error = 0;
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            error = error(weights, scale, true);
+            double correction1 = 1 - Math.pow(beta1, epoch);
+            double correction2 = 1 - Math.pow(beta2, epoch);
+            for (int i = 0; i < PARAMETERS; i++) {
+                double gradient = 0;
+                for (double[] local : gradients) {
+                    gradient += local[i];
+                }
+                gradient /= positions;
+                first[i] = beta1 * first[i] + (1 - beta1) * gradient;
+                second[i] = beta2 * second[i] + (1 - beta2) * gradient * gradient;
+                weights[i] -= learningRate * (first[i] / correction1) / (Math.sqrt(second[i] / correction2) + 1e-12);
+            }
+            if (progress != null && epoch % 10 == 0) {
+                progress.printf(Locale.ROOT, "epoch %d error %.6f%n", epoch, error);
+            }
+        }
+        return error(weights, scale, false);
+    }
+
+    /**
+     * Returns the mean squared error of {@code weights} over all positions; with
+     * {@code withGradient} the per-thread gradient buffers are filled as well.
+     */
+    double error(double[] weights, double scale, boolean withGradient) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        double[] errors = new double[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                double[] gradient = withGradient ? gradients[index] : null;
+                if (gradient != null) {
+                    Arrays.fill(gradient, 0);
+                }
+                double sum = 0;
+                for (int s = next.getAndIncrement(); s < shards.size(); s = next.getAndIncrement()) {
+                    sum += shards.get(s).error(weights, scale * LN_10_OVER_400, gradient);
+                }
+                errors[index] = sum;
+            }, "texel-" + t);
+            workers[t].start();
+        }
+        double total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            total += errors[t];
+        }
+        return positions == 0 ? 0 : total / positions;
+    }
+
+    /**
+     * Writes {@code weights} as {@link CrimsonBot} tables: piece values and unscaled piece-square
+     * tables from Black's point of view, a8 first.
+     */
+    public static void write(double[] weights, PrintStream out) {
+        out.print("VALUES = {" + CrimsonBot.VALUES[0]);
+        for (int type = 1; type < TYPES.length; type++) {
+            out.print(", " + Math.round(weights[type]));
+        }
+        out.println("};");
+        for (int type = 0; type < TYPES.length; type++) {
+            out.println("PST[" + TYPES[type] + "] = {");
+            for (int rank = 0; rank < 8; rank++) {
+                StringBuilder row = new StringBuilder("        ");
+                for (int file = 0; file < 8; file++) {
+                    double value = weights[PST_OFFSET + type * 64 + rank * 8 + file] / CrimsonBot.PST_SCALE;
+                    row.append(Math.round(value)).append(rank == 7 && file == 7 ? "" : ", ");
+                }
+                out.println(row.toString().stripTrailing());
+            }
+            out.println("};");
+        }
+    }
+
+    /**
+     * Features of a batch of positions: for position {@code i}, {@code entries[offsets[i]]} up to
+     * {@code entries[offsets[i + 1]]} each pack a parameter index and a small signed coefficient,
+     * the position's White evaluation being the sum of coefficient times weight.
+     */
+    private static final class Shard {
+        final int count;
+        final int rejected;
+        final int[] offsets;
+        final short[] entries;
+        final float[] results;
+
+        private Shard(int count, int rejected, int[] offsets, short[] entries, float[] results) {
+            this.count = count;
+            this.rejected = rejected;
+            this.offsets = offsets;
+            this.entries = entries;
+            this.results = results;
+        }
+
+        static Shard extract(List<String> lines) {
+            CrimsonChess game = new CrimsonChess();
+            int[] coefficients = new int[PARAMETERS];
+            // At most one material and one piece-square entry per occupied square.
+            int[] touched = new int[2 * 64];
+            int[] offsets = new int[lines.size() + 1];
+            short[] entries = new short[lines.size() * 40];
+            float[] results = new float[lines.size()];
+            int count = 0;
+            int used = 0;
+            for (String line : lines) {
+                String[] tokens = line.trim().split("\\s+");
+                int end = tokens.length - 1;
+                float result = parseResult(tokens[end]);
+                if ("c9".equals(tokens[Math.max(0, end - 1)])) {
+                    end--;
+                }
+                try {
+                    if (Float.isNaN(result) || end < 4) {
+                        throw new IllegalArgumentException(line);
+                    }
+                    game.loadFen(String.join(" ", Arrays.asList(tokens).subList(0, end)));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                int distinct = collectFeatures(game.boardView(), coefficients, touched);
+                if (used + distinct > entries.length) {
+                    entries = Arrays.copyOf(entries, Math.max(entries.length * 2, used + distinct));
+                }
+                for (int i = 0; i < distinct; i++) {
+                    int parameter = touched[i];
+                    int coefficient = coefficients[parameter];
+                    coefficients[parameter] = 0;
+                    if (coefficient != 0) {
+                        entries[used++] = (short) (parameter << COEFFICIENT_BITS | (coefficient + COEFFICIENT_BIAS));
+                    }
+                }
+                results[count] = result;
+                offsets[++count] = used;
+            }
+            return new Shard(count, lines.size() - count, Arrays.copyOf(offsets, count + 1),
+                    Arrays.copyOf(entries, used), Arrays.copyOf(results, count));
+        }
+
+        /**
+         * Adds the position's coefficients into {@code coefficients} and lists the parameters it
+         * touched in {@code touched}, returning how many.
+         */
+        private static int collectFeatures(BoardView board, int[] coefficients, int[] touched) {
+            int distinct = 0;
+            for (int square = 0; square < 64; square++) {
+                Piece piece = board.pieceAt(square);
+                if (piece == null) {
+                    continue;
+                }
+                int type = piece.getType().ordinal();
+                boolean white = piece.getColor() == PieceColor.WHITE;
+                int sign = white ? 1 : -1;
+                int pst = PST_OFFSET + type * 64 + (white ? 63 - square : square);
+                if (type != PieceType.KING.ordinal()) {
+                    if (coefficients[type] == 0) {
+                        touched[distinct++] = type;
+                    }
+                    // A count that cancels out and comes back is listed twice; packing skips the copy.
+                    coefficients[type] += sign;
+                }
+                if (coefficients[pst] == 0) {
+                    touched[distinct++] = pst;
+                }
+                coefficients[pst] += sign;
+            }
+            return distinct;
+        }
+
+        double error(double[] weights, double scale, double[] gradient) {
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                double eval = 0;
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    int entry = entries[e];
+                    eval += weights[entry >>> COEFFICIENT_BITS] * ((entry & (2 * COEFFICIENT_BIAS - 1)) - COEFFICIENT_BIAS);
+                }
+                double predicted = 1 / (1 + Math.exp(-scale * eval));
+                double difference = results[i] - predicted;
+                sum += difference * difference;
+                if (gradient != null) {
+                    double factor = -2 * difference * predicted * (1 - predicted) * scale;
+                    for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                        int entry = entries[e];
+                        gradient[entry >>> COEFFICIENT_BITS] += factor
+                                * ((entry & (2 * COEFFICIENT_BIAS - 1)) - COEFFICIENT_BIAS);
+                    }
+                }
+            }
+            return sum;
+        }
+
+        private static float parseResult(String token) {
+            String text = token.replaceAll("[\\[\\]\";]", "");
+            switch (text) {
+                case "1-0":
+                    return 1f;
+                case "0-1":
+                    return 0f;
+                case "1/2-1/2":
+                    return 0.5f;
+                default:
+                    try {
+                        float value = Float.parseFloat(text);
+                        return value >= 0 && value <= 1 ? value : Float.NaN;
+                    } catch (NumberFormatException e) {
+                        return Float.NaN;
+                    }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: TexelTuner positions [epochs] [threads] [output]");
+            return;
+        }
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        TexelTuner tuner = new TexelTuner(threads);
+        long start = System.nanoTime();
+        tuner.load(Paths.get(args[0]));
+        System.out.printf(Locale.ROOT, "%d positions (%d rejected) loaded in %.2f s%n", tuner.getPositions(),
+                tuner.getRejected(), (System.nanoTime() - start) / 1e9);
+        if (tuner.getPositions() == 0) {
+            System.err.println("No usable positions in " + args[0]);
+            return;
+        }
+        double[] weights = initialWeights();
+        double scale = tuner.fitScale(weights);
+        double before = tuner.error(weights, scale, false);
+        System.out.printf(Locale.ROOT, "K %.3f, initial error %.6f%n", scale, before);
+        start = System.nanoTime();
+        double after = tuner.tune(weights, scale, epochs, 1.0, System.out);
+        System.out.printf(Locale.ROOT, "final error %.6f after %d epochs in %.2f s%n", after, epochs,
+                (System.nanoTime() - start) / 1e9);
+        if (args.length > 3) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(args[3])), false,
+                    StandardCharsets.UTF_8)) {
+                out.printf(Locale.ROOT, "// Texel-tuned CrimsonBot weights: %d positions, K %.3f, error %.6f -> %.6f%n",
+                        tuner.getPositions(), scale, before, after);
+                write(weights, out);
+            }
+        } else {
+            write(weights, System.out);
+        }
+    }
+}
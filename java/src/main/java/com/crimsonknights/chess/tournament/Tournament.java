@@ -0,0 +1,236 @@
+package com.crimsonknights.chess.tournament;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.Move;
+import com.crimsonknights.chess.MoveRecord;
+import com.crimsonknights.chess.PieceColor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Self-play match between two {@link CrimsonBot} settings. Each opening is played twice with
+ * colors swapped. Games are adjudicated by the checkmate and draw flags of their
+ * {@link MoveRecord}s, or drawn once they reach the ply limit.
+ *
+ * <p>Every game has its own {@link CrimsonChess}, bots and random stream seeded from the game
+ * number, so results do not depend on the thread count. Worker threads only share the counter
+ * handing out game numbers and keep their own tallies until the match is over.
+ *
+ * <pre>
+ * Tournament games [threads] [first settings] [second settings] [openings file]
+ * </pre>
+ */
+public final class Tournament {
+    /**
+     * Openings used when no list is given: the start position and common first-move replies.
+     */
+    public static final List<String> DEFAULT_OPENINGS = List.of(
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkbnr/pppp1ppp/4p3/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkbnr/ppp1pppp/8/3p4/3P4/8/PPP1PPPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkb1r/pppppppp/5n2/8/3P4/8/PPP1PPPP/RNBQKBNR w KQkq - 1 2",
+            "rnbqkbnr/pppp1ppp/8/4p3/2P5/8/PP1PPPPP/RNBQKBNR w KQkq - 0 2",
+            "rnbqkbnr/ppp1pppp/8/3p4/8/5N2/PPPPPPPP/RNBQKB1R w KQkq - 0 2");
+    private static final int DEFAULT_MAX_PLIES = 600;
+    private static final String[] REASONS = {"checkmate", "stalemate", "insufficient", "fifty-move", "ply limit"};
+
+    private final BotSettings first;
+    private final BotSettings second;
+    private final List<String> openings;
+    private final int threads;
+    private int maxPlies = DEFAULT_MAX_PLIES;
+    private long seed;
+
+    /**
+     * @throws IllegalArgumentException if an opening is not a valid FEN or has no legal moves
+     */
+    public Tournament(BotSettings first, BotSettings second, List<String> openings, int threads) {
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No openings");
+        }
+        CrimsonChess check = new CrimsonChess();
+        for (String fen : openings) {
+            check.loadFen(fen);
+            if (check.legalMoves().isEmpty()) {
+                throw new IllegalArgumentException("Opening has no legal moves: " + fen);
+            }
+        }
+        this.first = first;
+        this.second = second;
+        this.openings = List.copyOf(openings);
+        this.threads = threads;
+    }
+
+    public Tournament maxPlies(int maxPlies) {
+        this.maxPlies = maxPlies;
+        return this;
+    }
+
+    public Tournament seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Plays {@code games} games and returns the result from the first player's point of view.
+     */
+    public Result run(int games) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        Tally[] tallies = new Tally[threads];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Tally tally = new Tally();
+            tallies[i] = tally;
+            workers[i] = new Thread(() -> {
+                for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+                    play(game, tally);
+                }
+            }, "tournament-" + i);
+            workers[i].start();
+        }
+        Tally total = new Tally();
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            total.add(tallies[i]);
+        }
+        return new Result(new EloStats(total.wins, total.draws, total.losses), total.reasons, total.plies,
+                System.nanoTime() - start);
+    }
+
+    private void play(int number, Tally tally) {
+        CrimsonChess game = new CrimsonChess();
+        game.loadFen(openings.get(number / 2 % openings.size()));
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + number);
+        PieceColor firstColor = number % 2 == 0 ? game.getTurn() : game.getTurn().opposite();
+        CrimsonBot firstBot = new CrimsonBot(game, first, random.split());
+        CrimsonBot secondBot = new CrimsonBot(game, second, random.split());
+        for (int ply = 0; ply < maxPlies; ply++) {
+            Move move = (game.getTurn() == firstColor ? firstBot : secondBot).chooseMove();
+            Character promotion = move.getPromotion() == null ? null : move.getPromotion().getFenChar();
+            MoveRecord record = game.makeMove(move.getFrom(), move.getTo(), promotion);
+            tally.plies++;
+            if (record.isCheckmate()) {
+                if (record.getColor() == firstColor) {
+                    tally.wins++;
+                } else {
+                    tally.losses++;
+                }
+                tally.reasons[0]++;
+                return;
+            }
+            if (record.isDraw()) {
+                tally.draws++;
+                tally.reasons[Math.max(1, Arrays.asList(REASONS).indexOf(record.getDrawReason()))]++;
+                return;
+            }
+        }
+        tally.draws++;
+        tally.reasons[REASONS.length - 1]++;
+    }
+
+    /**
+     * Per-thread counters, merged once every worker has finished.
+     */
+    private static final class Tally {
+        long wins;
+        long draws;
+        long losses;
+        long plies;
+        final long[] reasons = new long[REASONS.length];
+
+        void add(Tally other) {
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+            plies += other.plies;
+            for (int i = 0; i < REASONS.length; i++) {
+                reasons[i] += other.reasons[i];
+            }
+        }
+    }
+
+    /**
+     * Outcome of a match: the statistics, how the games ended and the throughput.
+     */
+    public static final class Result {
+        private final EloStats stats;
+        private final long[] reasons;
+        private final long plies;
+        private final long nanos;
+
+        Result(EloStats stats, long[] reasons, long plies, long nanos) {
+            this.stats = stats;
+            this.reasons = reasons;
+            this.plies = plies;
+            this.nanos = nanos;
+        }
+
+        public EloStats getStats() {
+            return stats;
+        }
+
+        /**
+         * Returns how many games ended by {@code reason}: {@code checkmate}, {@code stalemate},
+         * {@code insufficient}, {@code fifty-move} or {@code ply limit}.
+         */
+        public long getEndings(String reason) {
+            int index = Arrays.asList(REASONS).indexOf(reason);
+            return index < 0 ? 0 : reasons[index];
+        }
+
+        public double getGamesPerSecond() {
+            return nanos == 0 ? 0 : stats.games() * 1e9 / nanos;
+        }
+
+        public double getPliesPerSecond() {
+            return nanos == 0 ? 0 : plies * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "%d games in %.2f s (%.1f games/s, %.0f plies/s)",
+                    stats.games(), nanos / 1e9, getGamesPerSecond(), getPliesPerSecond()));
+            text.append("\nendings:");
+            for (int i = 0; i < REASONS.length; i++) {
+                text.append(' ').append(REASONS[i]).append(' ').append(reasons[i]);
+                if (i < REASONS.length - 1) {
+                    text.append(',');
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        BotSettings first = BotSettings.parse(args.length > 2 ? args[2] : "name=first");
+        BotSettings second = BotSettings.parse(args.length > 3 ? args[3] : "name=second");
+        List<String> openings = DEFAULT_OPENINGS;
+        if (args.length > 4) {
+            openings = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(args[4]))) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    openings.add(line.trim());
+                }
+            }
+        }
+        Tournament tournament = new Tournament(first, second, openings, threads);
+        System.out.println(first + " vs " + second + ", " + openings.size() + " openings, " + threads + " threads");
+        Result result = tournament.run(games);
+        System.out.println(result);
+        System.out.println(result.getStats().describe(0, 5));
+    }
+}
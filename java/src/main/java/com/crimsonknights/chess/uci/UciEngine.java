@@ -0,0 +1,264 @@
+package com.crimsonknights.chess.uci;
+
+import com.crimsonknights.chess.CrimsonChess;
+import com.crimsonknights.chess.PackedMove;
+import com.crimsonknights.chess.PieceColor;
+import com.crimsonknights.chess.Search;
+import com.crimsonknights.chess.SearchLimits;
+import com.crimsonknights.chess.SearchResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Universal Chess Interface front end, so {@link CrimsonChess} can be driven by chess GUIs and
+ * tournament managers. Supports {@code uci}, {@code isready}, {@code ucinewgame},
+ * {@code position [startpos | fen ...] [moves ...]}, {@code go} with depth, movetime, nodes,
+ * clock or infinite limits, {@code stop}, {@code quit} and the {@code MultiPV} option, which
+ * reports that many lines per iteration from one {@link Search#analyse} search.
+ *
+ * <p>Searches run on their own thread so the command loop keeps reading and can answer
+ * {@code stop} and {@code isready} immediately.
+ */
+public final class UciEngine {
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final long MOVE_OVERHEAD_MILLIS = 50;
+    private static final int MAX_MULTI_PV = 64;
+
+    private final CrimsonChess game = new CrimsonChess();
+    private final PrintStream out;
+    private Search search;
+    private Thread searchThread;
+    private CountDownLatch stopSignal;
+    private int multiPv = 1;
+
+    public UciEngine(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Handles one command line; returns {@code false} once the engine should exit.
+     */
+    public boolean handle(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                out.println("id name Crimson Knights");
+                out.println("id author Crimson Knights");
+                out.println("option name MultiPV type spin default 1 min 1 max " + MAX_MULTI_PV);
+                out.println("uciok");
+                break;
+            case "isready":
+                out.println("readyok");
+                break;
+            case "ucinewgame":
+                stopSearch();
+                game.reset();
+                break;
+            case "position":
+                stopSearch();
+                position(tokens);
+                break;
+            case "setoption":
+                setOption(tokens);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                stopSearch();
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    private void position(String[] tokens) {
+        int index = 1;
+        if (tokens.length > 1 && "fen".equals(tokens[1])) {
+            StringBuilder fen = new StringBuilder();
+            index = 2;
+            while (index < tokens.length && !"moves".equals(tokens[index])) {
+                fen.append(tokens[index++]).append(' ');
+            }
+            try {
+                game.loadFen(fen.toString());
+            } catch (IllegalArgumentException e) {
+                out.println("info string invalid fen: " + e.getMessage());
+                game.reset();
+                return;
+            }
+        } else {
+            game.reset();
+            index = 2;
+        }
+        if (index < tokens.length && "moves".equals(tokens[index])) {
+            for (index++; index < tokens.length; index++) {
+                int move = game.findMove(tokens[index]);
+                if (move == PackedMove.NONE) {
+                    out.println("info string illegal move: " + tokens[index]);
+                    return;
+                }
+                game.play(move);
+            }
+        }
+    }
+
+    private void setOption(String[] tokens) {
+        // setoption name MultiPV value <n>
+        if (tokens.length >= 5 && "MultiPV".equalsIgnoreCase(tokens[2]) && "value".equals(tokens[3])) {
+            try {
+                multiPv = Math.max(1, Math.min(MAX_MULTI_PV, Integer.parseInt(tokens[4])));
+            } catch (NumberFormatException e) {
+                out.println("info string invalid MultiPV: " + tokens[4]);
+            }
+        }
+    }
+
+    private void go(String[] tokens) {
+        SearchLimits limits = new SearchLimits();
+        long time = 0;
+        long increment = 0;
+        int movesToGo = 0;
+        boolean infinite = Arrays.asList(tokens).contains("infinite");
+        boolean white = game.getTurn() == PieceColor.WHITE;
+        for (int i = 1; i + 1 < tokens.length; i++) {
+            String value = tokens[i + 1];
+            try {
+                switch (tokens[i]) {
+                    case "depth":
+                        limits.depth(Integer.parseInt(value));
+                        break;
+                    case "movetime":
+                        limits.moveTime(Long.parseLong(value));
+                        break;
+                    case "nodes":
+                        limits.nodes(Long.parseLong(value));
+                        break;
+                    case "wtime":
+                        time = white ? Long.parseLong(value) : time;
+                        break;
+                    case "btime":
+                        time = white ? time : Long.parseLong(value);
+                        break;
+                    case "winc":
+                        increment = white ? Long.parseLong(value) : increment;
+                        break;
+                    case "binc":
+                        increment = white ? increment : Long.parseLong(value);
+                        break;
+                    case "movestogo":
+                        movesToGo = Integer.parseInt(value);
+                        break;
+                    default:
+                        continue;
+                }
+            } catch (NumberFormatException e) {
+                out.println("info string invalid " + tokens[i] + ": " + value);
+            }
+            i++;
+        }
+        if (time > 0 && limits.getMoveTimeMillis() == 0) {
+            long budget = time / (movesToGo > 0 ? movesToGo + 1 : DEFAULT_MOVES_TO_GO) + increment * 3 / 4;
+            limits.moveTime(Math.max(1, Math.min(budget, time - MOVE_OVERHEAD_MILLIS)));
+        }
+        Search current = new Search(game);
+        CountDownLatch stopped = new CountDownLatch(1);
+        boolean waitForStop = infinite;
+        int lines = multiPv;
+        search = current;
+        stopSignal = stopped;
+        searchThread = new Thread(() -> {
+            int best;
+            if (lines == 1) {
+                best = current.search(limits, this::info).getBestMove();
+            } else {
+                List<SearchResult> results = current.analyse(limits, lines, this::info);
+                best = results.isEmpty() ? PackedMove.NONE : results.get(0).getBestMove();
+            }
+            if (waitForStop) {
+                // UCI forbids answering "go infinite" before the GUI says stop.
+                awaitQuietly(stopped);
+            }
+            out.println("bestmove " + (best == PackedMove.NONE ? "0000" : PackedMove.toCoordinate(best)));
+        }, "uci-search");
+        searchThread.start();
+    }
+
+    private void info(List<SearchResult> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            info(lines.get(i), i + 1);
+        }
+    }
+
+    private void info(SearchResult result) {
+        info(result, 0);
+    }
+
+    private void info(SearchResult result, int multiPvIndex) {
+        StringBuilder line = new StringBuilder(128);
+        line.append("info depth ").append(result.getDepth());
+        if (multiPvIndex > 0) {
+            line.append(" multipv ").append(multiPvIndex);
+        }
+        if (result.isMate()) {
+            line.append(" score mate ").append(result.getMateIn());
+        } else {
+            line.append(" score cp ").append(result.getScore());
+        }
+        long millis = result.getMillis();
+        line.append(" nodes ").append(result.getNodes()).append(" time ").append(millis);
+        line.append(" nps ").append(result.getNodes() * 1000 / Math.max(1, millis));
+        line.append(" pv");
+        for (int move : result.getPv()) {
+            line.append(' ').append(PackedMove.toCoordinate(move));
+        }
+        out.println(line);
+    }
+
+    private void stopSearch() {
+        if (searchThread == null) {
+            return;
+        }
+        search.stop();
+        stopSignal.countDown();
+        try {
+            searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+        search = null;
+        stopSignal = null;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        UciEngine engine = new UciEngine(System.out);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!engine.handle(line)) {
+                break;
+            }
+        }
+        engine.stopSearch();
+    }
+}